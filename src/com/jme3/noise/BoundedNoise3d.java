@@ -0,0 +1,53 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise;
+
+/** Noise source of three dimensions that can bound its values over a box.
+ * 
+ * Bounds are conservative, every sample taken inside the box is in
+ * returned range, but the range may be wider than real minimum and maximum.
+ * Chunk generators can use it to prove a region uniform and skip it.
+ * 
+ * @author Piotr SQLek Skólski
+ */
+public interface BoundedNoise3d extends Noise3d {
+    
+    /** Computes conservative range of samples inside axis-aligned box.
+     *
+     * Box is given by its minimal and maximal corner, both inclusive.
+     * Minimum is stored in range[0] and maximum in range[1].
+     *
+     * @param minX Minimal cordinate of box. NaN and INF prohibited.
+     * @param minY Minimal cordinate of box. NaN and INF prohibited.
+     * @param minZ Minimal cordinate of box. NaN and INF prohibited.
+     * @param maxX Maximal cordinate of box. NaN and INF prohibited.
+     * @param maxY Maximal cordinate of box. NaN and INF prohibited.
+     * @param maxZ Maximal cordinate of box. NaN and INF prohibited.
+     * @param range Array of at least two elements for computed range.
+     */
+    void bounds(float minX, float minY, float minZ,
+            float maxX, float maxY, float maxZ, float[] range);
+    
+}
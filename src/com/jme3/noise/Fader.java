@@ -44,6 +44,16 @@ public interface Fader {
         public float fade(float factor, float valA, float valB) {
             return Utils.mix(factor, valA, valB);
         }
+
+        public float slope() {
+            return 1;
+        }
+
+        public void weights(float[] factors, float[] weights,
+                int offset, int count) {
+            if (factors != weights)
+                System.arraycopy(factors, offset, weights, offset, count);
+        }
     };
 
     /**
@@ -54,6 +64,16 @@ public interface Fader {
         public float fade(float factor, float valA, float valB) {
             return factor < 0.5f ? valA : valB;
         }
+
+        public float slope() {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        public void weights(float[] factors, float[] weights,
+                int offset, int count) {
+            for (int i = offset, end = offset + count; i < end; ++i)
+                weights[i] = factors[i] < 0.5f ? 0 : 1;
+        }
     };
 
     /**
@@ -65,6 +85,19 @@ public interface Fader {
             float m = f * f * f * (f * (f * 6 - 15) + 10);
             return Utils.mix(m, a, b);
         }
+
+        public float slope() {
+            return 1.875f;
+        }
+
+        public void weights(float[] factors, float[] weights,
+                int offset, int count) {
+            for (int i = offset, end = offset + count; i < end; ++i) {
+                float f = factors[i];
+                // rounding near one can exceed it, fade clamps it there
+                weights[i] = Math.min(f * f * f * (f * (f * 6 - 15) + 10), 1);
+            }
+        }
     };
 
     /**
@@ -85,4 +118,54 @@ public interface Fader {
      */
     float fade(float factor, float valA, float valB);
 
+    /**
+     * Retrive maximal slope of mixing factor.
+     *
+     * Fade of values differing by d changes at most by slope()*d for unit
+     * change of factor. Faders not overriding this method are treated as
+     * not continuous.
+     *
+     * @return Maximal derivative of mixing factor, or POSITIVE_INFINITY.
+     */
+    default float slope() {
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Computes mixing weights for a row of factors.
+     *
+     * Bulk paths of generators assume fade(factor, valA, valB) is equal to
+     * {@link #interpolate(float, float, float)} of valA and valB with
+     * weight computed here, what holds for every fader mixing its values.
+     * Built-in faders compute weights without virtual call per factor.
+     * Default implementation calls fade(factor, 0, 1) for every factor.
+     *
+     * Factors and weights may be the same array.
+     *
+     * @param factors Values from zero to one inclusive.
+     * @param weights Array for computed weights.
+     * @param offset Index of first factor in both arrays.
+     * @param count Number of factors.
+     */
+    default void weights(float[] factors, float[] weights,
+            int offset, int count) {
+        for (int i = offset, end = offset + count; i < end; ++i)
+            weights[i] = fade(factors[i], 0, 1);
+    }
+
+    /**
+     * Mix values with weight computed by {@link #weights}.
+     *
+     * Unlike {@link Utils#mix(float, float, float)} weight is not clamped,
+     * weights of lattice-local factors are already in range zero to one.
+     *
+     * @param weight Mixing weight, zero gives valA, one gives valB.
+     * @param valA Leftmost value to mix.
+     * @param valB Rightmost value to mix.
+     * @return mixed value.
+     */
+    static float interpolate(float weight, float valA, float valB) {
+        return valB * weight + valA * (1.0f - weight);
+    }
+
 }
@@ -0,0 +1,46 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise;
+
+/** Interface for noise sources knowing their maximal slope.
+ *
+ * For any two points a and b of the same dimension
+ * |value(a) - value(b)| &lt;= lipschitz(dimensions) * |a - b|, where
+ * |a - b| is Euclidean distance. Knowing it, ray marching can take steps
+ * as long as distance to surface divided by slope without missing it.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public interface LipschitzNoise {
+
+    /** Retrive Lipschitz constant for cordinates of given dimension.
+     *
+     * @param dimensions Number of dimensions, from one to four.
+     * @return Maximal slope, or POSITIVE_INFINITY if noise is not
+     * continuous.
+     */
+    float lipschitz(int dimensions);
+
+}
@@ -44,4 +44,19 @@ public interface Noise1d {
      * @return Noise sample in range of minus one to plus one inclusive.
      */
     float value(float x);
+
+    /** Computes noise sample for given double precision cordinate.
+     *
+     * Large worlds should use this method, as float cordinates lose
+     * fractional part far away from origin.
+     *
+     * Default implementation rounds cordinates to float and calls
+     * {@link #value(float)}.
+     *
+     * @param x Input cordinate. Any value except NaN and INF.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     */
+    default float value(double x) {
+        return value((float) x);
+    }
 }
@@ -45,4 +45,64 @@ public interface Noise2d {
      * @return Noise sample in range of minus one to plus one inclusive.
      */
     float value(float x, float y);
+
+    /** Computes noise sample for given double precision cordinate.
+     *
+     * Large worlds should use this method, as float cordinates lose
+     * fractional part far away from origin.
+     *
+     * Default implementation rounds cordinates to float and calls
+     * {@link #value(float, float)}.
+     *
+     * @param x Input cordinate. Any value except NaN and INF.
+     * @param y Input cordinate. Any value except NaN and INF.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     */
+    default float value(double x, double y) {
+        return value((float) x, (float) y);
+    }
+
+    /** Computes noise samples for scattered cordinates.
+     *
+     * Cordinates are given as structure of arrays. Sample for
+     * xs[offset+i], ys[offset+i] is stored in result[offset+i],
+     * for i from zero inclusive to count exclusive.
+     *
+     * Default implementation calls {@link #value(float, float)} for every
+     * point. Implementors are encouraged to override it with a faster one.
+     *
+     * @param xs Input cordinates. Any value except NaN and INF.
+     * @param ys Input cordinates. Any value except NaN and INF.
+     * @param result Array for computed samples.
+     * @param offset Index of first point in all arrays.
+     * @param count Number of points to compute.
+     */
+    default void values(float[] xs, float[] ys, float[] result,
+            int offset, int count) {
+        for (int i = offset, end = offset + count; i < end; ++i)
+            result[i] = value(xs[i], ys[i]);
+    }
+
+    /** Computes noise samples on a regular grid.
+     *
+     * Sample of column i and row j is taken at (x + i*step, y + j*step)
+     * and stored in result[offset + j*width + i].
+     *
+     * Default implementation calls {@link #value(double, double)} for every
+     * sample. Implementors are encouraged to override it with a faster one.
+     *
+     * @param x Cordinate of first sample. Any value except NaN and INF.
+     * @param y Cordinate of first sample. Any value except NaN and INF.
+     * @param step Distance between neighbour samples.
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param result Array for computed samples.
+     * @param offset Index of first sample in result.
+     */
+    default void values(double x, double y, double step,
+            int width, int height, float[] result, int offset) {
+        for (int j = 0; j < height; ++j)
+            for (int i = 0; i < width; ++i)
+                result[offset++] = value(x + i * step, y + j * step);
+    }
 }
@@ -47,5 +47,47 @@ public interface Noise4d {
      * @return Noise sample in range of minus one to plus one inclusive.
      */
     float value(float x, float y, float z, float w);
+
+    /** Computes noise sample for given double precision cordinate.
+     *
+     * Large worlds should use this method, as float cordinates lose
+     * fractional part far away from origin.
+     *
+     * Default implementation rounds cordinates to float and calls
+     * {@link #value(float, float, float, float)}.
+     *
+     * @param x Input cordinate. Any value except NaN and INF.
+     * @param y Input cordinate. Any value except NaN and INF.
+     * @param z Input cordinate. Any value except NaN and INF.
+     * @param w Input cordinate. Any value except NaN and INF.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     */
+    default float value(double x, double y, double z, double w) {
+        return value((float) x, (float) y, (float) z, (float) w);
+    }
+
+    /** Computes noise samples for scattered cordinates.
+     *
+     * Sample of point xs[offset+i], ys[offset+i], zs[offset+i], ws[offset+i]
+     * is stored in result[offset+i], for i from zero inclusive to count
+     * exclusive.
+     *
+     * Default implementation calls
+     * {@link #value(float, float, float, float)} for every point.
+     * Implementors are encouraged to override it with a faster one.
+     *
+     * @param xs Input cordinates. Any value except NaN and INF.
+     * @param ys Input cordinates. Any value except NaN and INF.
+     * @param zs Input cordinates. Any value except NaN and INF.
+     * @param ws Input cordinates. Any value except NaN and INF.
+     * @param result Array for computed samples.
+     * @param offset Index of first point in all arrays.
+     * @param count Number of points to compute.
+     */
+    default void values(float[] xs, float[] ys, float[] zs, float[] ws,
+            float[] result, int offset, int count) {
+        for (int i = offset, end = offset + count; i < end; ++i)
+            result[i] = value(xs[i], ys[i], zs[i], ws[i]);
+    }
     
 }
@@ -24,6 +24,8 @@
 
 package com.jme3.noise;
 
+import java.util.Arrays;
+
 /** Hashing permutation table.
  * 
  * Almost every noise algorithm uses permutation table like this internaly.
@@ -89,6 +91,43 @@ public class Permutator {
         return permutations[val & (permutations.length-1)];
     }
     
+    /** Computes hash of permutation table.
+     * 
+     * Hash depends only on table contents, so permutators created with
+     * the same seed have the same hash in every run.
+     *
+     * @return Hash of permutation table.
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(permutations);
+    }
+    
+    /** Computes 64 bit hash of permutation table.
+     *
+     * Unlike hashCode it mixes every entry with {@link Utils#mixHash},
+     * so distinct tables practically never collide.
+     *
+     * @return Hash of permutation table.
+     */
+    public long longHash() {
+        long hash = permutations.length;
+        for (int permutation : permutations)
+            hash = Utils.mixHash(hash, permutation);
+        return hash;
+    }
+    
+    /** Compares permutation tables.
+     *
+     * @param obj Other object.
+     * @return True if obj is a permutator with identical table.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Permutator && Arrays.equals(
+                permutations, ((Permutator) obj).permutations);
+    }
+    
     /** Retrive permutation table size.
      *
      * @return Size of permutation table.
@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise;
+
+/** Noise graph node that tracks changes of its configuration.
+ * 
+ * Caches of generated samples can remember version of node used for
+ * generation and rebuild only samples of nodes that changed since.
+ * 
+ * @author Piotr SQLek Skólski
+ * @see Utils#nextVersion()
+ */
+public interface Tracked {
+    
+    /** Retrive version stamp of this node.
+     *
+     * Stamp changes on every change of this node or of any node it reads
+     * from, and never goes back to previous value.
+     * 
+     * @return Version stamp.
+     */
+    long version();
+    
+    /** Computes hash of configuration of this node and its sources.
+     * 
+     * Nodes configured the same way have the same hash, also in
+     * different runs. Unlike version, it goes back to previous value when
+     * a change is undone.
+     *
+     * @return Configuration hash.
+     */
+    long configurationHash();
+    
+    /** Checks if configuration hash covers whole configuration.
+     * 
+     * Hash of a node with a part it can not describe, like untracked
+     * source or user defined fader, covers only class of that part. Equal
+     * hashes of such nodes do not prove equal samples, so caches must not
+     * reuse samples because of them.
+     *
+     * @return True if every parameter of this node and its sources is
+     * mixed into configuration hash.
+     */
+    default boolean configurationComplete() {
+        return false;
+    }
+    
+}
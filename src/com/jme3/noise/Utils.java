@@ -24,12 +24,46 @@
 
 package com.jme3.noise;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /** Utility functions.
  *
  * @author Piotr SQLek Skólski
  */
 public class Utils {
     
+    private static final AtomicLong versions
+            = new AtomicLong();
+    
+    /** Generates new version stamp.
+     * 
+     * Stamps are unique and grow with time, so a newer change always has
+     * greater stamp than older one.
+     *
+     * @return Version stamp greater than all previously generated.
+     * @see Tracked
+     */
+    public static long nextVersion() {
+        return versions.incrementAndGet();
+    }
+    
+    /** Mixes value into 64 bit hash.
+     *
+     * Every step ends with bijective avalanche of splitmix64, so changes of
+     * value or of earlier ones spread over all bits. Unlike sum with
+     * multiplier 31, small fields do not cancel each other.
+     *
+     * @param hash Hash of earlier values.
+     * @param value Next value.
+     * @return Hash covering value.
+     */
+    public static long mixHash(long hash, long value) {
+        long z = hash * 0x9e3779b97f4a7c15L + value;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+    
     /** Computes floored division.
      * Donald E Knuth "The Art of Computer Programming" 1972
      *
@@ -65,6 +99,19 @@ public class Utils {
         return dividend - divisor*floorDiv(dividend,divisor);
     }
     
+    /** Computes largest integer not greater than argument.
+     * 
+     * Faster replacement of {@link Math#floor(double)} for lattice
+     * cordinates, argument must fit in long.
+     *
+     * @param arg Any value except NaN and INF.
+     * @return Floored argument.
+     */
+    public static long fastFloor(double arg) {
+        long truncated = (long) arg;
+        return arg < truncated ? truncated - 1 : truncated;
+    }
+    
     /** Coputes linear mix of two arguments.
      * 
      * It is also known as a larp.
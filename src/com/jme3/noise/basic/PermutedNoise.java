@@ -33,7 +33,9 @@ import com.jme3.noise.*;
  *
  * @author Piotr SQLek Skólski
  */
-public class PermutedNoise implements Noise1d, Noise2d, Noise3d, Noise4d, TiledNoise {
+public class PermutedNoise implements BoundedNoise1d, BoundedNoise2d,
+        BoundedNoise3d, BoundedNoise4d, TiledNoise, Tracked,
+        LipschitzNoise {
 
     /**
      * Default fader is a linear one.
@@ -41,11 +43,34 @@ public class PermutedNoise implements Noise1d, Noise2d, Noise3d, Noise4d, TiledN
      */
     public static final Fader DEFAULT_FADER = Fader.LINEAR;
 
-    protected final Permutator permutator;
-    protected final Fader fader;
+    /**
+     * Boxes covering more lattice cells than this get global bounds.
+     *
+     */
+    public static final int MAX_BOUNDS_CELLS = 4096;
+
+    /**
+     * Number of scattered points whose fade weights are computed at once.
+     */
+    protected static final int BULK_BLOCK = 256;
+
+    /**
+     * Largest scratch kept by a thread between bulk calls, larger grids
+     * get temporary arrays.
+     */
+    private static final int SCRATCH_LIMIT = 16 * BULK_BLOCK;
+
+    private static final ThreadLocal<Scratch> SCRATCH =
+            ThreadLocal.withInitial(() -> new Scratch(4 * BULK_BLOCK));
+
+    // replaced by setters, see their thread safety notes
+    protected Permutator permutator;
+    protected Fader fader;
 
     private int tx = 0, ty = 0, tz = 0, tw = 0;
 
+    private volatile long version = Utils.nextVersion();
+
     /**
      * Creates generator with specified permutator and fader.
      *
@@ -104,8 +129,203 @@ public class PermutedNoise implements Noise1d, Noise2d, Noise3d, Noise4d, TiledN
 
     public float value(float x) {
         int X = (int) Math.floor(x);
-        x -= X;
+        return cellValue(X, x - X);
+    }
+
+    public float value(float x, float y) {
+        int X = (int) Math.floor(x);
+        int Y = (int) Math.floor(y);
+        return cellValue(X, Y, x - X, y - Y);
+    }
+
+    public float value(float x, float y, float z) {
+        int X = (int) Math.floor(x);
+        int Y = (int) Math.floor(y);
+        int Z = (int) Math.floor(z);
+        return cellValue(X, Y, Z, x - X, y - Y, z - Z);
+    }
+
+    public float value(float x, float y, float z, float w) {
+        int X = (int) Math.floor(x);
+        int Y = (int) Math.floor(y);
+        int Z = (int) Math.floor(z);
+        int W = (int) Math.floor(w);
+        return cellValue(X, Y, Z, W, x - X, y - Y, z - Z, w - W);
+    }
+
+    /**
+     * Computes noise sample for given double precision cordinate.
+     *
+     * Lattice cell is found with integer floor on long, so fractional part
+     * stays exact far away from origin.
+     *
+     * @param x Input cordinate. Any value except NaN and INF.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     */
+    @Override
+    public float value(double x) {
+        long X = Utils.fastFloor(x);
+        return cellValue(lattice(X, tx), (float) (x - X));
+    }
+
+    /**
+     * Computes noise sample for given double precision cordinate.
+     *
+     * @param x Input cordinate. Any value except NaN and INF.
+     * @param y Input cordinate. Any value except NaN and INF.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     * @see #value(double)
+     */
+    @Override
+    public float value(double x, double y) {
+        long X = Utils.fastFloor(x);
+        long Y = Utils.fastFloor(y);
+        return cellValue(lattice(X, tx), lattice(Y, ty),
+                (float) (x - X), (float) (y - Y));
+    }
+
+    /**
+     * Computes noise sample for given double precision cordinate.
+     *
+     * @param x Input cordinate. Any value except NaN and INF.
+     * @param y Input cordinate. Any value except NaN and INF.
+     * @param z Input cordinate. Any value except NaN and INF.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     * @see #value(double)
+     */
+    @Override
+    public float value(double x, double y, double z) {
+        long X = Utils.fastFloor(x);
+        long Y = Utils.fastFloor(y);
+        long Z = Utils.fastFloor(z);
+        return cellValue(lattice(X, tx), lattice(Y, ty), lattice(Z, tz),
+                (float) (x - X), (float) (y - Y), (float) (z - Z));
+    }
+
+    /**
+     * Computes noise sample for given double precision cordinate.
+     *
+     * @param x Input cordinate. Any value except NaN and INF.
+     * @param y Input cordinate. Any value except NaN and INF.
+     * @param z Input cordinate. Any value except NaN and INF.
+     * @param w Input cordinate. Any value except NaN and INF.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     * @see #value(double)
+     */
+    @Override
+    public float value(double x, double y, double z, double w) {
+        long X = Utils.fastFloor(x);
+        long Y = Utils.fastFloor(y);
+        long Z = Utils.fastFloor(z);
+        long W = Utils.fastFloor(w);
+        return cellValue(lattice(X, tx), lattice(Y, ty), lattice(Z, tz),
+                lattice(W, tw), (float) (x - X), (float) (y - Y),
+                (float) (z - Z), (float) (w - W));
+    }
+
+    /**
+     * Computes noise samples on a regular grid.
+     *
+     * Lattice cells, fractional parts and fade weights are computed once
+     * per column, row and slice, and shared by all samples using them.
+     *
+     * @param x Cordinate of first sample. Any value except NaN and INF.
+     * @param y Cordinate of first sample. Any value except NaN and INF.
+     * @param step Distance between neighbour samples.
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param result Array for computed samples.
+     * @param offset Index of first sample in result.
+     */
+    @Override
+    public void values(double x, double y, double step,
+            int width, int height, float[] result, int offset) {
+        final Scratch scratch = scratch(width + height);
+        final int[] cells = scratch.cells;
+        final float[] fractions = scratch.fractions;
+        final float[] weights = scratch.weights;
+        final int y0 = width;
+        axis(x, step, tx, width, cells, fractions, 0);
+        axis(y, step, ty, height, cells, fractions, y0);
+        fader.weights(fractions, weights, 0, width + height);
+        for (int j = 0; j < height; ++j)
+            for (int i = 0; i < width; ++i)
+                result[offset++] = cellValue(cells[i], cells[y0 + j],
+                        fractions[i], fractions[y0 + j],
+                        weights[i], weights[y0 + j]);
+    }
+
+    /**
+     * Computes noise samples on a regular grid.
+     *
+     * Lattice cells, fractional parts and fade weights are computed once
+     * per column, row and slice, and shared by all samples using them.
+     *
+     * @param x Cordinate of first sample. Any value except NaN and INF.
+     * @param y Cordinate of first sample. Any value except NaN and INF.
+     * @param z Cordinate of first sample. Any value except NaN and INF.
+     * @param step Distance between neighbour samples.
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param depth Number of slices.
+     * @param result Array for computed samples.
+     * @param offset Index of first sample in result.
+     */
+    @Override
+    public void values(double x, double y, double z, double step,
+            int width, int height, int depth, float[] result, int offset) {
+        final Scratch scratch = scratch(width + height + depth);
+        final int[] cells = scratch.cells;
+        final float[] fractions = scratch.fractions;
+        final float[] weights = scratch.weights;
+        final int y0 = width, z0 = width + height;
+        axis(x, step, tx, width, cells, fractions, 0);
+        axis(y, step, ty, height, cells, fractions, y0);
+        axis(z, step, tz, depth, cells, fractions, z0);
+        fader.weights(fractions, weights, 0, width + height + depth);
+        for (int k = 0; k < depth; ++k)
+            for (int j = 0; j < height; ++j)
+                for (int i = 0; i < width; ++i)
+                    result[offset++] = cellValue(
+                            cells[i], cells[y0 + j], cells[z0 + k],
+                            fractions[i], fractions[y0 + j],
+                            fractions[z0 + k], weights[i],
+                            weights[y0 + j], weights[z0 + k]);
+    }
 
+    /**
+     * Splits grid cordinates along one axis into cells and fractions.
+     */
+    private static void axis(double origin, double step, int t, int count,
+            int[] cells, float[] fractions, int offset) {
+        for (int i = 0; i < count; ++i) {
+            double c = origin + i * step;
+            long C = Utils.fastFloor(c);
+            cells[offset + i] = lattice(C, t);
+            fractions[offset + i] = (float) (c - C);
+        }
+    }
+
+    /**
+     * Reduces long lattice cordinate to int one with the same hash.
+     *
+     * Tiled axes are wrapped by tile size, other axes are truncated,
+     * which keeps all bits used by the permutator.
+     */
+    private static int lattice(long X, int t) {
+        if (t == 0)
+            return (int) X;
+        return (int) Math.floorMod(X, (long) t);
+    }
+
+    /**
+     * Computes noise sample inside one lattice cell.
+     *
+     * @param X Lattice cell cordinate.
+     * @param x Fractional cordinate inside the cell, zero to one.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     */
+    protected float cellValue(int X, float x) {
         //corners int values A means lower value B means +1 value, vec(xyzw)
         int A = valueInt(X);
         int B = valueInt(X + 1);
@@ -114,12 +334,16 @@ public class PermutedNoise implements Noise1d, Noise2d, Noise3d, Noise4d, TiledN
         return val * 2 / permutator.size() - 1;
     }
 
-    public float value(float x, float y) {
-        int X = (int) Math.floor(x);
-        int Y = (int) Math.floor(y);
-        x -= X;
-        y -= Y;
-
+    /**
+     * Computes noise sample inside one lattice cell.
+     *
+     * @param X Lattice cell cordinate.
+     * @param Y Lattice cell cordinate.
+     * @param x Fractional cordinate inside the cell, zero to one.
+     * @param y Fractional cordinate inside the cell, zero to one.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     */
+    protected float cellValue(int X, int Y, float x, float y) {
         //corners int values A means lower value B means +1 value, vec(xyzw)
         int AA = valueInt(X, Y);
         int AB = valueInt(X, Y + 1);
@@ -132,14 +356,44 @@ public class PermutedNoise implements Noise1d, Noise2d, Noise3d, Noise4d, TiledN
         return val * 2 / permutator.size() - 1;
     }
 
-    public float value(float x, float y, float z) {
-        int X = (int) Math.floor(x);
-        int Y = (int) Math.floor(y);
-        int Z = (int) Math.floor(z);
-        x -= X;
-        y -= Y;
-        z -= Z;
+    /**
+     * Computes noise sample inside one lattice cell with known fade weights.
+     *
+     * @param X Lattice cell cordinate.
+     * @param Y Lattice cell cordinate.
+     * @param x Fractional cordinate inside the cell, zero to one.
+     * @param y Fractional cordinate inside the cell, zero to one.
+     * @param u Fade weight of x.
+     * @param v Fade weight of y.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     * @see Fader#weights(float[], float[], int, int)
+     */
+    protected float cellValue(int X, int Y, float x, float y,
+            float u, float v) {
+        int AA = valueInt(X, Y);
+        int AB = valueInt(X, Y + 1);
+        int BA = valueInt(X + 1, Y);
+        int BB = valueInt(X + 1, Y + 1);
+
+        float val = Fader.interpolate(u,
+                Fader.interpolate(v, AA, AB),
+                Fader.interpolate(v, BA, BB));
+        return val * 2 / permutator.size() - 1;
+    }
 
+    /**
+     * Computes noise sample inside one lattice cell.
+     *
+     * @param X Lattice cell cordinate.
+     * @param Y Lattice cell cordinate.
+     * @param Z Lattice cell cordinate.
+     * @param x Fractional cordinate inside the cell, zero to one.
+     * @param y Fractional cordinate inside the cell, zero to one.
+     * @param z Fractional cordinate inside the cell, zero to one.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     */
+    protected float cellValue(int X, int Y, int Z,
+            float x, float y, float z) {
         //corners int values A means lower value B means +1 value, vec(xyzw)
         int AAA = valueInt(X, Y, Z);
         int AAB = valueInt(X, Y, Z + 1);
@@ -160,16 +414,57 @@ public class PermutedNoise implements Noise1d, Noise2d, Noise3d, Noise4d, TiledN
         return val * 2 / permutator.size() - 1;
     }
 
-    public float value(float x, float y, float z, float w) {
-        int X = (int) Math.floor(x);
-        int Y = (int) Math.floor(y);
-        int Z = (int) Math.floor(z);
-        int W = (int) Math.floor(w);
-        x -= X;
-        y -= Y;
-        z -= Z;
-        w -= W;
-        
+    /**
+     * Computes noise sample inside one lattice cell with known fade weights.
+     *
+     * @param X Lattice cell cordinate.
+     * @param Y Lattice cell cordinate.
+     * @param Z Lattice cell cordinate.
+     * @param x Fractional cordinate inside the cell, zero to one.
+     * @param y Fractional cordinate inside the cell, zero to one.
+     * @param z Fractional cordinate inside the cell, zero to one.
+     * @param u Fade weight of x.
+     * @param v Fade weight of y.
+     * @param w Fade weight of z.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     * @see Fader#weights(float[], float[], int, int)
+     */
+    protected float cellValue(int X, int Y, int Z, float x, float y, float z,
+            float u, float v, float w) {
+        int AAA = valueInt(X, Y, Z);
+        int AAB = valueInt(X, Y, Z + 1);
+        int ABA = valueInt(X, Y + 1, Z);
+        int ABB = valueInt(X, Y + 1, Z + 1);
+        int BAA = valueInt(X + 1, Y, Z);
+        int BAB = valueInt(X + 1, Y, Z + 1);
+        int BBA = valueInt(X + 1, Y + 1, Z);
+        int BBB = valueInt(X + 1, Y + 1, Z + 1);
+
+        float val = Fader.interpolate(u,
+                Fader.interpolate(v,
+                        Fader.interpolate(w, AAA, AAB),
+                        Fader.interpolate(w, ABA, ABB)),
+                Fader.interpolate(v,
+                        Fader.interpolate(w, BAA, BAB),
+                        Fader.interpolate(w, BBA, BBB)));
+        return val * 2 / permutator.size() - 1;
+    }
+
+    /**
+     * Computes noise sample inside one lattice cell.
+     *
+     * @param X Lattice cell cordinate.
+     * @param Y Lattice cell cordinate.
+     * @param Z Lattice cell cordinate.
+     * @param W Lattice cell cordinate.
+     * @param x Fractional cordinate inside the cell, zero to one.
+     * @param y Fractional cordinate inside the cell, zero to one.
+     * @param z Fractional cordinate inside the cell, zero to one.
+     * @param w Fractional cordinate inside the cell, zero to one.
+     * @return Noise sample in range of minus one to plus one inclusive.
+     */
+    protected float cellValue(int X, int Y, int Z, int W,
+            float x, float y, float z, float w) {
         //corners int values A means lower value B means +1 value, vec(xyzw)
         int AAAA = valueInt(X, Y, Z, W);
         int AAAB = valueInt(X, Y, Z, W + 1);
@@ -206,6 +501,478 @@ public class PermutedNoise implements Noise1d, Noise2d, Noise3d, Noise4d, TiledN
         return val * 2 / permutator.size() - 1;
     }
 
+    /**
+     * Computes noise samples for scattered cordinates.
+     *
+     * Corner values are reused while consecutive points stay in the same
+     * lattice cell, so points grouped by cell are computed faster. Fade
+     * weights are computed for blocks of points by {@link Fader#weights}.
+     *
+     * @param xs Input cordinates. Any value except NaN and INF.
+     * @param ys Input cordinates. Any value except NaN and INF.
+     * @param result Array for computed samples.
+     * @param offset Index of first point in all arrays.
+     * @param count Number of points to compute.
+     */
+    @Override
+    public void values(float[] xs, float[] ys, float[] result,
+            int offset, int count) {
+        final int size = permutator.size();
+        final int block = Math.min(count, BULK_BLOCK);
+        final Scratch scratch = scratch(2 * block);
+        final int[] cells = scratch.cells;
+        final float[] weights = scratch.weights;
+        int X = 0, Y = 0;
+        int AA = 0, AB = 0, BA = 0, BB = 0;
+        boolean cell = false;
+        for (int start = offset, end = offset + count; start < end;
+                start += block) {
+            int n = Math.min(block, end - start);
+            split(xs, start, n, cells, weights, 0);
+            split(ys, start, n, cells, weights, block);
+            fader.weights(weights, weights, 0, n);
+            fader.weights(weights, weights, block, n);
+            for (int j = 0; j < n; ++j) {
+                int cx = cells[j], cy = cells[block + j];
+                if (!cell || cx != X || cy != Y) {
+                    X = cx;
+                    Y = cy;
+                    AA = valueInt(X, Y);
+                    AB = valueInt(X, Y + 1);
+                    BA = valueInt(X + 1, Y);
+                    BB = valueInt(X + 1, Y + 1);
+                    cell = true;
+                }
+                float u = weights[j], v = weights[block + j];
+                float val = Fader.interpolate(u,
+                        Fader.interpolate(v, AA, AB),
+                        Fader.interpolate(v, BA, BB));
+                result[start + j] = val * 2 / size - 1;
+            }
+        }
+    }
+
+    /**
+     * Computes noise samples for scattered cordinates.
+     *
+     * Corner values are reused while consecutive points stay in the same
+     * lattice cell, so points grouped by cell are computed faster. Fade
+     * weights are computed for blocks of points by {@link Fader#weights}.
+     *
+     * @param xs Input cordinates. Any value except NaN and INF.
+     * @param ys Input cordinates. Any value except NaN and INF.
+     * @param zs Input cordinates. Any value except NaN and INF.
+     * @param result Array for computed samples.
+     * @param offset Index of first point in all arrays.
+     * @param count Number of points to compute.
+     */
+    @Override
+    public void values(float[] xs, float[] ys, float[] zs, float[] result,
+            int offset, int count) {
+        final int size = permutator.size();
+        final int block = Math.min(count, BULK_BLOCK);
+        final Scratch scratch = scratch(3 * block);
+        final int[] cells = scratch.cells;
+        final float[] weights = scratch.weights;
+        int X = 0, Y = 0, Z = 0;
+        int AAA = 0, AAB = 0, ABA = 0, ABB = 0;
+        int BAA = 0, BAB = 0, BBA = 0, BBB = 0;
+        boolean cell = false;
+        for (int start = offset, end = offset + count; start < end;
+                start += block) {
+            int n = Math.min(block, end - start);
+            split(xs, start, n, cells, weights, 0);
+            split(ys, start, n, cells, weights, block);
+            split(zs, start, n, cells, weights, 2 * block);
+            fader.weights(weights, weights, 0, n);
+            fader.weights(weights, weights, block, n);
+            fader.weights(weights, weights, 2 * block, n);
+            for (int j = 0; j < n; ++j) {
+                int cx = cells[j], cy = cells[block + j];
+                int cz = cells[2 * block + j];
+                if (!cell || cx != X || cy != Y || cz != Z) {
+                    X = cx;
+                    Y = cy;
+                    Z = cz;
+                    AAA = valueInt(X, Y, Z);
+                    AAB = valueInt(X, Y, Z + 1);
+                    ABA = valueInt(X, Y + 1, Z);
+                    ABB = valueInt(X, Y + 1, Z + 1);
+                    BAA = valueInt(X + 1, Y, Z);
+                    BAB = valueInt(X + 1, Y, Z + 1);
+                    BBA = valueInt(X + 1, Y + 1, Z);
+                    BBB = valueInt(X + 1, Y + 1, Z + 1);
+                    cell = true;
+                }
+                float u = weights[j], v = weights[block + j];
+                float w = weights[2 * block + j];
+                float val = Fader.interpolate(u,
+                        Fader.interpolate(v,
+                                Fader.interpolate(w, AAA, AAB),
+                                Fader.interpolate(w, ABA, ABB)),
+                        Fader.interpolate(v,
+                                Fader.interpolate(w, BAA, BAB),
+                                Fader.interpolate(w, BBA, BBB)));
+                result[start + j] = val * 2 / size - 1;
+            }
+        }
+    }
+
+    /**
+     * Computes noise samples for scattered cordinates.
+     *
+     * Corner values are reused while consecutive points stay in the same
+     * lattice cell, so points grouped by cell are computed faster. Fade
+     * weights are computed for blocks of points by {@link Fader#weights}.
+     *
+     * @param xs Input cordinates. Any value except NaN and INF.
+     * @param ys Input cordinates. Any value except NaN and INF.
+     * @param zs Input cordinates. Any value except NaN and INF.
+     * @param ws Input cordinates. Any value except NaN and INF.
+     * @param result Array for computed samples.
+     * @param offset Index of first point in all arrays.
+     * @param count Number of points to compute.
+     */
+    @Override
+    public void values(float[] xs, float[] ys, float[] zs, float[] ws,
+            float[] result, int offset, int count) {
+        final int size = permutator.size();
+        final int block = Math.min(count, BULK_BLOCK);
+        final Scratch scratch = scratch(4 * block);
+        final int[] cells = scratch.cells;
+        final float[] weights = scratch.weights;
+        final int[] corners = scratch.corners;
+        int X = 0, Y = 0, Z = 0, W = 0;
+        boolean cell = false;
+        for (int start = offset, end = offset + count; start < end;
+                start += block) {
+            int n = Math.min(block, end - start);
+            split(xs, start, n, cells, weights, 0);
+            split(ys, start, n, cells, weights, block);
+            split(zs, start, n, cells, weights, 2 * block);
+            split(ws, start, n, cells, weights, 3 * block);
+            fader.weights(weights, weights, 0, 4 * block);
+            for (int j = 0; j < n; ++j) {
+                int cx = cells[j], cy = cells[block + j];
+                int cz = cells[2 * block + j], cw = cells[3 * block + j];
+                if (!cell || cx != X || cy != Y || cz != Z || cw != W) {
+                    X = cx;
+                    Y = cy;
+                    Z = cz;
+                    W = cw;
+                    for (int c = 0; c < 16; ++c)
+                        corners[c] = valueInt(X + (c >> 3), Y + (c >> 2 & 1),
+                                Z + (c >> 1 & 1), W + (c & 1));
+                    cell = true;
+                }
+                float val = mix4(corners, weights[j], weights[block + j],
+                        weights[2 * block + j], weights[3 * block + j]);
+                result[start + j] = val * 2 / size - 1;
+            }
+        }
+    }
+
+    /**
+     * Arrays reused by bulk computations of one thread.
+     *
+     * Cells, fractions and weights of all axes share arrays, each axis
+     * starting at its own offset.
+     */
+    protected static final class Scratch {
+
+        /**
+         * Lattice cells of all axes.
+         */
+        public final int[] cells;
+
+        /**
+         * Fractional parts of all axes.
+         */
+        public final float[] fractions;
+
+        /**
+         * Fade weights of all axes.
+         */
+        public final float[] weights;
+
+        /**
+         * Corner values of 4d lattice cell.
+         */
+        public final int[] corners = new int[16];
+
+        private Scratch(int size) {
+            cells = new int[size];
+            fractions = new float[size];
+            weights = new float[size];
+        }
+    }
+
+    /**
+     * Retrive scratch arrays of current thread.
+     *
+     * Arrays are reused by next bulk call of the same thread, so they
+     * must not be kept after computation ends. Faders must not compute
+     * bulk noise from {@link Fader#weights}.
+     *
+     * @param size Minimal length of cells, fractions and weights.
+     * @return Scratch arrays at least of given size.
+     */
+    protected static Scratch scratch(int size) {
+        Scratch scratch = SCRATCH.get();
+        if (scratch.cells.length >= size)
+            return scratch;
+        if (size > SCRATCH_LIMIT)
+            return new Scratch(size);
+        scratch = new Scratch(Math.min(SCRATCH_LIMIT,
+                Math.max(size, 2 * scratch.cells.length)));
+        SCRATCH.set(scratch);
+        return scratch;
+    }
+
+    /**
+     * Splits block of cordinates into lattice cells and fractional parts.
+     *
+     * @param cordinates Input cordinates.
+     * @param start Index of first cordinate.
+     * @param count Number of cordinates.
+     * @param cells Array for lattice cells.
+     * @param fractions Array for fractional parts.
+     * @param offset Index of first cell and fraction.
+     */
+    protected static void split(float[] cordinates, int start, int count,
+            int[] cells, float[] fractions, int offset) {
+        for (int j = 0; j < count; ++j) {
+            float c = cordinates[start + j];
+            int C = (int) Math.floor(c);
+            cells[offset + j] = C;
+            fractions[offset + j] = c - C;
+        }
+    }
+
+    /**
+     * Mixes sixteen corner values of hypercube with fade weights.
+     *
+     * Corner c lies at offset (c >> 3, c >> 2 &amp; 1, c >> 1 &amp; 1, c &amp; 1).
+     */
+    private static float mix4(int[] corners, float u, float v, float s,
+            float t) {
+        return Fader.interpolate(u,
+                Fader.interpolate(v,
+                        Fader.interpolate(s,
+                                Fader.interpolate(t, corners[0], corners[1]),
+                                Fader.interpolate(t, corners[2], corners[3])),
+                        Fader.interpolate(s,
+                                Fader.interpolate(t, corners[4], corners[5]),
+                                Fader.interpolate(t, corners[6], corners[7]))),
+                Fader.interpolate(v,
+                        Fader.interpolate(s,
+                                Fader.interpolate(t, corners[8], corners[9]),
+                                Fader.interpolate(t, corners[10], corners[11])),
+                        Fader.interpolate(s,
+                                Fader.interpolate(t, corners[12], corners[13]),
+                                Fader.interpolate(t, corners[14], corners[15]))));
+    }
+
+    public void bounds(float minX, float maxX, float[] range) {
+        int X0 = (int) Math.floor(minX), X1 = (int) Math.floor(maxX);
+        if ((long) X1 - X0 + 1 > MAX_BOUNDS_CELLS) {
+            globalBounds(1, range);
+            return;
+        }
+        range[0] = Float.POSITIVE_INFINITY;
+        range[1] = Float.NEGATIVE_INFINITY;
+        for (int X = X0; X <= X1; ++X)
+            cellBounds(X,
+                    Math.max(minX - X, 0), Math.min(maxX - X, 1), range);
+    }
+
+    public void bounds(float minX, float minY,
+            float maxX, float maxY, float[] range) {
+        int X0 = (int) Math.floor(minX), X1 = (int) Math.floor(maxX);
+        int Y0 = (int) Math.floor(minY), Y1 = (int) Math.floor(maxY);
+        if (((long) X1 - X0 + 1) * ((long) Y1 - Y0 + 1) > MAX_BOUNDS_CELLS) {
+            globalBounds(2, range);
+            return;
+        }
+        range[0] = Float.POSITIVE_INFINITY;
+        range[1] = Float.NEGATIVE_INFINITY;
+        for (int X = X0; X <= X1; ++X)
+            for (int Y = Y0; Y <= Y1; ++Y)
+                cellBounds(X, Y,
+                        Math.max(minX - X, 0), Math.max(minY - Y, 0),
+                        Math.min(maxX - X, 1), Math.min(maxY - Y, 1), range);
+    }
+
+    public void bounds(float minX, float minY, float minZ,
+            float maxX, float maxY, float maxZ, float[] range) {
+        int X0 = (int) Math.floor(minX), X1 = (int) Math.floor(maxX);
+        int Y0 = (int) Math.floor(minY), Y1 = (int) Math.floor(maxY);
+        int Z0 = (int) Math.floor(minZ), Z1 = (int) Math.floor(maxZ);
+        if (((long) X1 - X0 + 1) * ((long) Y1 - Y0 + 1)
+                * ((long) Z1 - Z0 + 1) > MAX_BOUNDS_CELLS) {
+            globalBounds(3, range);
+            return;
+        }
+        range[0] = Float.POSITIVE_INFINITY;
+        range[1] = Float.NEGATIVE_INFINITY;
+        for (int X = X0; X <= X1; ++X)
+            for (int Y = Y0; Y <= Y1; ++Y)
+                for (int Z = Z0; Z <= Z1; ++Z)
+                    cellBounds(X, Y, Z,
+                            Math.max(minX - X, 0), Math.max(minY - Y, 0),
+                            Math.max(minZ - Z, 0),
+                            Math.min(maxX - X, 1), Math.min(maxY - Y, 1),
+                            Math.min(maxZ - Z, 1), range);
+    }
+
+    public void bounds(float minX, float minY, float minZ, float minW,
+            float maxX, float maxY, float maxZ, float maxW, float[] range) {
+        int X0 = (int) Math.floor(minX), X1 = (int) Math.floor(maxX);
+        int Y0 = (int) Math.floor(minY), Y1 = (int) Math.floor(maxY);
+        int Z0 = (int) Math.floor(minZ), Z1 = (int) Math.floor(maxZ);
+        int W0 = (int) Math.floor(minW), W1 = (int) Math.floor(maxW);
+        if (((long) X1 - X0 + 1) * ((long) Y1 - Y0 + 1)
+                * ((long) Z1 - Z0 + 1) * ((long) W1 - W0 + 1)
+                > MAX_BOUNDS_CELLS) {
+            globalBounds(4, range);
+            return;
+        }
+        range[0] = Float.POSITIVE_INFINITY;
+        range[1] = Float.NEGATIVE_INFINITY;
+        for (int X = X0; X <= X1; ++X)
+            for (int Y = Y0; Y <= Y1; ++Y)
+                for (int Z = Z0; Z <= Z1; ++Z)
+                    for (int W = W0; W <= W1; ++W)
+                        cellBounds(X, Y, Z, W,
+                                Math.max(minX - X, 0), Math.max(minY - Y, 0),
+                                Math.max(minZ - Z, 0), Math.max(minW - W, 0),
+                                Math.min(maxX - X, 1), Math.min(maxY - Y, 1),
+                                Math.min(maxZ - Z, 1), Math.min(maxW - W, 1),
+                                range);
+    }
+
+    /**
+     * Computes Lipschitz constant from fader slope.
+     *
+     * Along every axis sample mixes values from global range with factor
+     * changing at most by fader slope, so every partial derivative is
+     * bounded by slope times width of that range.
+     *
+     * @param dimensions Number of dimensions, from one to four.
+     * @return Maximal slope, POSITIVE_INFINITY for not continuous fader.
+     */
+    public float lipschitz(int dimensions) {
+        float[] range = new float[2];
+        globalBounds(dimensions, range);
+        return (float) Math.sqrt(dimensions)
+                * fader.slope() * (range[1] - range[0]);
+    }
+
+    /**
+     * Stores range of all values this noise can return.
+     *
+     * Used for boxes too large to be bounded cell by cell.
+     *
+     * @param dimensions Number of dimensions, from one to four.
+     * @param range Array for computed range.
+     */
+    protected void globalBounds(int dimensions, float[] range) {
+        range[0] = -1;
+        range[1] = (float) (permutator.size() - 1) * 2 / permutator.size() - 1;
+    }
+
+    /**
+     * Widens range to cover samples of one lattice cell.
+     *
+     * Part of the cell inside the box is given by fractional cordinates
+     * in range zero to one inclusive. Faders never leave range of corner
+     * values, so range of corner values bounds the whole cell.
+     *
+     * @param X Lattice cell cordinate.
+     * @param x0 Minimal fractional cordinate inside the cell.
+     * @param x1 Maximal fractional cordinate inside the cell.
+     * @param range Range to widen.
+     */
+    protected void cellBounds(int X, float x0, float x1, float[] range) {
+        widen(range, valueInt(X));
+        widen(range, valueInt(X + 1));
+    }
+
+    /**
+     * Widens range to cover samples of one lattice cell.
+     *
+     * @param X Lattice cell cordinate.
+     * @param Y Lattice cell cordinate.
+     * @param x0 Minimal fractional cordinate inside the cell.
+     * @param y0 Minimal fractional cordinate inside the cell.
+     * @param x1 Maximal fractional cordinate inside the cell.
+     * @param y1 Maximal fractional cordinate inside the cell.
+     * @param range Range to widen.
+     * @see #cellBounds(int, float, float, float[])
+     */
+    protected void cellBounds(int X, int Y,
+            float x0, float y0, float x1, float y1, float[] range) {
+        for (int c = 0; c < 4; ++c)
+            widen(range, valueInt(X + (c >> 1), Y + (c & 1)));
+    }
+
+    /**
+     * Widens range to cover samples of one lattice cell.
+     *
+     * @param X Lattice cell cordinate.
+     * @param Y Lattice cell cordinate.
+     * @param Z Lattice cell cordinate.
+     * @param x0 Minimal fractional cordinate inside the cell.
+     * @param y0 Minimal fractional cordinate inside the cell.
+     * @param z0 Minimal fractional cordinate inside the cell.
+     * @param x1 Maximal fractional cordinate inside the cell.
+     * @param y1 Maximal fractional cordinate inside the cell.
+     * @param z1 Maximal fractional cordinate inside the cell.
+     * @param range Range to widen.
+     * @see #cellBounds(int, float, float, float[])
+     */
+    protected void cellBounds(int X, int Y, int Z,
+            float x0, float y0, float z0,
+            float x1, float y1, float z1, float[] range) {
+        for (int c = 0; c < 8; ++c)
+            widen(range, valueInt(X + (c >> 2), Y + (c >> 1 & 1),
+                    Z + (c & 1)));
+    }
+
+    /**
+     * Widens range to cover samples of one lattice cell.
+     *
+     * @param X Lattice cell cordinate.
+     * @param Y Lattice cell cordinate.
+     * @param Z Lattice cell cordinate.
+     * @param W Lattice cell cordinate.
+     * @param x0 Minimal fractional cordinate inside the cell.
+     * @param y0 Minimal fractional cordinate inside the cell.
+     * @param z0 Minimal fractional cordinate inside the cell.
+     * @param w0 Minimal fractional cordinate inside the cell.
+     * @param x1 Maximal fractional cordinate inside the cell.
+     * @param y1 Maximal fractional cordinate inside the cell.
+     * @param z1 Maximal fractional cordinate inside the cell.
+     * @param w1 Maximal fractional cordinate inside the cell.
+     * @param range Range to widen.
+     * @see #cellBounds(int, float, float, float[])
+     */
+    protected void cellBounds(int X, int Y, int Z, int W,
+            float x0, float y0, float z0, float w0,
+            float x1, float y1, float z1, float w1, float[] range) {
+        for (int c = 0; c < 16; ++c)
+            widen(range, valueInt(X + (c >> 3), Y + (c >> 2 & 1),
+                    Z + (c >> 1 & 1), W + (c & 1)));
+    }
+
+    private void widen(float[] range, int corner) {
+        float val = (float) corner * 2 / permutator.size() - 1;
+        if (val < range[0])
+            range[0] = val;
+        if (val > range[1])
+            range[1] = val;
+    }
+
     /**
      * Computes one dimension noise for integer cordinates.
      *
@@ -262,11 +1029,114 @@ public class PermutedNoise implements Noise1d, Noise2d, Noise3d, Noise4d, TiledN
                                 + permutator.permute(Utils.floorModExt(w, tw)))));
     }
 
+    /**
+     * Changes tiling periods, zero period disables tiling of the axis.
+     *
+     * Must not be called while other thread generates from this noise,
+     * caches generating in background included.
+     *
+     * @param tx Period along x axis.
+     * @param ty Period along y axis.
+     * @param tz Period along z axis.
+     * @param tw Period along w axis.
+     */
     public void setTiling(int tx, int ty, int tz, int tw) {
         this.tx = tx;
         this.ty = ty;
         this.tz = tz;
         this.tw = tw;
+        version = Utils.nextVersion();
+    }
+
+    /**
+     * Replaces permutation table, for example to change seed.
+     *
+     * Must not be called while other thread generates from this noise,
+     * caches generating in background included.
+     *
+     * @param permutator Permutation table to be used in generation.
+     */
+    public void setPermutator(Permutator permutator) {
+        this.permutator = permutator;
+        version = Utils.nextVersion();
+    }
+
+    /**
+     * Replaces fader used for internal filtering.
+     *
+     * Must not be called while other thread generates from this noise,
+     * caches generating in background included.
+     *
+     * @param fader Fader for internal filtering.
+     */
+    public void setFader(Fader fader) {
+        this.fader = fader;
+        version = Utils.nextVersion();
+    }
+
+    public Permutator getPermutator() {
+        return permutator;
+    }
+
+    public Fader getFader() {
+        return fader;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public long configurationHash() {
+        long hash = getClass().getName().hashCode();
+        hash = Utils.mixHash(hash, permutator.longHash());
+        hash = Utils.mixHash(hash, faderHash(fader));
+        hash = Utils.mixHash(hash, tx);
+        hash = Utils.mixHash(hash, ty);
+        hash = Utils.mixHash(hash, tz);
+        return Utils.mixHash(hash, tw);
+    }
+
+    /**
+     * Checks if configuration hash covers whole configuration.
+     *
+     * User defined faders and permutators, as well as subclasses, may
+     * hold parameters unknown to the hash.
+     *
+     * @return True for this class with built in fader and permutator.
+     */
+    @Override
+    public boolean configurationComplete() {
+        return getClass() == PermutedNoise.class && builtInParts();
+    }
+
+    /**
+     * Checks if fader and permutator are built in ones.
+     *
+     * @return True if both are fully described by configuration hash.
+     */
+    protected boolean builtInParts() {
+        return permutator.getClass() == Permutator.class
+                && (fader == Fader.LINEAR || fader == Fader.PERLIN
+                        || fader == Fader.NEAREST);
+    }
+
+    /**
+     * Computes hash of fader that is stable between runs.
+     *
+     * User defined fader is represented by name of its class only, see
+     * {@link #configurationComplete()}.
+     *
+     * @param fader Fader to hash.
+     * @return Fader hash.
+     */
+    protected static int faderHash(Fader fader) {
+        if (fader == Fader.LINEAR)
+            return 1;
+        else if (fader == Fader.PERLIN)
+            return 2;
+        else if (fader == Fader.NEAREST)
+            return 3;
+        return fader.getClass().getName().hashCode();
     }
 
 }
@@ -0,0 +1,166 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.bench;
+
+/**
+ * Histogram of latencies with bounded relative error.
+ *
+ * Values below 64 have own buckets, larger ones share bucket with values
+ * of the same highest bit and next five bits, so reported percentiles are
+ * at most 1/32 above recorded values. Whole range of long fits in a few
+ * thousand buckets, recording never allocates.
+ *
+ * Histogram is not thread safe. Every thread records into its own one,
+ * and they are merged when measurement is over.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF = SUB_COUNT / 2;
+
+    private final long[] counts = new long[HALF * (64 - SUB_BITS + 3)];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    /**
+     * Records one value.
+     *
+     * @param value Value to be recorded, negative is taken as zero.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        ++counts[index(value)];
+        ++count;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds values recorded by other histogram.
+     *
+     * @param other Histogram to be added.
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; ++i)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Drops all recorded values.
+     *
+     */
+    public void reset() {
+        java.util.Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+    }
+
+    /**
+     * Computes value below which given fraction of values lies.
+     *
+     * @param fraction Fraction of values, from 0 to 1.
+     * @return Upper bound of bucket holding the percentile, clamped to
+     * maximal recorded value, or 0 for empty histogram.
+     */
+    public long percentile(double fraction) {
+        if (count == 0)
+            return 0;
+        long rank = (long) Math.ceil(fraction * count);
+        rank = Math.max(1, Math.min(count, rank));
+        long seen = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.max(min, Math.min(max, upper(i)));
+        }
+        return max;
+    }
+
+    /**
+     * Retrive number of recorded values.
+     *
+     * @return Number of values.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Retrive mean of recorded values.
+     *
+     * @return Mean, or 0 for empty histogram.
+     */
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Retrive minimal recorded value.
+     *
+     * @return Minimal value, or 0 for empty histogram.
+     */
+    public long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * Retrive maximal recorded value.
+     *
+     * @return Maximal value, or 0 for empty histogram.
+     */
+    public long max() {
+        return count == 0 ? 0 : max;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_COUNT)
+            return (int) value;
+        // keep the highest bit and next five, sub lies in 32..63
+        int shift = 64 - SUB_BITS - Long.numberOfLeadingZeros(value);
+        return HALF * shift + (int) (value >>> shift);
+    }
+
+    private static long upper(int index) {
+        if (index < SUB_COUNT)
+            return index;
+        int shift = index / HALF - 1;
+        long sub = index % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+}
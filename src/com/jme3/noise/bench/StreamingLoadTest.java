@@ -0,0 +1,594 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.bench;
+
+import com.jme3.noise.Noise2d;
+import com.jme3.noise.common.ImprovedPerlin;
+import com.jme3.noise.filter.Filter2d;
+import com.jme3.noise.fractal.CachedFractalNoise2d;
+import com.jme3.noise.fractal.FractalNoise2d;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Load test of chunk streaming driven by trajectories of many viewers.
+ *
+ * Every frame, each viewer requests chunks within radius around itself,
+ * nearest first. Requests of chunks already cached or being generated
+ * are served without generation, others are queued for a pool of worker
+ * threads. Every worker samples chunks from its own noise graph, as
+ * filters keep unsynchronized caches.
+ *
+ * Paced run issues frames at fixed interval and measures latency from
+ * intended issue time, so stalls of generation are not hidden by late
+ * issuing. Closed run issues next frame when previous one is done.
+ *
+ * Trajectories are seeded random walks or recorded positions, so runs
+ * can be repeated. Results are reported as JSON, see
+ * {@link #main(String[])}.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class StreamingLoadTest {
+
+    /**
+     * Result of one run.
+     *
+     * Latencies are in nanoseconds. Allocated bytes are counted for
+     * worker threads only, and are -1 when JVM does not count them. Cache
+     * counters are summed over filter chains of all workers.
+     */
+    public static final class Report {
+
+        public final LatencyHistogram latency = new LatencyHistogram();
+        public long requests, cacheHits, coalesced, generated;
+        public long samples;
+        public long nanos;
+        public long allocatedBytes = -1;
+        public long filterHits, filterMisses;
+        public long regionHits, regionMisses;
+
+        /**
+         * Computes generated chunks per second.
+         *
+         * @return Throughput of generation.
+         */
+        public double throughput() {
+            return generated * 1e9 / Math.max(1, nanos);
+        }
+
+        /**
+         * Formats report as JSON object, latencies in microseconds.
+         *
+         * @return JSON text.
+         */
+        public String toJson() {
+            StringBuilder b = new StringBuilder("{");
+            field(b, "seconds", nanos / 1e9);
+            field(b, "requests", requests);
+            field(b, "generated", generated);
+            field(b, "chunksPerSecond", throughput());
+            field(b, "samplesPerSecond", samples * 1e9 / Math.max(1, nanos));
+            field(b, "chunkCacheHitRate", rate(cacheHits + coalesced,
+                    requests));
+            field(b, "coalesced", coalesced);
+            field(b, "filterCacheHitRate", rate(filterHits, filterMisses
+                    + filterHits));
+            field(b, "regionCacheHitRate", rate(regionHits, regionMisses
+                    + regionHits));
+            field(b, "allocatedBytesPerSecond", allocatedBytes < 0 ? -1
+                    : allocatedBytes * 1e9 / Math.max(1, nanos));
+            field(b, "allocatedBytesPerChunk", allocatedBytes < 0 ? -1
+                    : (double) allocatedBytes / Math.max(1, generated));
+            b.append("\"latencyMicros\":{");
+            field(b, "mean", latency.mean() / 1e3);
+            field(b, "p50", latency.percentile(0.5) / 1e3);
+            field(b, "p99", latency.percentile(0.99) / 1e3);
+            field(b, "p999", latency.percentile(0.999) / 1e3);
+            field(b, "max", latency.max() / 1e3);
+            b.setLength(b.length() - 1);
+            return b.append("}}").toString();
+        }
+
+        private static double rate(long hits, long total) {
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        private static void field(StringBuilder b, String name,
+                double value) {
+            b.append('"').append(name).append("\":");
+            if (value == Math.rint(value) && Math.abs(value) < 1e15)
+                b.append((long) value);
+            else
+                b.append(String.format(Locale.ROOT, "%.6g", value));
+            b.append(',');
+        }
+    }
+
+    private static final Request STOP = new Request(0, 0);
+
+    private final Supplier<? extends Noise2d> sources;
+    private final int chunkSize;
+    private final double step;
+    private final int radius;
+    private final int threads;
+    private final int maxChunks;
+    // chunk offsets within radius, nearest first
+    private final int[] offsets;
+
+    /**
+     * Creates load test.
+     *
+     * @param sources Factory of noise graphs, called once per worker.
+     * @param chunkSize Number of samples along chunk edge.
+     * @param step Distance between neighbour samples.
+     * @param radius Radius of requested chunks around viewer, in chunks.
+     * @param threads Number of worker threads.
+     * @param maxChunks Maximal number of cached chunks.
+     */
+    public StreamingLoadTest(Supplier<? extends Noise2d> sources,
+            int chunkSize, double step, int radius, int threads,
+            int maxChunks) {
+        if (chunkSize < 1 || radius < 0 || threads < 1 || maxChunks < 1)
+            throw new IllegalArgumentException("Invalid load parameters.");
+        this.sources = sources;
+        this.chunkSize = chunkSize;
+        this.step = step;
+        this.radius = radius;
+        this.threads = threads;
+        this.maxChunks = maxChunks;
+        List<int[]> disc = new ArrayList<int[]>();
+        for (int j = -radius; j <= radius; ++j)
+            for (int i = -radius; i <= radius; ++i)
+                if (i * i + j * j <= radius * radius + radius)
+                    disc.add(new int[]{i, j});
+        disc.sort((a, b) -> Integer.compare(a[0] * a[0] + a[1] * a[1],
+                b[0] * b[0] + b[1] * b[1]));
+        offsets = new int[disc.size() * 2];
+        for (int i = 0; i < disc.size(); ++i) {
+            offsets[2 * i] = disc.get(i)[0];
+            offsets[2 * i + 1] = disc.get(i)[1];
+        }
+    }
+
+    /**
+     * Replays trajectories of viewers.
+     *
+     * Trajectory of viewer v holds x of frame f at index 2f and y at
+     * 2f + 1. Viewers with shorter trajectories stay at their last
+     * position.
+     *
+     * @param trajectories Positions of viewers, one array per viewer.
+     * @param frameNanos Interval between frames, or 0 for closed run.
+     * @return Measured results.
+     * @throws InterruptedException If thread is interrupted while waiting.
+     * @throws RuntimeException First exception thrown by noise in worker
+     * thread, run stops after it.
+     */
+    public Report run(double[][] trajectories, long frameNanos)
+            throws InterruptedException {
+        final Map<Long, float[]> cache = new LinkedHashMap<Long, float[]>(
+                16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, float[]> e) {
+                return size() > maxChunks;
+            }
+        };
+        ConcurrentHashMap<Long, Boolean> pending
+                = new ConcurrentHashMap<Long, Boolean>();
+        LinkedBlockingQueue<Request> queue
+                = new LinkedBlockingQueue<Request>();
+        AtomicReference<Throwable> failure
+                = new AtomicReference<Throwable>();
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; ++i) {
+            workers[i] = new Worker(cache, pending, queue, failure);
+            workers[i].start();
+        }
+
+        Report report = new Report();
+        int frames = 0;
+        for (double[] trajectory : trajectories)
+            frames = Math.max(frames, trajectory.length / 2);
+        double span = chunkSize * step;
+        long start = System.nanoTime();
+        try {
+            for (int f = 0; f < frames; ++f) {
+                long issued = start + f * frameNanos;
+                if (frameNanos > 0) {
+                    long wait = issued - System.nanoTime();
+                    if (wait > 0)
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                } else {
+                    awaitIdle(pending, failure);
+                    issued = System.nanoTime();
+                }
+                if (failure.get() != null)
+                    break;
+                for (double[] trajectory : trajectories) {
+                    int last = Math.min(f, trajectory.length / 2 - 1);
+                    if (last < 0)
+                        continue;
+                    int cx = (int) Math.floor(trajectory[2 * last] / span);
+                    int cy = (int) Math.floor(
+                            trajectory[2 * last + 1] / span);
+                    for (int i = 0; i < offsets.length; i += 2) {
+                        long key = key(cx + offsets[i], cy + offsets[i + 1]);
+                        ++report.requests;
+                        boolean hit;
+                        synchronized (cache) {
+                            hit = cache.get(key) != null;
+                        }
+                        if (hit)
+                            ++report.cacheHits;
+                        else if (pending.putIfAbsent(key, Boolean.TRUE)
+                                != null)
+                            ++report.coalesced;
+                        else
+                            queue.add(new Request(key, issued));
+                    }
+                }
+            }
+            awaitIdle(pending, failure);
+            report.nanos = System.nanoTime() - start;
+        } finally {
+            queue.clear();
+            for (int i = 0; i < threads; ++i)
+                queue.add(STOP);
+            for (Worker worker : workers)
+                worker.join();
+        }
+        Throwable e = failure.get();
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        else if (e instanceof Error)
+            throw (Error) e;
+
+        long allocated = 0;
+        for (Worker worker : workers) {
+            report.latency.merge(worker.latency);
+            report.generated += worker.generated;
+            allocated = worker.allocated < 0 || allocated < 0
+                    ? -1 : allocated + worker.allocated;
+            for (Noise2d node = worker.source; node instanceof Filter2d;
+                    node = ((Filter2d) node).getSource()) {
+                report.filterHits += ((Filter2d) node).getCacheHits();
+                report.filterMisses += ((Filter2d) node).getCacheMisses();
+                if (node instanceof CachedFractalNoise2d) {
+                    CachedFractalNoise2d cached = (CachedFractalNoise2d) node;
+                    report.regionHits += cached.getRegionHits();
+                    report.regionMisses += cached.getRegionMisses();
+                }
+            }
+        }
+        report.allocatedBytes = allocated;
+        report.samples = report.generated * chunkSize * chunkSize;
+        return report;
+    }
+
+    private static void awaitIdle(ConcurrentHashMap<Long, Boolean> pending,
+            AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        synchronized (pending) {
+            while (!pending.isEmpty() && failure.get() == null)
+                pending.wait();
+        }
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private static final class Request {
+
+        final long key;
+        final long issued;
+
+        Request(long key, long issued) {
+            this.key = key;
+            this.issued = issued;
+        }
+    }
+
+    private final class Worker extends Thread {
+
+        final Map<Long, float[]> cache;
+        final ConcurrentHashMap<Long, Boolean> pending;
+        final LinkedBlockingQueue<Request> queue;
+        final AtomicReference<Throwable> failure;
+        final LatencyHistogram latency = new LatencyHistogram();
+        Noise2d source;
+        long generated;
+        long allocated = -1;
+
+        Worker(Map<Long, float[]> cache,
+                ConcurrentHashMap<Long, Boolean> pending,
+                LinkedBlockingQueue<Request> queue,
+                AtomicReference<Throwable> failure) {
+            this.cache = cache;
+            this.pending = pending;
+            this.queue = queue;
+            this.failure = failure;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long before = allocatedBytes();
+            double span = chunkSize * step;
+            try {
+                source = sources.get();
+                while (true) {
+                    Request request = queue.take();
+                    if (request == STOP)
+                        break;
+                    try {
+                        generate(request, span);
+                    } finally {
+                        pending.remove(request.key);
+                        if (pending.isEmpty())
+                            synchronized (pending) {
+                                pending.notifyAll();
+                            }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+                // wakes caller waiting for chunks that will not come
+                synchronized (pending) {
+                    pending.notifyAll();
+                }
+            }
+            long after = allocatedBytes();
+            allocated = before < 0 || after < 0 ? -1 : after - before;
+        }
+
+        private void generate(Request request, double span) {
+            int cx = (int) (request.key >> 32);
+            int cy = (int) request.key;
+            float[] chunk = new float[chunkSize * chunkSize];
+            source.values(cx * span, cy * span, step,
+                    chunkSize, chunkSize, chunk, 0);
+            synchronized (cache) {
+                cache.put(request.key, chunk);
+            }
+            latency.record(System.nanoTime() - request.issued);
+            ++generated;
+        }
+    }
+
+    /**
+     * Retrive bytes allocated by current thread.
+     *
+     * @return Allocated bytes, or -1 if JVM does not count them.
+     */
+    private static long allocatedBytes() {
+        try {
+            Object bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean)
+                return ((com.sun.management.ThreadMXBean) bean)
+                        .getThreadAllocatedBytes(
+                                Thread.currentThread().getId());
+        } catch (LinkageError | UnsupportedOperationException e) {
+            // not a HotSpot JVM
+        }
+        return -1;
+    }
+
+    /**
+     * Generates seeded random walks of viewers.
+     *
+     * Viewers start scattered around origin and move with given speed,
+     * turning smoothly, so their requested chunks overlap.
+     *
+     * @param seed Seed of walks.
+     * @param viewers Number of viewers.
+     * @param frames Number of frames.
+     * @param speed Distance moved in one frame.
+     * @param spread Maximal distance of start from origin.
+     * @return Trajectories, see {@link #run(double[][], long)}.
+     */
+    public static double[][] randomWalks(long seed, int viewers, int frames,
+            double speed, double spread) {
+        Random random = new Random(seed);
+        double[][] trajectories = new double[viewers][2 * frames];
+        for (double[] trajectory : trajectories) {
+            double x = (random.nextDouble() * 2 - 1) * spread;
+            double y = (random.nextDouble() * 2 - 1) * spread;
+            double heading = random.nextDouble() * 2 * Math.PI;
+            for (int f = 0; f < frames; ++f) {
+                trajectory[2 * f] = x;
+                trajectory[2 * f + 1] = y;
+                heading += random.nextGaussian() * 0.1;
+                x += Math.cos(heading) * speed;
+                y += Math.sin(heading) * speed;
+            }
+        }
+        return trajectories;
+    }
+
+    /**
+     * Reads recorded trajectories.
+     *
+     * Every line holds viewer number, frame number and x and y cordinates,
+     * separated by spaces or commas. Empty lines and lines starting with #
+     * are skipped. Frames missing in the record repeat previous position.
+     *
+     * @param file Text file with positions.
+     * @return Trajectories, see {@link #run(double[][], long)}.
+     * @throws IOException If file can't be read or is malformed.
+     */
+    public static double[][] load(File file) throws IOException {
+        Map<Integer, TreeMap<Integer, double[]>> viewers
+                = new TreeMap<Integer, TreeMap<Integer, double[]>>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                ++number;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] parts = line.split("[\\s,]+");
+                try {
+                    if (parts.length != 4)
+                        throw new NumberFormatException();
+                    viewers.computeIfAbsent(Integer.parseInt(parts[0]),
+                            v -> new TreeMap<Integer, double[]>()).put(
+                            Integer.parseInt(parts[1]), new double[]{
+                                Double.parseDouble(parts[2]),
+                                Double.parseDouble(parts[3])});
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed line " + number
+                            + " of " + file);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        double[][] trajectories = new double[viewers.size()][];
+        int v = 0;
+        for (TreeMap<Integer, double[]> frames : viewers.values()) {
+            int count = frames.lastKey() + 1;
+            double[] trajectory = new double[2 * count];
+            double[] position = frames.values().iterator().next();
+            for (int f = 0; f < count; ++f) {
+                double[] recorded = frames.get(f);
+                if (recorded != null)
+                    position = recorded;
+                trajectory[2 * f] = position[0];
+                trajectory[2 * f + 1] = position[1];
+            }
+            trajectories[v++] = trajectory;
+        }
+        return trajectories;
+    }
+
+    /**
+     * Runs load test from command line and prints JSON report.
+     *
+     * Arguments are name=value pairs: source (perlin, fractal or cached),
+     * seed, octaves, viewers, frames, speed, spread, trajectories (file
+     * replacing random walks), threads, chunk, step, radius, cache,
+     * frameMillis (0 for closed run) and warmup frames.
+     *
+     * @param args Arguments of the test.
+     * @throws Exception If test fails.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<String, String>();
+        options.put("source", "fractal");
+        options.put("seed", "1");
+        options.put("octaves", "8");
+        options.put("viewers", "256");
+        options.put("frames", "300");
+        options.put("speed", "0.5");
+        options.put("spread", "64");
+        options.put("trajectories", "");
+        options.put("threads",
+                "" + Runtime.getRuntime().availableProcessors());
+        options.put("chunk", "32");
+        options.put("step", "0.0625");
+        options.put("radius", "4");
+        options.put("cache", "16384");
+        options.put("frameMillis", "16");
+        options.put("warmup", "100");
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0 || !options.containsKey(arg.substring(0, split)))
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+
+        final String kind = options.get("source");
+        final long seed = Long.parseLong(options.get("seed"));
+        final int octaves = Integer.parseInt(options.get("octaves"));
+        Supplier<Noise2d> sources = () -> {
+            switch (kind) {
+                case "perlin":
+                    return new ImprovedPerlin(seed);
+                case "fractal":
+                    return new FractalNoise2d(new ImprovedPerlin(seed),
+                            octaves);
+                case "cached":
+                    return new CachedFractalNoise2d(new ImprovedPerlin(seed),
+                            octaves, octaves / 2, 4);
+                default:
+                    throw new IllegalArgumentException(
+                            "Unknown source: " + kind);
+            }
+        };
+        double[][] trajectories = options.get("trajectories").isEmpty()
+                ? randomWalks(seed, Integer.parseInt(options.get("viewers")),
+                        Integer.parseInt(options.get("frames")),
+                        Double.parseDouble(options.get("speed")),
+                        Double.parseDouble(options.get("spread")))
+                : load(new File(options.get("trajectories")));
+        StreamingLoadTest test = new StreamingLoadTest(sources,
+                Integer.parseInt(options.get("chunk")),
+                Double.parseDouble(options.get("step")),
+                Integer.parseInt(options.get("radius")),
+                Integer.parseInt(options.get("threads")),
+                Integer.parseInt(options.get("cache")));
+        long frameNanos = Long.parseLong(options.get("frameMillis")) * 1000000;
+
+        int warmup = Integer.parseInt(options.get("warmup"));
+        if (warmup > 0) {
+            // separate walks, so measured run starts with empty caches
+            test.run(randomWalks(~seed, trajectories.length, warmup,
+                    Double.parseDouble(options.get("speed")),
+                    Double.parseDouble(options.get("spread"))), 0);
+        }
+        Report report = test.run(trajectories, frameNanos);
+
+        StringBuilder b = new StringBuilder("{\"config\":{");
+        for (Map.Entry<String, String> e : options.entrySet())
+            b.append('"').append(e.getKey()).append("\":\"")
+                    .append(e.getValue().replace("\\", "\\\\")
+                            .replace("\"", "\\\""))
+                    .append("\",");
+        b.setLength(b.length() - 1);
+        b.append("},\"result\":").append(report.toJson()).append('}');
+        System.out.println(b);
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.biome;
+
+/** Maps climate of biome site, values of noise fields, to biome.
+ *
+ * @author Piotr SQLek Skólski
+ * @see BiomeMap2d
+ */
+public interface BiomeClassifier {
+
+    /** Creates classifier choosing biome with closest climate.
+     *
+     * Biome i is described by climates[i], one value per noise field.
+     * Site gets biome whose climate is closest in euclidean metric.
+     *
+     * @param climates Climate of every biome.
+     * @return Nearest climate classifier.
+     */
+    public static BiomeClassifier nearest(final float[][] climates) {
+        return new BiomeClassifier() {
+            public int classify(float[] climate) {
+                int best = 0;
+                float bestDistance = Float.POSITIVE_INFINITY;
+                for (int b = 0; b < climates.length; ++b) {
+                    float distance = 0;
+                    for (int f = 0; f < climate.length; ++f) {
+                        float d = climate[f] - climates[b][f];
+                        distance += d * d;
+                    }
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = b;
+                    }
+                }
+                return best;
+            }
+        };
+    }
+
+    /** Computes biome of a site.
+     *
+     * @param climate Values of noise fields at the site.
+     * @return Biome of the site, zero or greater.
+     */
+    int classify(float[] climate);
+
+}
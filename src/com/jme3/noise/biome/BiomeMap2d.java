@@ -0,0 +1,568 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.biome;
+
+import com.jme3.noise.Noise2d;
+import com.jme3.noise.Permutator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Voronoi map of biomes with cached sites and baked blend weights.
+ *
+ * Plane is split into square site cells, every cell holds one biome site
+ * at position hashed by {@link Permutator}. Sites are generated in square
+ * regions of cells, noise fields are sampled at all sites of region in
+ * bulk and {@link BiomeClassifier} turns them into biome of every site.
+ * Regions are kept in a bounded LRU cache.
+ *
+ * Blocks get biomes of nearby sites. Site at distance d gets weight
+ * (1 - (d - nearest)/blend)^2, weights of sites with the same biome are
+ * summed, at most {@link #MAX_BLEND} strongest biomes are kept and
+ * normalized. Weights are baked for square tiles of blocks kept in other
+ * LRU cache, so block query is an array read.
+ *
+ * Block x, y is sampled at its center, x + 0.5, y + 0.5.
+ * Caches are synchronized, map can be queried from many threads.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class BiomeMap2d {
+
+    /**
+     * Number of site cells along region edge.
+     *
+     */
+    public static final int REGION_SIZE = 16;
+
+    private static final int REGION_SHIFT = 4;
+
+    /**
+     * Maximal number of biomes blended in one block.
+     *
+     */
+    public static final int MAX_BLEND = 4;
+
+    /**
+     * Default limit of cached regions.
+     *
+     */
+    public static final int DEFAULT_MAX_REGIONS = 64;
+
+    /**
+     * Default limit of cached tiles.
+     *
+     */
+    public static final int DEFAULT_MAX_TILES = 256;
+
+    private final Permutator permutator;
+    private final Noise2d[] fields;
+    private final double fieldScale;
+    private final BiomeClassifier classifier;
+    private final double spacing;
+    private final double blend;
+    private final int tileSize;
+    // site cells searched around cell of a block
+    private final int reach;
+
+    private final Map<Long, Region> regions;
+    private final Map<Long, Tile> tiles;
+    private volatile Tile recent;
+
+    /**
+     * Creates biome map.
+     *
+     * @param permutator Permutation table hashing site positions.
+     * @param fields Noise fields describing climate of sites.
+     * @param fieldScale Scale of site cordinates for sampling fields.
+     * @param classifier Classifier of site climate.
+     * @param spacing Edge of site cell, in blocks.
+     * @param blend Width of blended border, in blocks, zero for sharp one.
+     * @param tileSize Number of blocks along tile edge.
+     * @param maxRegions Maximal number of cached regions.
+     * @param maxTiles Maximal number of cached tiles.
+     */
+    public BiomeMap2d(Permutator permutator, Noise2d[] fields,
+            double fieldScale, BiomeClassifier classifier, double spacing,
+            double blend, int tileSize, final int maxRegions,
+            final int maxTiles) {
+        if (fields.length < 1)
+            throw new IllegalArgumentException(
+                    "At least one field is required.");
+        if (!(spacing > 0))
+            throw new IllegalArgumentException(
+                    "Spacing must be greater than zero.");
+        if (!(blend >= 0))
+            throw new IllegalArgumentException(
+                    "Blend must be zero or greater.");
+        if (tileSize < 1)
+            throw new IllegalArgumentException(
+                    "Tile size must be one or greater.");
+        this.permutator = permutator;
+        this.fields = fields.clone();
+        this.fieldScale = fieldScale;
+        this.classifier = classifier;
+        this.spacing = spacing;
+        this.blend = blend;
+        this.tileSize = tileSize;
+        // nearest site is closer than two cells, so blended sites are
+        // closer than two cells plus blend width
+        reach = 2 + (int) Math.ceil(blend / spacing);
+        regions = new LinkedHashMap<Long, Region>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Region> e) {
+                return size() > maxRegions;
+            }
+        };
+        tiles = new LinkedHashMap<Long, Tile>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Tile> e) {
+                return size() > maxTiles;
+            }
+        };
+    }
+
+    /**
+     * Creates biome map with default cache limits.
+     *
+     * @param seed Seed of permutation table hashing site positions.
+     * @param fields Noise fields describing climate of sites.
+     * @param fieldScale Scale of site cordinates for sampling fields.
+     * @param classifier Classifier of site climate.
+     * @param spacing Edge of site cell, in blocks.
+     * @param blend Width of blended border, in blocks, zero for sharp one.
+     * @param tileSize Number of blocks along tile edge.
+     */
+    public BiomeMap2d(long seed, Noise2d[] fields, double fieldScale,
+            BiomeClassifier classifier, double spacing, double blend,
+            int tileSize) {
+        this(new Permutator(seed), fields, fieldScale, classifier, spacing,
+                blend, tileSize, DEFAULT_MAX_REGIONS, DEFAULT_MAX_TILES);
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public double getSpacing() {
+        return spacing;
+    }
+
+    public double getBlend() {
+        return blend;
+    }
+
+    /**
+     * Retrive dominant biome of a block.
+     *
+     * @param x Block cordinate.
+     * @param y Block cordinate.
+     * @return Biome with greatest blend weight.
+     */
+    public int biome(int x, int y) {
+        int tx = Math.floorDiv(x, tileSize);
+        int ty = Math.floorDiv(y, tileSize);
+        return tile(tx, ty).biome(x - tx * tileSize, y - ty * tileSize);
+    }
+
+    /**
+     * Retrive blended biomes of a block.
+     *
+     * Biomes are ordered by weight, strongest first, weights sum to one.
+     *
+     * @param x Block cordinate.
+     * @param y Block cordinate.
+     * @param ids Array of at least MAX_BLEND elements for biomes.
+     * @param weights Array of at least MAX_BLEND elements for weights.
+     * @return Number of blended biomes.
+     */
+    public int blend(int x, int y, int[] ids, float[] weights) {
+        int tx = Math.floorDiv(x, tileSize);
+        int ty = Math.floorDiv(y, tileSize);
+        return tile(tx, ty).blend(x - tx * tileSize, y - ty * tileSize,
+                ids, weights);
+    }
+
+    /**
+     * Retrive tile of baked blend weights, baking it if not cached.
+     *
+     * @param tx Tile cordinate.
+     * @param ty Tile cordinate.
+     * @return Tile covering blocks from tx*tileSize, ty*tileSize.
+     */
+    public Tile tile(int tx, int ty) {
+        Tile tile = recent;
+        if (tile != null && tile.tx == tx && tile.ty == ty)
+            return tile;
+        Long key = key(tx, ty);
+        synchronized (tiles) {
+            tile = tiles.get(key);
+        }
+        if (tile == null) {
+            tile = bake(tx, ty);
+            synchronized (tiles) {
+                tiles.put(key, tile);
+            }
+        }
+        recent = tile;
+        return tile;
+    }
+
+    /**
+     * Bakes all not cached tiles covering a box of blocks.
+     *
+     * @param minX Minimal block cordinate, inclusive.
+     * @param minY Minimal block cordinate, inclusive.
+     * @param maxX Maximal block cordinate, inclusive.
+     * @param maxY Maximal block cordinate, inclusive.
+     */
+    public void prepare(int minX, int minY, int maxX, int maxY) {
+        for (int ty = Math.floorDiv(minY, tileSize),
+                ty1 = Math.floorDiv(maxY, tileSize); ty <= ty1; ++ty)
+            for (int tx = Math.floorDiv(minX, tileSize),
+                    tx1 = Math.floorDiv(maxX, tileSize); tx <= tx1; ++tx)
+                tile(tx, ty);
+    }
+
+    /**
+     * Computes biome of site nearest to given cordinate.
+     *
+     * Uses only region cache. With blending dominant biome of a block
+     * may differ, when several sites of other biome are near.
+     *
+     * @param x Cordinate, in blocks.
+     * @param y Cordinate, in blocks.
+     * @return Biome of nearest site.
+     */
+    public int nearest(double x, double y) {
+        int ccx = (int) Math.floor(x / spacing);
+        int ccy = (int) Math.floor(y / spacing);
+        double best = Double.POSITIVE_INFINITY;
+        int biome = 0;
+        for (int cy = ccy - 2; cy <= ccy + 2; ++cy)
+            for (int cx = ccx - 2; cx <= ccx + 2; ++cx) {
+                Region region = region(cx >> REGION_SHIFT,
+                        cy >> REGION_SHIFT);
+                int k = site(cx, cy);
+                double dx = region.xs[k] - x, dy = region.ys[k] - y;
+                double distance = dx * dx + dy * dy;
+                if (distance < best) {
+                    best = distance;
+                    biome = region.biomes[k];
+                }
+            }
+        return biome;
+    }
+
+    /**
+     * Drops all cached regions and tiles.
+     *
+     */
+    public void clearCache() {
+        synchronized (regions) {
+            regions.clear();
+        }
+        synchronized (tiles) {
+            tiles.clear();
+        }
+        recent = null;
+    }
+
+    private static Long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    private static int site(int cx, int cy) {
+        int mask = REGION_SIZE - 1;
+        return (cy & mask) << REGION_SHIFT | (cx & mask);
+    }
+
+    private Region region(int rx, int ry) {
+        Long key = key(rx, ry);
+        Region region;
+        synchronized (regions) {
+            region = regions.get(key);
+        }
+        if (region == null) {
+            region = generate(rx, ry);
+            synchronized (regions) {
+                regions.put(key, region);
+            }
+        }
+        return region;
+    }
+
+    /**
+     * Hashes site cell, higher bits of cordinates are hashed too, so
+     * sites do not repeat after permutator size of cells.
+     */
+    private int hash(int cx, int cy, int salt) {
+        Permutator p = permutator;
+        return p.permute(cx + p.permute(cy
+                + p.permute((cx >> 8) + p.permute((cy >> 8) + salt))));
+    }
+
+    /**
+     * Places sites of one region and classifies them.
+     *
+     * Every field is sampled at all sites of region by one bulk call.
+     */
+    private Region generate(int rx, int ry) {
+        int n = REGION_SIZE * REGION_SIZE;
+        Region region = new Region(n);
+        float[] fx = new float[n];
+        float[] fy = new float[n];
+        float size = permutator.size();
+        for (int j = 0; j < REGION_SIZE; ++j)
+            for (int i = 0; i < REGION_SIZE; ++i) {
+                int cx = (rx << REGION_SHIFT) + i;
+                int cy = (ry << REGION_SHIFT) + j;
+                int k = j * REGION_SIZE + i;
+                region.xs[k] = (cx + (hash(cx, cy, 0) + 0.5) / size)
+                        * spacing;
+                region.ys[k] = (cy + (hash(cx, cy, 1) + 0.5) / size)
+                        * spacing;
+                fx[k] = (float) (region.xs[k] * fieldScale);
+                fy[k] = (float) (region.ys[k] * fieldScale);
+            }
+        float[][] samples = new float[fields.length][n];
+        for (int f = 0; f < fields.length; ++f)
+            fields[f].values(fx, fy, samples[f], 0, n);
+        float[] climate = new float[fields.length];
+        for (int k = 0; k < n; ++k) {
+            for (int f = 0; f < fields.length; ++f)
+                climate[f] = samples[f][k];
+            region.biomes[k] = classifier.classify(climate);
+        }
+        return region;
+    }
+
+    /**
+     * Bakes blend weights of one tile.
+     *
+     * Sites of all cells reachable from the tile are copied from regions
+     * into one grid first, then every block searches its neighbourhood
+     * of that grid.
+     */
+    private Tile bake(int tx, int ty) {
+        int size = tileSize;
+        double x0 = (double) tx * size + 0.5;
+        double y0 = (double) ty * size + 0.5;
+        int cx0 = (int) Math.floor(x0 / spacing) - reach;
+        int cy0 = (int) Math.floor(y0 / spacing) - reach;
+        int cx1 = (int) Math.floor((x0 + size - 1) / spacing) + reach;
+        int cy1 = (int) Math.floor((y0 + size - 1) / spacing) + reach;
+        int width = cx1 - cx0 + 1;
+        int height = cy1 - cy0 + 1;
+
+        double[] xs = new double[width * height];
+        double[] ys = new double[width * height];
+        int[] biomes = new int[width * height];
+        Region region = null;
+        int rx = 0, ry = 0;
+        for (int cy = cy0; cy <= cy1; ++cy)
+            for (int cx = cx0; cx <= cx1; ++cx) {
+                if (region == null || cx >> REGION_SHIFT != rx
+                        || cy >> REGION_SHIFT != ry) {
+                    rx = cx >> REGION_SHIFT;
+                    ry = cy >> REGION_SHIFT;
+                    region = region(rx, ry);
+                }
+                int k = site(cx, cy);
+                int index = (cy - cy0) * width + cx - cx0;
+                xs[index] = region.xs[k];
+                ys[index] = region.ys[k];
+                biomes[index] = region.biomes[k];
+            }
+
+        Tile tile = new Tile(tx, ty, size);
+        int candidates = (2 * reach + 1) * (2 * reach + 1);
+        float[] distances = new float[candidates];
+        int[] ids = new int[candidates];
+        float[] weights = new float[candidates];
+        for (int j = 0; j < size; ++j) {
+            double y = y0 + j;
+            int ccy = (int) Math.floor(y / spacing);
+            for (int i = 0; i < size; ++i) {
+                double x = x0 + i;
+                int ccx = (int) Math.floor(x / spacing);
+                int count = 0;
+                float nearest = Float.POSITIVE_INFINITY;
+                for (int cy = ccy - reach; cy <= ccy + reach; ++cy) {
+                    int row = (cy - cy0) * width - cx0;
+                    for (int cx = ccx - reach; cx <= ccx + reach; ++cx) {
+                        double dx = xs[row + cx] - x;
+                        double dy = ys[row + cx] - y;
+                        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+                        distances[count] = distance;
+                        ids[count++] = biomes[row + cx];
+                        if (distance < nearest)
+                            nearest = distance;
+                    }
+                }
+                mix(distances, ids, weights, count, nearest,
+                        tile, (j * size + i) * MAX_BLEND);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Computes blend of one block from distances to candidate sites.
+     *
+     * Weights of the same biome are merged in place, then strongest
+     * biomes are selected and normalized.
+     */
+    private void mix(float[] distances, int[] ids, float[] weights,
+            int count, float nearest, Tile tile, int offset) {
+        int biomes = 0;
+        for (int c = 0; c < count; ++c) {
+            float weight;
+            if (blend == 0) {
+                weight = distances[c] == nearest ? 1 : 0;
+            } else {
+                weight = 1 - (float) ((distances[c] - nearest) / blend);
+                weight *= weight;
+            }
+            if (weight <= 0 || distances[c] - nearest > blend)
+                continue;
+            int b = 0;
+            while (b < biomes && ids[b] != ids[c])
+                ++b;
+            if (b == biomes) {
+                ids[biomes] = ids[c];
+                weights[biomes++] = 0;
+            }
+            weights[b] += weight;
+        }
+
+        float sum = 0;
+        int kept = Math.min(biomes, MAX_BLEND);
+        for (int s = 0; s < kept; ++s) {
+            int best = s;
+            for (int b = s + 1; b < biomes; ++b)
+                if (weights[b] > weights[best])
+                    best = b;
+            int id = ids[best];
+            float weight = weights[best];
+            ids[best] = ids[s];
+            weights[best] = weights[s];
+            ids[s] = id;
+            weights[s] = weight;
+            sum += weight;
+        }
+        for (int s = 0; s < MAX_BLEND; ++s) {
+            tile.ids[offset + s] = s < kept ? ids[s] : -1;
+            tile.weights[offset + s] = s < kept ? weights[s] / sum : 0;
+        }
+    }
+
+    private static final class Region {
+
+        final double[] xs;
+        final double[] ys;
+        final int[] biomes;
+
+        Region(int sites) {
+            xs = new double[sites];
+            ys = new double[sites];
+            biomes = new int[sites];
+        }
+    }
+
+    /**
+     * Baked blend weights of square tile of blocks.
+     *
+     * Block i, j of tile has MAX_BLEND slots from index
+     * (j*size + i)*MAX_BLEND, ordered by weight, strongest first.
+     * Unused slots have biome minus one and weight zero.
+     */
+    public static final class Tile {
+
+        public final int tx;
+        public final int ty;
+        public final int size;
+        private final int[] ids;
+        private final float[] weights;
+
+        Tile(int tx, int ty, int size) {
+            this.tx = tx;
+            this.ty = ty;
+            this.size = size;
+            ids = new int[size * size * MAX_BLEND];
+            weights = new float[size * size * MAX_BLEND];
+        }
+
+        /**
+         * Retrive dominant biome of a block.
+         *
+         * @param i Block column inside tile.
+         * @param j Block row inside tile.
+         * @return Biome with greatest blend weight.
+         */
+        public int biome(int i, int j) {
+            return ids[(j * size + i) * MAX_BLEND];
+        }
+
+        /**
+         * Retrive blended biomes of a block.
+         *
+         * @param i Block column inside tile.
+         * @param j Block row inside tile.
+         * @param ids Array of at least MAX_BLEND elements for biomes.
+         * @param weights Array of at least MAX_BLEND elements for weights.
+         * @return Number of blended biomes.
+         */
+        public int blend(int i, int j, int[] ids, float[] weights) {
+            int offset = (j * size + i) * MAX_BLEND;
+            int count = 0;
+            while (count < MAX_BLEND && this.ids[offset + count] >= 0) {
+                ids[count] = this.ids[offset + count];
+                weights[count] = this.weights[offset + count];
+                ++count;
+            }
+            return count;
+        }
+
+        /**
+         * Retrive biome slots of all blocks, must not be modified.
+         *
+         * @return Biomes, MAX_BLEND per block.
+         */
+        public int[] getIds() {
+            return ids;
+        }
+
+        /**
+         * Retrive weight slots of all blocks, must not be modified.
+         *
+         * @return Weights, MAX_BLEND per block.
+         */
+        public float[] getWeights() {
+            return weights;
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.chunk;
+
+import com.jme3.noise.Noise2d;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates square chunks of two dimension noise with shared borders.
+ *
+ * Every chunk has a skirt of one sample on each side, so neighbour chunks
+ * overlap by two columns or rows of samples. Finished chunk publishes
+ * its border strips in a concurrent edge cache, neighbour generated later
+ * copies them instead of evaluating noise again and drops them, as both
+ * sides of the edge are done.
+ *
+ * Chunks can be generated from many threads at once. If two neighbours
+ * are generated at the same time, both evaluate shared samples and the
+ * one finished later drops the strip published by the other.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class ChunkGrid2d {
+
+    /**
+     * Default limit of cached edge strips.
+     *
+     */
+    public static final int DEFAULT_MAX_EDGES = 1024;
+
+    private final Noise2d source;
+    private final int size;
+    private final double step;
+    private final int maxEdges;
+
+    // strips between chunk (cx,cy) and (cx+1,cy), two columns by size+2 rows
+    private final ConcurrentHashMap<Long, float[]> xEdges
+            = new ConcurrentHashMap<Long, float[]>();
+    // strips between chunk (cx,cy) and (cx,cy+1), two rows by size+2 columns
+    private final ConcurrentHashMap<Long, float[]> yEdges
+            = new ConcurrentHashMap<Long, float[]>();
+
+    /**
+     * Creates chunk grid for given source.
+     *
+     * @param source Noise to be sampled.
+     * @param size Number of samples along chunk edge, without skirt.
+     * @param step Distance between neighbour samples.
+     * @param maxEdges Maximal number of cached edge strips.
+     */
+    public ChunkGrid2d(Noise2d source, int size, double step, int maxEdges) {
+        if (size < 2)
+            throw new IllegalArgumentException(
+                    "Chunk size must be two or greater.");
+        this.source = source;
+        this.size = size;
+        this.step = step;
+        this.maxEdges = maxEdges;
+    }
+
+    /**
+     * Creates chunk grid with default edge cache limit.
+     *
+     * @param source Noise to be sampled.
+     * @param size Number of samples along chunk edge, without skirt.
+     * @param step Distance between neighbour samples.
+     */
+    public ChunkGrid2d(Noise2d source, int size, double step) {
+        this(source, size, step, DEFAULT_MAX_EDGES);
+    }
+
+    /**
+     * Retrive number of samples in one row of generated chunk.
+     *
+     * @return Chunk size plus two samples of skirt.
+     */
+    public int stride() {
+        return size + 2;
+    }
+
+    /**
+     * Generates one chunk.
+     *
+     * Sample of column i and row j, both from minus one to size inclusive,
+     * is taken at ((cx*size + i)*step, (cy*size + j)*step) and stored at
+     * index (j+1)*stride() + i + 1.
+     *
+     * @param cx Chunk cordinate.
+     * @param cy Chunk cordinate.
+     * @param result Array of at least stride()^2 elements, or null.
+     * @return Array with generated samples.
+     */
+    public float[] generate(int cx, int cy, float[] result) {
+        int n = size + 2;
+        if (result == null)
+            result = new float[n * n];
+        boolean[] filled = new boolean[n * n];
+
+        float[] left = xEdges.remove(key(cx - 1, cy));
+        float[] right = xEdges.remove(key(cx, cy));
+        float[] bottom = yEdges.remove(key(cx, cy - 1));
+        float[] top = yEdges.remove(key(cx, cy));
+        if (left != null)
+            copyColumns(left, result, filled, 0);
+        if (right != null)
+            copyColumns(right, result, filled, n - 2);
+        if (bottom != null)
+            copyRows(bottom, result, filled, 0);
+        if (top != null)
+            copyRows(top, result, filled, n - 2);
+
+        long x0 = (long) cx * size - 1;
+        long y0 = (long) cy * size - 1;
+        for (int j = 0; j < n; ++j)
+            for (int i = 0; i < n; ++i)
+                if (!filled[j * n + i])
+                    result[j * n + i] = source.value(
+                            (x0 + i) * step, (y0 + j) * step);
+
+        if (left == null)
+            publish(xEdges, key(cx - 1, cy), columns(result, 0));
+        if (right == null)
+            publish(xEdges, key(cx, cy), columns(result, n - 2));
+        if (bottom == null)
+            publish(yEdges, key(cx, cy - 1), rows(result, 0));
+        if (top == null)
+            publish(yEdges, key(cx, cy), rows(result, n - 2));
+        return result;
+    }
+
+    /**
+     * Drops all cached edge strips.
+     *
+     */
+    public void clear() {
+        xEdges.clear();
+        yEdges.clear();
+    }
+
+    /**
+     * Retrive number of cached edge strips.
+     *
+     * @return Number of strips waiting for their second chunk.
+     */
+    public int cachedEdges() {
+        return xEdges.size() + yEdges.size();
+    }
+
+    private void publish(ConcurrentHashMap<Long, float[]> edges,
+            Long key, final float[] strip) {
+        final boolean full = cachedEdges() >= maxEdges;
+        // strip already published by neighbour means both sides are done
+        edges.compute(key, (k, v) -> v != null || full ? null : strip);
+    }
+
+    private static Long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private float[] columns(float[] result, int first) {
+        int n = size + 2;
+        float[] strip = new float[2 * n];
+        for (int j = 0; j < n; ++j) {
+            strip[j * 2] = result[j * n + first];
+            strip[j * 2 + 1] = result[j * n + first + 1];
+        }
+        return strip;
+    }
+
+    private float[] rows(float[] result, int first) {
+        int n = size + 2;
+        float[] strip = new float[2 * n];
+        System.arraycopy(result, first * n, strip, 0, 2 * n);
+        return strip;
+    }
+
+    private void copyColumns(float[] strip, float[] result,
+            boolean[] filled, int first) {
+        int n = size + 2;
+        for (int j = 0; j < n; ++j) {
+            result[j * n + first] = strip[j * 2];
+            result[j * n + first + 1] = strip[j * 2 + 1];
+            filled[j * n + first] = true;
+            filled[j * n + first + 1] = true;
+        }
+    }
+
+    private void copyRows(float[] strip, float[] result,
+            boolean[] filled, int first) {
+        int n = size + 2;
+        System.arraycopy(strip, 0, result, first * n, 2 * n);
+        for (int i = first * n; i < (first + 2) * n; ++i)
+            filled[i] = true;
+    }
+
+}
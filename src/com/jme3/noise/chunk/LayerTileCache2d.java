@@ -0,0 +1,411 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.chunk;
+
+import com.jme3.noise.Noise2d;
+import com.jme3.noise.Tracked;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Cache of noise tiles for named layers, rebuilt when layer noise changes.
+ *
+ * Every tile remembers version and configuration hash of layer noise it
+ * was generated from, see {@link Tracked}. After noise graph is edited,
+ * {@link #refresh()} finds layers whose version changed and schedules
+ * rebuild of their tiles only. Tiles of layer changed and changed back
+ * keep their samples, as configuration hash matches again. This is done
+ * only for configurations completely covered by the hash, see
+ * {@link Tracked#configurationComplete()}, so it can only save a rebuild,
+ * never serve wrong samples.
+ *
+ * Tiles are generated on given executor by a single task at a time,
+ * nearest to viewer first. Stale samples stay available until new ones
+ * are ready. Layer noise must not be evaluated by other threads
+ * meanwhile, as filters keep unsynchronized caches. For the same reason
+ * layer noise must be edited, for example by setOctaves or setFader, only
+ * while cache is {@link #idle()}, after {@link #cancel()} if needed.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class LayerTileCache2d {
+
+    /**
+     * Default limit of cached tiles per layer.
+     *
+     */
+    public static final int DEFAULT_MAX_TILES = 1024;
+
+    private final int tileSize;
+    private final double step;
+    private final int maxTiles;
+    private final Executor executor;
+
+    private final Map<String, Layer> layers = new HashMap<String, Layer>();
+    private final ArrayList<Request> pending = new ArrayList<Request>();
+    private boolean running = false;
+    private double viewerX = 0, viewerY = 0;
+
+    /**
+     * Creates cache of square tiles.
+     *
+     * @param tileSize Number of samples along tile edge.
+     * @param step Distance between neighbour samples.
+     * @param maxTiles Maximal number of cached tiles per layer.
+     * @param executor Executor for background generation.
+     */
+    public LayerTileCache2d(int tileSize, double step, int maxTiles,
+            Executor executor) {
+        if (tileSize < 1)
+            throw new IllegalArgumentException(
+                    "Tile size must be positive.");
+        this.tileSize = tileSize;
+        this.step = step;
+        this.maxTiles = maxTiles;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates cache of square tiles with default tile limit.
+     *
+     * @param tileSize Number of samples along tile edge.
+     * @param step Distance between neighbour samples.
+     * @param executor Executor for background generation.
+     */
+    public LayerTileCache2d(int tileSize, double step, Executor executor) {
+        this(tileSize, step, DEFAULT_MAX_TILES, executor);
+    }
+
+    /**
+     * Adds or replaces layer. Tiles of replaced layer are dropped.
+     *
+     * Noise not implementing {@link Tracked} is never rebuilt.
+     *
+     * @param name Layer name.
+     * @param source Noise of layer.
+     */
+    public synchronized void setLayer(String name, Noise2d source) {
+        layers.put(name, new Layer(name, source));
+        dropPending(name);
+    }
+
+    /**
+     * Removes layer and its tiles.
+     *
+     * @param name Layer name.
+     */
+    public synchronized void removeLayer(String name) {
+        layers.remove(name);
+        dropPending(name);
+    }
+
+    private void dropPending(String name) {
+        for (int i = pending.size() - 1; i >= 0; --i)
+            if (pending.get(i).layer.name.equals(name))
+                pending.remove(i);
+    }
+
+    /**
+     * Sets viewer position used to order generation.
+     *
+     * @param x Viewer cordinate.
+     * @param y Viewer cordinate.
+     */
+    public synchronized void setViewer(double x, double y) {
+        viewerX = x;
+        viewerY = y;
+    }
+
+    /**
+     * Retrive samples of tile, scheduling generation if missing or stale.
+     *
+     * Samples are stored row by row, tile (tx,ty) starts at cordinates
+     * tx*tileSize*step, ty*tileSize*step. Returned array must not be
+     * modified.
+     *
+     * @param name Layer name.
+     * @param tx Tile index.
+     * @param ty Tile index.
+     * @return Latest samples, possibly stale, or null if not generated yet.
+     */
+    public float[] tile(String name, int tx, int ty) {
+        Layer layer;
+        synchronized (this) {
+            layer = layers.get(name);
+        }
+        if (layer == null)
+            throw new IllegalArgumentException("No such layer: " + name);
+        long key = key(tx, ty);
+        Tile tile = layer.tiles.get(key);
+        if (tile == null || tile.version != layer.version())
+            schedule(layer, tx, ty);
+        return tile == null ? null : tile.samples;
+    }
+
+    /**
+     * Checks if tile is generated from current layer noise.
+     *
+     * @param name Layer name.
+     * @param tx Tile index.
+     * @param ty Tile index.
+     * @return True if tile is cached and up to date.
+     */
+    public boolean isCurrent(String name, int tx, int ty) {
+        Layer layer;
+        synchronized (this) {
+            layer = layers.get(name);
+        }
+        if (layer == null)
+            return false;
+        Tile tile = layer.tiles.get(key(tx, ty));
+        return tile != null && tile.version == layer.version();
+    }
+
+    /**
+     * Schedules rebuild of tiles of layers changed since last refresh.
+     *
+     * Tiles generated from complete configuration with the same hash as
+     * current complete one are marked up to date without generation.
+     *
+     * @return Number of tiles scheduled for generation.
+     */
+    public int refresh() {
+        ArrayList<Layer> changed = new ArrayList<Layer>();
+        synchronized (this) {
+            for (Layer layer : layers.values())
+                if (layer.version() != layer.refreshed)
+                    changed.add(layer);
+        }
+        int scheduled = 0;
+        for (Layer layer : changed) {
+            long version = layer.version();
+            long hash = layer.configurationHash();
+            boolean complete = layer.configurationComplete();
+            layer.refreshed = version;
+            for (Map.Entry<Long, Tile> entry : layer.tiles.entrySet()) {
+                Tile tile = entry.getValue();
+                if (tile.version == version)
+                    continue;
+                if (complete && tile.complete && tile.hash == hash) {
+                    layer.tiles.replace(entry.getKey(), tile,
+                            new Tile(tile.samples, version, hash, true));
+                } else {
+                    long key = entry.getKey();
+                    if (schedule(layer, (int) (key >> 32), (int) key))
+                        ++scheduled;
+                }
+            }
+        }
+        return scheduled;
+    }
+
+    /**
+     * Retrive number of tiles waiting for generation.
+     *
+     * @return Number of scheduled tiles.
+     */
+    public synchronized int pending() {
+        return pending.size();
+    }
+
+    /**
+     * Drops all scheduled, not started generation.
+     *
+     */
+    public synchronized void cancel() {
+        pending.clear();
+    }
+
+    /**
+     * Checks if no tile is generated nor scheduled.
+     *
+     * @return True if background task is not running.
+     */
+    public synchronized boolean idle() {
+        return !running;
+    }
+
+    public int tileSize() {
+        return tileSize;
+    }
+
+    private synchronized boolean schedule(Layer layer, int tx, int ty) {
+        if (layers.get(layer.name) != layer)
+            return false;
+        for (Request request : pending)
+            if (request.layer == layer
+                    && request.tx == tx && request.ty == ty)
+                return false;
+        pending.add(new Request(layer, tx, ty));
+        if (!running) {
+            running = true;
+            executor.execute(new Runnable() {
+                public void run() {
+                    work();
+                }
+            });
+        }
+        return true;
+    }
+
+    private synchronized Request next() {
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < pending.size(); ++i) {
+            double distance = distance(pending.get(i).tx, pending.get(i).ty);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        if (best < 0) {
+            running = false;
+            return null;
+        }
+        // swap with last keeps removal constant time
+        Request request = pending.get(best);
+        pending.set(best, pending.get(pending.size() - 1));
+        pending.remove(pending.size() - 1);
+        return request;
+    }
+
+    private void work() {
+        float[] buffer = null;
+        try {
+            for (Request request = next(); request != null;
+                    request = next()) {
+                Layer layer = request.layer;
+                long version = layer.version();
+                long hash = layer.configurationHash();
+                boolean complete = layer.configurationComplete();
+                long key = key(request.tx, request.ty);
+                Tile old = layer.tiles.get(key);
+                if (old != null && old.version == version)
+                    continue;
+                if (buffer == null)
+                    buffer = new float[tileSize * tileSize];
+                layer.source.values(request.tx * (double) tileSize * step,
+                        request.ty * (double) tileSize * step, step,
+                        tileSize, tileSize, buffer, 0);
+                layer.tiles.put(key,
+                        new Tile(buffer, version, hash, complete));
+                buffer = null;
+                if (old == null && layer.tiles.size() > maxTiles)
+                    evict(layer);
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                running = false;
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void evict(Layer layer) {
+        long farthest = 0;
+        double farthestDistance = -1;
+        for (Long key : layer.tiles.keySet()) {
+            double distance = distance((int) (key >> 32), (int) (long) key);
+            if (distance > farthestDistance) {
+                farthestDistance = distance;
+                farthest = key;
+            }
+        }
+        if (farthestDistance >= 0)
+            layer.tiles.remove(farthest);
+    }
+
+    // squared distance from viewer to tile center, needs lock held
+    private double distance(int tx, int ty) {
+        double dx = (tx + 0.5) * tileSize * step - viewerX;
+        double dy = (ty + 0.5) * tileSize * step - viewerY;
+        return dx * dx + dy * dy;
+    }
+
+    private static long key(int tx, int ty) {
+        return ((long) tx << 32) | (ty & 0xffffffffL);
+    }
+
+    private static final class Layer {
+
+        final String name;
+        final Noise2d source;
+        final ConcurrentHashMap<Long, Tile> tiles
+                = new ConcurrentHashMap<Long, Tile>();
+        volatile long refreshed;
+
+        Layer(String name, Noise2d source) {
+            this.name = name;
+            this.source = source;
+            refreshed = version();
+        }
+
+        long version() {
+            return source instanceof Tracked
+                    ? ((Tracked) source).version() : 0;
+        }
+
+        long configurationHash() {
+            return source instanceof Tracked
+                    ? ((Tracked) source).configurationHash() : 0;
+        }
+
+        boolean configurationComplete() {
+            return source instanceof Tracked
+                    && ((Tracked) source).configurationComplete();
+        }
+    }
+
+    private static final class Tile {
+
+        final float[] samples;
+        final long version;
+        final long hash;
+        final boolean complete;
+
+        Tile(float[] samples, long version, long hash, boolean complete) {
+            this.samples = samples;
+            this.version = version;
+            this.hash = hash;
+            this.complete = complete;
+        }
+    }
+
+    private static final class Request {
+
+        final Layer layer;
+        final int tx, ty;
+
+        Request(Layer layer, int tx, int ty) {
+            this.layer = layer;
+            this.tx = tx;
+            this.ty = ty;
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.common;
+
+import com.jme3.noise.Fader;
+import com.jme3.noise.Permutator;
+import com.jme3.noise.TiledNoise;
+import com.jme3.noise.Utils;
+
+/**
+ * Divergence free vector field, curl of three improved perlin channels.
+ *
+ * Every channel of the potential is {@link ImprovedPerlin} with its own
+ * permutator, so channels are not correlated. Lattice cell, tiling and
+ * fade weights with their derivatives are computed once per point, then
+ * every channel hashes its corners and adds analytic partial derivatives,
+ * so single pass gives the whole curl without finite differences.
+ *
+ * Faders other than built-in ones are treated as mixing with weight
+ * fader.fade(f, 0, 1), with numeric derivative of that weight.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class CurlNoise3d implements TiledNoise {
+
+    // gradient vectors of ImprovedPerlin.grad(h, x, y, z) for h & 15
+    private static final float[] GX = new float[16];
+    private static final float[] GY = new float[16];
+    private static final float[] GZ = new float[16];
+
+    static {
+        for (int h = 0; h < 16; ++h) {
+            GX[h] = ImprovedPerlin.grad(h, 1, 0, 0);
+            GY[h] = ImprovedPerlin.grad(h, 0, 1, 0);
+            GZ[h] = ImprovedPerlin.grad(h, 0, 0, 1);
+        }
+    }
+
+    private final Permutator[] permutators;
+    private final Fader fader;
+    private final int kind;
+
+    private int tx = 0, ty = 0, tz = 0;
+
+    // scratch for one point, weights and derivatives per axis
+    private final float[] weights = new float[6];
+    private final float[] derivatives = new float[9];
+
+    /**
+     * Creates field with specified potential permutators and fader.
+     *
+     * @param px Permutation table of first potential channel.
+     * @param py Permutation table of second potential channel.
+     * @param pz Permutation table of third potential channel.
+     * @param fader Fader for internal filtering.
+     */
+    public CurlNoise3d(Permutator px, Permutator py, Permutator pz,
+            Fader fader) {
+        permutators = new Permutator[]{px, py, pz};
+        this.fader = fader;
+        if (fader == Fader.LINEAR)
+            kind = 1;
+        else if (fader == Fader.PERLIN)
+            kind = 2;
+        else if (fader == Fader.NEAREST)
+            kind = 3;
+        else
+            kind = 0;
+    }
+
+    /**
+     * Creates field with channels seeded from given seed.
+     *
+     * @param seed Seed of first channel, next ones use following seeds.
+     * @param fader Fader for internal filtering.
+     */
+    public CurlNoise3d(long seed, Fader fader) {
+        this(new Permutator(seed), new Permutator(seed + 1),
+                new Permutator(seed + 2), fader);
+    }
+
+    /**
+     * Creates field with channels seeded from given seed and default fader.
+     *
+     * @param seed Seed of first channel, next ones use following seeds.
+     */
+    public CurlNoise3d(long seed) {
+        this(seed, ImprovedPerlin.DEFAULT_PERLIN_FADER);
+    }
+
+    /**
+     * Computes field vector at given cordinate.
+     *
+     * Not thread safe, uses internal scratch arrays.
+     *
+     * @param x Input cordinate. Any value except NaN and INF.
+     * @param y Input cordinate. Any value except NaN and INF.
+     * @param z Input cordinate. Any value except NaN and INF.
+     * @param result Array for vector, three components.
+     * @param offset Index of first component in result.
+     */
+    public void value(float x, float y, float z, float[] result, int offset) {
+        compute(x, y, z);
+        float[] d = derivatives;
+        result[offset] = d[7] - d[5];
+        result[offset + 1] = d[2] - d[6];
+        result[offset + 2] = d[3] - d[1];
+    }
+
+    /**
+     * Computes field vectors for scattered cordinates.
+     *
+     * Components are written to separate arrays, at the index of point.
+     * Not thread safe, uses internal scratch arrays.
+     *
+     * @param xs Input cordinates.
+     * @param ys Input cordinates.
+     * @param zs Input cordinates.
+     * @param vx Array for x components.
+     * @param vy Array for y components.
+     * @param vz Array for z components.
+     * @param offset Index of first point.
+     * @param count Number of points.
+     */
+    public void values(float[] xs, float[] ys, float[] zs,
+            float[] vx, float[] vy, float[] vz, int offset, int count) {
+        float[] d = derivatives;
+        for (int i = offset, end = offset + count; i < end; ++i) {
+            compute(xs[i], ys[i], zs[i]);
+            vx[i] = d[7] - d[5];
+            vy[i] = d[2] - d[6];
+            vz[i] = d[3] - d[1];
+        }
+    }
+
+    // stores partial derivatives of channel c along axis a at 3*c+a
+    private void compute(float x, float y, float z) {
+        int X = (int) Math.floor(x);
+        int Y = (int) Math.floor(y);
+        int Z = (int) Math.floor(z);
+        x -= X;
+        y -= Y;
+        z -= Z;
+        int x0 = Utils.floorModExt(X, tx), x1 = Utils.floorModExt(X + 1, tx);
+        int y0 = Utils.floorModExt(Y, ty), y1 = Utils.floorModExt(Y + 1, ty);
+        int z0 = Utils.floorModExt(Z, tz), z1 = Utils.floorModExt(Z + 1, tz);
+        float[] w = weights;
+        weight(x, w, 0);
+        weight(y, w, 2);
+        weight(z, w, 4);
+        float u = w[0], du = w[1], v = w[2], dv = w[3], s = w[4], ds = w[5];
+
+        for (int c = 0; c < 3; ++c) {
+            Permutator p = permutators[c];
+            int pz0 = p.permute(z0), pz1 = p.permute(z1);
+            int pA0 = p.permute(y0 + pz0), pA1 = p.permute(y0 + pz1);
+            int pB0 = p.permute(y1 + pz0), pB1 = p.permute(y1 + pz1);
+            float dx = 0, dy = 0, dz = 0;
+            for (int corner = 0; corner < 8; ++corner) {
+                int a = corner >> 2, b = corner >> 1 & 1, e = corner & 1;
+                int hash = p.permute((a == 0 ? x0 : x1)
+                        + (b == 0 ? (e == 0 ? pA0 : pA1)
+                                : (e == 0 ? pB0 : pB1))) & 15;
+                float gx = GX[hash], gy = GY[hash], gz = GZ[hash];
+                float dot = gx * (x - a) + gy * (y - b) + gz * (z - e);
+                float wx = a == 0 ? 1 - u : u, dwx = a == 0 ? -du : du;
+                float wy = b == 0 ? 1 - v : v, dwy = b == 0 ? -dv : dv;
+                float wz = e == 0 ? 1 - s : s, dwz = e == 0 ? -ds : ds;
+                float weight = wx * wy * wz;
+                dx += dwx * wy * wz * dot + weight * gx;
+                dy += wx * dwy * wz * dot + weight * gy;
+                dz += wx * wy * dwz * dot + weight * gz;
+            }
+            derivatives[c * 3] = dx;
+            derivatives[c * 3 + 1] = dy;
+            derivatives[c * 3 + 2] = dz;
+        }
+    }
+
+    /**
+     * Computes mixing weight and its derivative for fractional cordinate.
+     */
+    private void weight(float f, float[] result, int index) {
+        switch (kind) {
+            case 1:
+                result[index] = f;
+                result[index + 1] = 1;
+                break;
+            case 2:
+                result[index] = f * f * f * (f * (f * 6 - 15) + 10);
+                result[index + 1] = 30 * f * f * (f - 1) * (f - 1);
+                break;
+            case 3:
+                result[index] = f < 0.5f ? 0 : 1;
+                result[index + 1] = 0;
+                break;
+            default:
+                float h = 1e-3f;
+                float a = Math.max(f - h, 0), b = Math.min(f + h, 1);
+                result[index] = fader.fade(f, 0, 1);
+                result[index + 1] = (fader.fade(b, 0, 1)
+                        - fader.fade(a, 0, 1)) / (b - a);
+        }
+    }
+
+    public void setTiling(int tx, int ty, int tz, int tw) {
+        this.tx = tx;
+        this.ty = ty;
+        this.tz = tz;
+    }
+
+}
@@ -33,8 +33,12 @@ import com.jme3.noise.basic.PermutedNoise;
  * Third dimension version is very similar to reference implementation from
  * Ken Perlin.
  * 
- * In addition it support tiling, one and two dimensions as well.
- * Support for four dimension is planed but not done.
+ * In addition it support tiling, one, two and four dimensions as well.
+ * Four dimension version uses 32 gradients pointing to middles of edges
+ * of tesseract.
+ * 
+ * Gradients are read from small tables indexed by hash, so no gradient
+ * function branches on hash.
  *
  * @author Piotr SQLek Skólski
  */
@@ -46,6 +50,52 @@ public class ImprovedPerlin extends PermutedNoise {
      */
     public static final Fader DEFAULT_PERLIN_FADER = Fader.PERLIN;
 
+    // gradient components, indexed by hash masked to table length
+    private static final float[] G1 = {1, -1};
+    private static final float[] G2X = new float[4];
+    private static final float[] G2Y = new float[4];
+    private static final float[] G3X = new float[16];
+    private static final float[] G3Y = new float[16];
+    private static final float[] G3Z = new float[16];
+    private static final float[] G4X = new float[32];
+    private static final float[] G4Y = new float[32];
+    private static final float[] G4Z = new float[32];
+    private static final float[] G4W = new float[32];
+
+    static {
+        for (int h = 0; h < 4; ++h) {
+            G2X[h] = (h & 1) == 0 ? 1 : -1;
+            G2Y[h] = (h & 2) == 0 ? 1 : -1;
+        }
+        // reference gradients of Ken Perlin, u along first, v along second
+        for (int h = 0; h < 16; ++h) {
+            float u = (h & 1) == 0 ? 1 : -1;
+            float v = (h & 2) == 0 ? 1 : -1;
+            if (h < 8)
+                G3X[h] = u;
+            else
+                G3Y[h] = u;
+            if (h < 4)
+                G3Y[h] = v;
+            else if (h == 12 || h == 14)
+                G3X[h] = v;
+            else
+                G3Z[h] = v;
+        }
+        // h >> 3 selects axis left zero, low bits select signs of others
+        for (int h = 0; h < 32; ++h) {
+            float[] g = new float[4];
+            int zero = h >> 3;
+            for (int a = 0, bit = 0; a < 4; ++a)
+                if (a != zero)
+                    g[a] = (h >> bit++ & 1) == 0 ? 1 : -1;
+            G4X[h] = g[0];
+            G4Y[h] = g[1];
+            G4Z[h] = g[2];
+            G4W[h] = g[3];
+        }
+    }
+
     /**
      * Creates generator with specified permutator and fader.
      *
@@ -94,10 +144,12 @@ public class ImprovedPerlin extends PermutedNoise {
     }
 
     @Override
-    public float value(float x) {
-        int X = (int) Math.floor(x);
-        x -= X;
+    public boolean configurationComplete() {
+        return getClass() == ImprovedPerlin.class && builtInParts();
+    }
 
+    @Override
+    protected float cellValue(int X, float x) {
         //corners int values A means lower value B means +1 value, vec(xyzw)
         int A = valueInt(X);
         int B = valueInt(X + 1);
@@ -108,12 +160,7 @@ public class ImprovedPerlin extends PermutedNoise {
     }
 
     @Override
-    public float value(float x, float y) {
-        int X = (int) Math.floor(x);
-        int Y = (int) Math.floor(y);
-        x -= X;
-        y -= Y;
-
+    protected float cellValue(int X, int Y, float x, float y) {
         //corners int values A means lower value B means +1 value, vec(xyzw)
         int AA = valueInt(X, Y);
         int AB = valueInt(X, Y + 1);
@@ -130,14 +177,25 @@ public class ImprovedPerlin extends PermutedNoise {
     }
 
     @Override
-    public float value(float x, float y, float z) {
-        int X = (int) Math.floor(x);
-        int Y = (int) Math.floor(y);
-        int Z = (int) Math.floor(z);
-        x -= X;
-        y -= Y;
-        z -= Z;
+    protected float cellValue(int X, int Y, float x, float y,
+            float u, float v) {
+        int AA = valueInt(X, Y);
+        int AB = valueInt(X, Y + 1);
+        int BA = valueInt(X + 1, Y);
+        int BB = valueInt(X + 1, Y + 1);
+
+        return Fader.interpolate(u,
+                Fader.interpolate(v,
+                        grad(AA, x, y),
+                        grad(AB, x, y - 1)),
+                Fader.interpolate(v,
+                        grad(BA, x - 1, y),
+                        grad(BB, x - 1, y - 1)));
+    }
 
+    @Override
+    protected float cellValue(int X, int Y, int Z,
+            float x, float y, float z) {
         //corners int values A means lower value B means +1 value, vec(xyzw)
         int AAA = valueInt(X, Y, Z);
         int AAB = valueInt(X, Y, Z + 1);
@@ -165,19 +223,409 @@ public class ImprovedPerlin extends PermutedNoise {
                                 grad(BBB, x - 1, y - 1, z - 1))));
     }
 
-    /** 4d version not ready.
-     * 
-     *  This method will throw {@link UnsupportedOperationException}.
-     * 
-     * @param x Input coordinate.
-     * @param y Input coordinate.
-     * @param z Input coordinate.
-     * @param w Input coordinate.
-     * @return Computed noise.
+    @Override
+    protected float cellValue(int X, int Y, int Z, float x, float y, float z,
+            float u, float v, float w) {
+        int AAA = valueInt(X, Y, Z);
+        int AAB = valueInt(X, Y, Z + 1);
+        int ABA = valueInt(X, Y + 1, Z);
+        int ABB = valueInt(X, Y + 1, Z + 1);
+        int BAA = valueInt(X + 1, Y, Z);
+        int BAB = valueInt(X + 1, Y, Z + 1);
+        int BBA = valueInt(X + 1, Y + 1, Z);
+        int BBB = valueInt(X + 1, Y + 1, Z + 1);
+
+        return Fader.interpolate(u,
+                Fader.interpolate(v,
+                        Fader.interpolate(w,
+                                grad(AAA, x, y, z),
+                                grad(AAB, x, y, z - 1)),
+                        Fader.interpolate(w,
+                                grad(ABA, x, y - 1, z),
+                                grad(ABB, x, y - 1, z - 1))),
+                Fader.interpolate(v,
+                        Fader.interpolate(w,
+                                grad(BAA, x - 1, y, z),
+                                grad(BAB, x - 1, y, z - 1)),
+                        Fader.interpolate(w,
+                                grad(BBA, x - 1, y - 1, z),
+                                grad(BBB, x - 1, y - 1, z - 1))));
+    }
+
+    @Override
+    public void values(float[] xs, float[] ys, float[] result,
+            int offset, int count) {
+        final int block = Math.min(count, BULK_BLOCK);
+        final Scratch scratch = scratch(2 * block);
+        final int[] cells = scratch.cells;
+        final float[] fractions = scratch.fractions;
+        final float[] weights = scratch.weights;
+        int X = 0, Y = 0;
+        int AA = 0, AB = 0, BA = 0, BB = 0;
+        boolean cell = false;
+        for (int start = offset, end = offset + count; start < end;
+                start += block) {
+            int n = Math.min(block, end - start);
+            split(xs, start, n, cells, fractions, 0);
+            split(ys, start, n, cells, fractions, block);
+            fader.weights(fractions, weights, 0, n);
+            fader.weights(fractions, weights, block, n);
+            for (int j = 0; j < n; ++j) {
+                int cx = cells[j], cy = cells[block + j];
+                if (!cell || cx != X || cy != Y) {
+                    X = cx;
+                    Y = cy;
+                    AA = valueInt(X, Y);
+                    AB = valueInt(X, Y + 1);
+                    BA = valueInt(X + 1, Y);
+                    BB = valueInt(X + 1, Y + 1);
+                    cell = true;
+                }
+                float x = fractions[j];
+                float y = fractions[block + j];
+                float u = weights[j];
+                float v = weights[block + j];
+
+                result[start + j] = Fader.interpolate(u,
+                        Fader.interpolate(v,
+                                grad(AA, x, y),
+                                grad(AB, x, y - 1)),
+                        Fader.interpolate(v,
+                                grad(BA, x - 1, y),
+                                grad(BB, x - 1, y - 1)));
+            }
+        }
+    }
+
+    @Override
+    public void values(float[] xs, float[] ys, float[] zs, float[] result,
+            int offset, int count) {
+        final int block = Math.min(count, BULK_BLOCK);
+        final Scratch scratch = scratch(3 * block);
+        final int[] cells = scratch.cells;
+        final float[] fractions = scratch.fractions;
+        final float[] weights = scratch.weights;
+        int X = 0, Y = 0, Z = 0;
+        int AAA = 0, AAB = 0, ABA = 0, ABB = 0;
+        int BAA = 0, BAB = 0, BBA = 0, BBB = 0;
+        boolean cell = false;
+        for (int start = offset, end = offset + count; start < end;
+                start += block) {
+            int n = Math.min(block, end - start);
+            split(xs, start, n, cells, fractions, 0);
+            split(ys, start, n, cells, fractions, block);
+            split(zs, start, n, cells, fractions, 2 * block);
+            fader.weights(fractions, weights, 0, n);
+            fader.weights(fractions, weights, block, n);
+            fader.weights(fractions, weights, 2 * block, n);
+            for (int j = 0; j < n; ++j) {
+                int cx = cells[j], cy = cells[block + j];
+                int cz = cells[2 * block + j];
+                if (!cell || cx != X || cy != Y || cz != Z) {
+                    X = cx;
+                    Y = cy;
+                    Z = cz;
+                    AAA = valueInt(X, Y, Z);
+                    AAB = valueInt(X, Y, Z + 1);
+                    ABA = valueInt(X, Y + 1, Z);
+                    ABB = valueInt(X, Y + 1, Z + 1);
+                    BAA = valueInt(X + 1, Y, Z);
+                    BAB = valueInt(X + 1, Y, Z + 1);
+                    BBA = valueInt(X + 1, Y + 1, Z);
+                    BBB = valueInt(X + 1, Y + 1, Z + 1);
+                    cell = true;
+                }
+                float x = fractions[j];
+                float y = fractions[block + j];
+                float z = fractions[2 * block + j];
+                float u = weights[j];
+                float v = weights[block + j];
+                float w = weights[2 * block + j];
+
+                result[start + j] = Fader.interpolate(u,
+                        Fader.interpolate(v,
+                                Fader.interpolate(w,
+                                        grad(AAA, x, y, z),
+                                        grad(AAB, x, y, z - 1)),
+                                Fader.interpolate(w,
+                                        grad(ABA, x, y - 1, z),
+                                        grad(ABB, x, y - 1, z - 1))),
+                        Fader.interpolate(v,
+                                Fader.interpolate(w,
+                                        grad(BAA, x - 1, y, z),
+                                        grad(BAB, x - 1, y, z - 1)),
+                                Fader.interpolate(w,
+                                        grad(BBA, x - 1, y - 1, z),
+                                        grad(BBB, x - 1, y - 1, z - 1))));
+            }
+        }
+    }
+
+    @Override
+    protected float cellValue(int X, int Y, int Z, int W,
+            float x, float y, float z, float w) {
+        //corners int values A means lower value B means +1 value, vec(xyzw)
+        int AAAA = valueInt(X, Y, Z, W);
+        int AAAB = valueInt(X, Y, Z, W + 1);
+        int AABA = valueInt(X, Y, Z + 1, W);
+        int AABB = valueInt(X, Y, Z + 1, W + 1);
+        int ABAA = valueInt(X, Y + 1, Z, W);
+        int ABAB = valueInt(X, Y + 1, Z, W + 1);
+        int ABBA = valueInt(X, Y + 1, Z + 1, W);
+        int ABBB = valueInt(X, Y + 1, Z + 1, W + 1);
+        int BAAA = valueInt(X + 1, Y, Z, W);
+        int BAAB = valueInt(X + 1, Y, Z, W + 1);
+        int BABA = valueInt(X + 1, Y, Z + 1, W);
+        int BABB = valueInt(X + 1, Y, Z + 1, W + 1);
+        int BBAA = valueInt(X + 1, Y + 1, Z, W);
+        int BBAB = valueInt(X + 1, Y + 1, Z, W + 1);
+        int BBBA = valueInt(X + 1, Y + 1, Z + 1, W);
+        int BBBB = valueInt(X + 1, Y + 1, Z + 1, W + 1);
+        float x1 = x - 1, y1 = y - 1, z1 = z - 1, w1 = w - 1;
+
+        return fader.fade(x,
+                fader.fade(y,
+                        fader.fade(z,
+                                fader.fade(w,
+                                        grad(AAAA, x, y, z, w),
+                                        grad(AAAB, x, y, z, w1)),
+                                fader.fade(w,
+                                        grad(AABA, x, y, z1, w),
+                                        grad(AABB, x, y, z1, w1))),
+                        fader.fade(z,
+                                fader.fade(w,
+                                        grad(ABAA, x, y1, z, w),
+                                        grad(ABAB, x, y1, z, w1)),
+                                fader.fade(w,
+                                        grad(ABBA, x, y1, z1, w),
+                                        grad(ABBB, x, y1, z1, w1)))),
+                fader.fade(y,
+                        fader.fade(z,
+                                fader.fade(w,
+                                        grad(BAAA, x1, y, z, w),
+                                        grad(BAAB, x1, y, z, w1)),
+                                fader.fade(w,
+                                        grad(BABA, x1, y, z1, w),
+                                        grad(BABB, x1, y, z1, w1))),
+                        fader.fade(z,
+                                fader.fade(w,
+                                        grad(BBAA, x1, y1, z, w),
+                                        grad(BBAB, x1, y1, z, w1)),
+                                fader.fade(w,
+                                        grad(BBBA, x1, y1, z1, w),
+                                        grad(BBBB, x1, y1, z1, w1)))));
+    }
+
+    @Override
+    public void values(float[] xs, float[] ys, float[] zs, float[] ws,
+            float[] result, int offset, int count) {
+        final int block = Math.min(count, BULK_BLOCK);
+        final Scratch scratch = scratch(4 * block);
+        final int[] cells = scratch.cells;
+        final float[] fractions = scratch.fractions;
+        final float[] weights = scratch.weights;
+        int X = 0, Y = 0, Z = 0, W = 0;
+        int AAAA = 0, AAAB = 0, AABA = 0, AABB = 0;
+        int ABAA = 0, ABAB = 0, ABBA = 0, ABBB = 0;
+        int BAAA = 0, BAAB = 0, BABA = 0, BABB = 0;
+        int BBAA = 0, BBAB = 0, BBBA = 0, BBBB = 0;
+        boolean cell = false;
+        for (int start = offset, end = offset + count; start < end;
+                start += block) {
+            int n = Math.min(block, end - start);
+            split(xs, start, n, cells, fractions, 0);
+            split(ys, start, n, cells, fractions, block);
+            split(zs, start, n, cells, fractions, 2 * block);
+            split(ws, start, n, cells, fractions, 3 * block);
+            fader.weights(fractions, weights, 0, 4 * block);
+            for (int j = 0; j < n; ++j) {
+                int cx = cells[j], cy = cells[block + j];
+                int cz = cells[2 * block + j], cw = cells[3 * block + j];
+                if (!cell || cx != X || cy != Y || cz != Z || cw != W) {
+                    X = cx;
+                    Y = cy;
+                    Z = cz;
+                    W = cw;
+                    AAAA = valueInt(X, Y, Z, W);
+                    AAAB = valueInt(X, Y, Z, W + 1);
+                    AABA = valueInt(X, Y, Z + 1, W);
+                    AABB = valueInt(X, Y, Z + 1, W + 1);
+                    ABAA = valueInt(X, Y + 1, Z, W);
+                    ABAB = valueInt(X, Y + 1, Z, W + 1);
+                    ABBA = valueInt(X, Y + 1, Z + 1, W);
+                    ABBB = valueInt(X, Y + 1, Z + 1, W + 1);
+                    BAAA = valueInt(X + 1, Y, Z, W);
+                    BAAB = valueInt(X + 1, Y, Z, W + 1);
+                    BABA = valueInt(X + 1, Y, Z + 1, W);
+                    BABB = valueInt(X + 1, Y, Z + 1, W + 1);
+                    BBAA = valueInt(X + 1, Y + 1, Z, W);
+                    BBAB = valueInt(X + 1, Y + 1, Z, W + 1);
+                    BBBA = valueInt(X + 1, Y + 1, Z + 1, W);
+                    BBBB = valueInt(X + 1, Y + 1, Z + 1, W + 1);
+                    cell = true;
+                }
+                float x = fractions[j], y = fractions[block + j];
+                float z = fractions[2 * block + j];
+                float w = fractions[3 * block + j];
+                float x1 = x - 1, y1 = y - 1, z1 = z - 1, w1 = w - 1;
+                float u = weights[j], v = weights[block + j];
+                float s = weights[2 * block + j];
+                float t = weights[3 * block + j];
+
+                result[start + j] = Fader.interpolate(u,
+                        Fader.interpolate(v,
+                                Fader.interpolate(s,
+                                        Fader.interpolate(t,
+                                                grad(AAAA, x, y, z, w),
+                                                grad(AAAB, x, y, z, w1)),
+                                        Fader.interpolate(t,
+                                                grad(AABA, x, y, z1, w),
+                                                grad(AABB, x, y, z1, w1))),
+                                Fader.interpolate(s,
+                                        Fader.interpolate(t,
+                                                grad(ABAA, x, y1, z, w),
+                                                grad(ABAB, x, y1, z, w1)),
+                                        Fader.interpolate(t,
+                                                grad(ABBA, x, y1, z1, w),
+                                                grad(ABBB, x, y1, z1, w1)))),
+                        Fader.interpolate(v,
+                                Fader.interpolate(s,
+                                        Fader.interpolate(t,
+                                                grad(BAAA, x1, y, z, w),
+                                                grad(BAAB, x1, y, z, w1)),
+                                        Fader.interpolate(t,
+                                                grad(BABA, x1, y, z1, w),
+                                                grad(BABB, x1, y, z1, w1))),
+                                Fader.interpolate(s,
+                                        Fader.interpolate(t,
+                                                grad(BBAA, x1, y1, z, w),
+                                                grad(BBAB, x1, y1, z, w1)),
+                                        Fader.interpolate(t,
+                                                grad(BBBA, x1, y1, z1, w),
+                                                grad(BBBB, x1, y1, z1, w1)))));
+            }
+        }
+    }
+
+    /**
+     * Stores range of all values this noise can return.
+     *
+     * Every corner gradient is at most this long in taxicab metric,
+     * so it bounds the dot product with any offset inside a cell.
+     *
+     * @param dimensions Number of dimensions, from one to four.
+     * @param range Array for computed range.
+     */
+    @Override
+    protected void globalBounds(int dimensions, float[] range) {
+        float limit = dimensions == 1 ? 1 : dimensions == 4 ? 3 : 2;
+        range[0] = -limit;
+        range[1] = limit;
+    }
+
+    /**
+     * Computes Lipschitz constant from fader slope and gradients.
+     *
+     * Along axis i pair of corners differs by at most one from offset
+     * along i, and by gradient difference, at most two, times offset
+     * along every other axis. Mixed over other axis by LINEAR or PERLIN
+     * fader, which never exceed the factor below half, this is at most
+     * one per other axis. Corner contributions change with offset too, by
+     * gradient component which is at most one.
+     *
+     * @param dimensions Number of dimensions, from one to four.
+     * @return Maximal slope, POSITIVE_INFINITY for not continuous fader.
      */
     @Override
-    public float value(float x, float y, float z, float w) {
-        throw new UnsupportedOperationException("Not supported yet.");
+    public float lipschitz(int dimensions) {
+        float other = fader == Fader.LINEAR || fader == Fader.PERLIN ? 1 : 2;
+        return (float) Math.sqrt(dimensions)
+                * (fader.slope() * (1 + (dimensions - 1) * other) + 1);
+    }
+
+    /**
+     * Widens range to cover samples of one lattice cell.
+     *
+     * Corner contribution is a dot product of gradient and offset, so its
+     * extremes lie on the corners of the part of the cell inside the box.
+     * Faders never leave range of contributions, so their range bounds
+     * the whole cell.
+     *
+     * @param X Lattice cell cordinate.
+     * @param x0 Minimal fractional cordinate inside the cell.
+     * @param x1 Maximal fractional cordinate inside the cell.
+     * @param range Range to widen.
+     */
+    @Override
+    protected void cellBounds(int X, float x0, float x1, float[] range) {
+        for (int c = 0; c < 2; ++c) {
+            float gx = grad(valueInt(X + c), 1);
+            widen(range,
+                    low(gx, x0 - c, x1 - c),
+                    high(gx, x0 - c, x1 - c));
+        }
+    }
+
+    @Override
+    protected void cellBounds(int X, int Y,
+            float x0, float y0, float x1, float y1, float[] range) {
+        for (int c = 0; c < 4; ++c) {
+            int cx = c >> 1, cy = c & 1;
+            int h = valueInt(X + cx, Y + cy);
+            float gx = grad(h, 1, 0), gy = grad(h, 0, 1);
+            widen(range,
+                    low(gx, x0 - cx, x1 - cx) + low(gy, y0 - cy, y1 - cy),
+                    high(gx, x0 - cx, x1 - cx) + high(gy, y0 - cy, y1 - cy));
+        }
+    }
+
+    @Override
+    protected void cellBounds(int X, int Y, int Z,
+            float x0, float y0, float z0,
+            float x1, float y1, float z1, float[] range) {
+        for (int c = 0; c < 8; ++c) {
+            int cx = c >> 2, cy = c >> 1 & 1, cz = c & 1;
+            int h = valueInt(X + cx, Y + cy, Z + cz);
+            float gx = grad(h, 1, 0, 0),
+                    gy = grad(h, 0, 1, 0),
+                    gz = grad(h, 0, 0, 1);
+            widen(range,
+                    low(gx, x0 - cx, x1 - cx) + low(gy, y0 - cy, y1 - cy)
+                    + low(gz, z0 - cz, z1 - cz),
+                    high(gx, x0 - cx, x1 - cx) + high(gy, y0 - cy, y1 - cy)
+                    + high(gz, z0 - cz, z1 - cz));
+        }
+    }
+
+    @Override
+    protected void cellBounds(int X, int Y, int Z, int W,
+            float x0, float y0, float z0, float w0,
+            float x1, float y1, float z1, float w1, float[] range) {
+        for (int c = 0; c < 16; ++c) {
+            int cx = c >> 3, cy = c >> 2 & 1, cz = c >> 1 & 1, cw = c & 1;
+            int h = valueInt(X + cx, Y + cy, Z + cz, W + cw) & 31;
+            float gx = G4X[h], gy = G4Y[h], gz = G4Z[h], gw = G4W[h];
+            widen(range,
+                    low(gx, x0 - cx, x1 - cx) + low(gy, y0 - cy, y1 - cy)
+                    + low(gz, z0 - cz, z1 - cz) + low(gw, w0 - cw, w1 - cw),
+                    high(gx, x0 - cx, x1 - cx) + high(gy, y0 - cy, y1 - cy)
+                    + high(gz, z0 - cz, z1 - cz) + high(gw, w0 - cw, w1 - cw));
+        }
+    }
+
+    private static float low(float g, float a, float b) {
+        return Math.min(g * a, g * b);
+    }
+
+    private static float high(float g, float a, float b) {
+        return Math.max(g * a, g * b);
+    }
+
+    private static void widen(float[] range, float min, float max) {
+        if (min < range[0])
+            range[0] = min;
+        if (max > range[1])
+            range[1] = max;
     }
 
     /** Hash a gradiend.
@@ -187,7 +635,7 @@ public class ImprovedPerlin extends PermutedNoise {
      * @return Computed gradiend.
      */
     public static float grad(int index, float x) {
-        return ((index & 1) == 0 ? x : -x);
+        return G1[index & 1] * x;
     }
 
     /** Hash a gradiend.
@@ -199,7 +647,7 @@ public class ImprovedPerlin extends PermutedNoise {
      */
     public static float grad(int index, float x, float y) {
         int h = index & 3;
-        return ((h & 1) == 0 ? x : -x) + ((h & 2) == 0 ? y : -y);
+        return G2X[h] * x + G2Y[h] * y;
     }
 
     /** Hash a gradiend.
@@ -212,15 +660,11 @@ public class ImprovedPerlin extends PermutedNoise {
      */
     public static float grad(int index, float x, float y, float z) {
         int h = index & 15;
-        float u = h < 8 ? x : y,
-                v = h < 4 ? y : h == 12 || h == 14 ? x : z;
-        return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
+        return G3X[h] * x + G3Y[h] * y + G3Z[h] * z;
     }
     
-    /** Hash a gradiend. ToDO.
+    /** Hash a gradiend.
      *
-     * This method will throw {@link UnsupportedOperationException}.
-     * 
      * @param index Index of gradiend.
      * @param x Fract of x coord.
      * @param y Fract of y coord.
@@ -229,7 +673,8 @@ public class ImprovedPerlin extends PermutedNoise {
      * @return Computed gradiend.
      */
     public static float grad(int index, float x, float y, float z, float w) {
-        throw new UnsupportedOperationException("Not supported yet.");
+        int h = index & 31;
+        return G4X[h] * x + G4Y[h] * y + G4Z[h] * z + G4W[h] * w;
     }
 
 }
@@ -0,0 +1,354 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jme3.noise.common;
+
+import com.jme3.noise.Fader;
+import com.jme3.noise.Permutator;
+import com.jme3.noise.TiledNoise;
+import com.jme3.noise.Utils;
+
+/**
+ * Improved perlin noise evaluated for several permutators at once.
+ *
+ * Every channel returns the same samples as {@link ImprovedPerlin} created
+ * with the same permutator and fader. Lattice cordinates, tiling and fade
+ * weights are computed once per sample and shared by all channels, only
+ * hashing and gradients are done per channel. Bulk paths compute fade
+ * weights of a block of points at once, see
+ * {@link Fader#weights(float[], float[], int, int)}.
+ *
+ * Samples are written to float arrays, either interleaved, with all
+ * channels of one point next to each other, or planar, with one plane of
+ * points per channel.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class MultiChannelPerlin implements TiledNoise {
+
+    /**
+     * Number of scattered points whose fade weights are computed at once.
+     */
+    private static final int BULK_BLOCK = 256;
+
+    private final Permutator[] permutators;
+    private final Fader fader;
+
+    private int tx = 0, ty = 0, tz = 0;
+
+    /**
+     * Creates generator with specified permutators and fader.
+     *
+     * @param permutators Permutation table for every channel.
+     * @param fader Fader for internal filtering.
+     */
+    public MultiChannelPerlin(Permutator[] permutators, Fader fader) {
+        if (permutators.length == 0)
+            throw new IllegalArgumentException(
+                    "At least one channel is required.");
+        this.permutators = permutators.clone();
+        this.fader = fader;
+    }
+
+    /**
+     * Creates generator with specified permutators and default fader.
+     *
+     * @param permutators Permutation table for every channel.
+     */
+    public MultiChannelPerlin(Permutator[] permutators) {
+        this(permutators, ImprovedPerlin.DEFAULT_PERLIN_FADER);
+    }
+
+    /**
+     * Creates generator with specified fader and seeds.
+     *
+     * @param seeds Seed for permutation table of every channel.
+     * @param fader Fader for internal filtering.
+     */
+    public MultiChannelPerlin(long[] seeds, Fader fader) {
+        this(permutators(seeds), fader);
+    }
+
+    /**
+     * Creates generator with default fader and specified seeds.
+     *
+     * @param seeds Seed for permutation table of every channel.
+     */
+    public MultiChannelPerlin(long[] seeds) {
+        this(permutators(seeds));
+    }
+
+    private static Permutator[] permutators(long[] seeds) {
+        Permutator[] permutators = new Permutator[seeds.length];
+        for (int i = 0; i < seeds.length; ++i)
+            permutators[i] = new Permutator(seeds[i]);
+        return permutators;
+    }
+
+    /**
+     * Retrive number of channels.
+     *
+     * @return Number of values computed for every sample.
+     */
+    public int channels() {
+        return permutators.length;
+    }
+
+    /**
+     * Computes all channels for given cordinate.
+     *
+     * @param x Input cordinate. Any value except NaN and INF.
+     * @param y Input cordinate. Any value except NaN and INF.
+     * @param result Array for computed samples, one per channel.
+     * @param offset Index of first channel in result.
+     */
+    public void value(float x, float y, float[] result, int offset) {
+        int X = (int) Math.floor(x);
+        int Y = (int) Math.floor(y);
+        x -= X;
+        y -= Y;
+        compute(X, Y, x, y, fader.fade(x, 0, 1), fader.fade(y, 0, 1),
+                result, offset, 1);
+    }
+
+    /**
+     * Computes all channels for given cordinate.
+     *
+     * @param x Input cordinate. Any value except NaN and INF.
+     * @param y Input cordinate. Any value except NaN and INF.
+     * @param z Input cordinate. Any value except NaN and INF.
+     * @param result Array for computed samples, one per channel.
+     * @param offset Index of first channel in result.
+     */
+    public void value(float x, float y, float z,
+            float[] result, int offset) {
+        int X = (int) Math.floor(x);
+        int Y = (int) Math.floor(y);
+        int Z = (int) Math.floor(z);
+        x -= X;
+        y -= Y;
+        z -= Z;
+        compute(X, Y, Z, x, y, z, fader.fade(x, 0, 1), fader.fade(y, 0, 1),
+                fader.fade(z, 0, 1), result, offset, 1);
+    }
+
+    /**
+     * Computes all channels for scattered cordinates into interleaved array.
+     *
+     * Channel c of point xs[offset+i], ys[offset+i] is stored in
+     * result[(offset+i)*channels() + c].
+     *
+     * @param xs Input cordinates. Any value except NaN and INF.
+     * @param ys Input cordinates. Any value except NaN and INF.
+     * @param result Array for computed samples.
+     * @param offset Index of first point.
+     * @param count Number of points to compute.
+     */
+    public void valuesInterleaved(float[] xs, float[] ys, float[] result,
+            int offset, int count) {
+        compute(xs, ys, result, offset, count, permutators.length, 1);
+    }
+
+    /**
+     * Computes all channels for scattered cordinates into interleaved array.
+     *
+     * Channel c of point xs[offset+i], ys[offset+i], zs[offset+i] is stored
+     * in result[(offset+i)*channels() + c].
+     *
+     * @param xs Input cordinates. Any value except NaN and INF.
+     * @param ys Input cordinates. Any value except NaN and INF.
+     * @param zs Input cordinates. Any value except NaN and INF.
+     * @param result Array for computed samples.
+     * @param offset Index of first point.
+     * @param count Number of points to compute.
+     */
+    public void valuesInterleaved(float[] xs, float[] ys, float[] zs,
+            float[] result, int offset, int count) {
+        compute(xs, ys, zs, result, offset, count, permutators.length, 1);
+    }
+
+    /**
+     * Computes all channels for scattered cordinates into planar array.
+     *
+     * Channel c of point xs[offset+i], ys[offset+i] is stored in
+     * result[c*plane + offset + i].
+     *
+     * @param xs Input cordinates. Any value except NaN and INF.
+     * @param ys Input cordinates. Any value except NaN and INF.
+     * @param result Array for computed samples.
+     * @param offset Index of first point.
+     * @param count Number of points to compute.
+     * @param plane Distance between planes of neighbour channels.
+     */
+    public void valuesPlanar(float[] xs, float[] ys, float[] result,
+            int offset, int count, int plane) {
+        compute(xs, ys, result, offset, count, 1, plane);
+    }
+
+    /**
+     * Computes all channels for scattered cordinates into planar array.
+     *
+     * Channel c of point xs[offset+i], ys[offset+i], zs[offset+i] is stored
+     * in result[c*plane + offset + i].
+     *
+     * @param xs Input cordinates. Any value except NaN and INF.
+     * @param ys Input cordinates. Any value except NaN and INF.
+     * @param zs Input cordinates. Any value except NaN and INF.
+     * @param result Array for computed samples.
+     * @param offset Index of first point.
+     * @param count Number of points to compute.
+     * @param plane Distance between planes of neighbour channels.
+     */
+    public void valuesPlanar(float[] xs, float[] ys, float[] zs,
+            float[] result, int offset, int count, int plane) {
+        compute(xs, ys, zs, result, offset, count, 1, plane);
+    }
+
+    /**
+     * Computes channels of scattered points, block by block.
+     *
+     * Channel c of point i is stored at result[i*pointStride +
+     * c*channelStride]. Fade weights of a block are computed at once by
+     * {@link Fader#weights(float[], float[], int, int)}.
+     */
+    private void compute(float[] xs, float[] ys, float[] result,
+            int offset, int count, int pointStride, int channelStride) {
+        final int block = Math.min(count, BULK_BLOCK);
+        int[] cxs = new int[block];
+        int[] cys = new int[block];
+        float[] fx = new float[block];
+        float[] fy = new float[block];
+        float[] u = new float[block];
+        float[] v = new float[block];
+        for (int start = offset, end = offset + count; start < end;
+                start += block) {
+            int n = Math.min(block, end - start);
+            for (int j = 0; j < n; ++j) {
+                float x = xs[start + j];
+                float y = ys[start + j];
+                cxs[j] = (int) Math.floor(x);
+                cys[j] = (int) Math.floor(y);
+                fx[j] = x - cxs[j];
+                fy[j] = y - cys[j];
+            }
+            fader.weights(fx, u, 0, n);
+            fader.weights(fy, v, 0, n);
+            for (int j = 0; j < n; ++j)
+                compute(cxs[j], cys[j], fx[j], fy[j], u[j], v[j],
+                        result, (start + j) * pointStride, channelStride);
+        }
+    }
+
+    private void compute(float[] xs, float[] ys, float[] zs,
+            float[] result, int offset, int count,
+            int pointStride, int channelStride) {
+        final int block = Math.min(count, BULK_BLOCK);
+        int[] cxs = new int[block];
+        int[] cys = new int[block];
+        int[] czs = new int[block];
+        float[] fx = new float[block];
+        float[] fy = new float[block];
+        float[] fz = new float[block];
+        float[] u = new float[block];
+        float[] v = new float[block];
+        float[] w = new float[block];
+        for (int start = offset, end = offset + count; start < end;
+                start += block) {
+            int n = Math.min(block, end - start);
+            for (int j = 0; j < n; ++j) {
+                float x = xs[start + j];
+                float y = ys[start + j];
+                float z = zs[start + j];
+                cxs[j] = (int) Math.floor(x);
+                cys[j] = (int) Math.floor(y);
+                czs[j] = (int) Math.floor(z);
+                fx[j] = x - cxs[j];
+                fy[j] = y - cys[j];
+                fz[j] = z - czs[j];
+            }
+            fader.weights(fx, u, 0, n);
+            fader.weights(fy, v, 0, n);
+            fader.weights(fz, w, 0, n);
+            for (int j = 0; j < n; ++j)
+                compute(cxs[j], cys[j], czs[j], fx[j], fy[j], fz[j],
+                        u[j], v[j], w[j], result,
+                        (start + j) * pointStride, channelStride);
+        }
+    }
+
+    /**
+     * Computes all channels inside one lattice cell with given weights.
+     */
+    private void compute(int X, int Y, float x, float y, float u, float v,
+            float[] result, int index, int stride) {
+        int x0 = Utils.floorModExt(X, tx), x1 = Utils.floorModExt(X + 1, tx);
+        int y0 = Utils.floorModExt(Y, ty), y1 = Utils.floorModExt(Y + 1, ty);
+
+        for (Permutator p : permutators) {
+            int py0 = p.permute(y0), py1 = p.permute(y1);
+            float AA = ImprovedPerlin.grad(p.permute(x0 + py0), x, y);
+            float AB = ImprovedPerlin.grad(p.permute(x0 + py1), x, y - 1);
+            float BA = ImprovedPerlin.grad(p.permute(x1 + py0), x - 1, y);
+            float BB = ImprovedPerlin.grad(p.permute(x1 + py1), x - 1, y - 1);
+            result[index] = Fader.interpolate(u,
+                    Fader.interpolate(v, AA, AB),
+                    Fader.interpolate(v, BA, BB));
+            index += stride;
+        }
+    }
+
+    private void compute(int X, int Y, int Z, float x, float y, float z,
+            float u, float v, float w, float[] result, int index,
+            int stride) {
+        int x0 = Utils.floorModExt(X, tx), x1 = Utils.floorModExt(X + 1, tx);
+        int y0 = Utils.floorModExt(Y, ty), y1 = Utils.floorModExt(Y + 1, ty);
+        int z0 = Utils.floorModExt(Z, tz), z1 = Utils.floorModExt(Z + 1, tz);
+
+        for (Permutator p : permutators) {
+            int pz0 = p.permute(z0), pz1 = p.permute(z1);
+            int pA0 = p.permute(y0 + pz0), pA1 = p.permute(y0 + pz1);
+            int pB0 = p.permute(y1 + pz0), pB1 = p.permute(y1 + pz1);
+            float AAA = ImprovedPerlin.grad(p.permute(x0 + pA0), x, y, z);
+            float AAB = ImprovedPerlin.grad(p.permute(x0 + pA1), x, y, z - 1);
+            float ABA = ImprovedPerlin.grad(p.permute(x0 + pB0), x, y - 1, z);
+            float ABB = ImprovedPerlin.grad(p.permute(x0 + pB1), x, y - 1, z - 1);
+            float BAA = ImprovedPerlin.grad(p.permute(x1 + pA0), x - 1, y, z);
+            float BAB = ImprovedPerlin.grad(p.permute(x1 + pA1), x - 1, y, z - 1);
+            float BBA = ImprovedPerlin.grad(p.permute(x1 + pB0), x - 1, y - 1, z);
+            float BBB = ImprovedPerlin.grad(p.permute(x1 + pB1), x - 1, y - 1, z - 1);
+            result[index] = Fader.interpolate(u,
+                    Fader.interpolate(v, Fader.interpolate(w, AAA, AAB),
+                            Fader.interpolate(w, ABA, ABB)),
+                    Fader.interpolate(v, Fader.interpolate(w, BAA, BAB),
+                            Fader.interpolate(w, BBA, BBB)));
+            index += stride;
+        }
+    }
+
+    public void setTiling(int tx, int ty, int tz, int tw) {
+        this.tx = tx;
+        this.ty = ty;
+        this.tz = tz;
+    }
+
+}
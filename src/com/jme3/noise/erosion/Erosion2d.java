@@ -0,0 +1,206 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.erosion;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Base of grid erosion working in place on row-major heightmaps.
+ *
+ * Every iteration is split into passes. A pass updates cells of its own
+ * tile and reads neighbour cells, also from other tiles, only from arrays
+ * not written in the same pass, so shared arrays serve as tile halos and
+ * results do not depend on number of threads or order of tiles.
+ *
+ * Heightmaps filled with grid fill of {@link com.jme3.noise.Noise2d} or
+ * read from {@link com.jme3.noise.store.OffHeapHeightmap} tiles can be
+ * eroded directly.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public abstract class Erosion2d {
+
+    /**
+     * Default size of tiles processed by single task.
+     *
+     */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    protected final int width;
+    protected final int height;
+
+    private final int tileSize;
+    private final int tilesX;
+    private final int tilesY;
+    private final Executor executor;
+    private final int threads;
+
+    /**
+     * Creates erosion for heightmaps of given size.
+     *
+     * @param width Number of samples in row.
+     * @param height Number of rows.
+     * @param tileSize Size of tiles processed by single task.
+     * @param executor Executor for worker tasks, or null.
+     * @param threads Number of threads including caller one.
+     */
+    protected Erosion2d(int width, int height, int tileSize,
+            Executor executor, int threads) {
+        if (width < 1 || height < 1 || tileSize < 1)
+            throw new IllegalArgumentException(
+                    "Sizes must be positive.");
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.executor = executor;
+        this.threads = executor == null ? 1 : Math.max(threads, 1);
+        tilesX = (width + tileSize - 1) / tileSize;
+        tilesY = (height + tileSize - 1) / tileSize;
+    }
+
+    /**
+     * Creates erosion computed by caller thread only.
+     *
+     * @param width Number of samples in row.
+     * @param height Number of rows.
+     */
+    protected Erosion2d(int width, int height) {
+        this(width, height, DEFAULT_TILE_SIZE, null, 1);
+    }
+
+    /**
+     * Erodes heightmap in place.
+     *
+     * @param heights Samples stored row by row, width*height of them.
+     * @param iterations Number of simulation steps.
+     */
+    public abstract void erode(float[] heights, int iterations);
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    protected void checkSize(float[] heights) {
+        if (heights.length < width * height)
+            throw new IllegalArgumentException(
+                    "Heightmap smaller than erosion grid.");
+    }
+
+    /**
+     * Part of iteration updating cells of single tile.
+     *
+     */
+    protected interface Pass {
+
+        /**
+         * Updates cells of rectangle.
+         *
+         * @param x0 First column, inclusive.
+         * @param y0 First row, inclusive.
+         * @param x1 Last column, exclusive.
+         * @param y1 Last row, exclusive.
+         */
+        void run(int x0, int y0, int x1, int y1);
+    }
+
+    /**
+     * Runs pass over all tiles and waits until it is done.
+     *
+     * @param pass Pass to be run.
+     */
+    protected void parallel(final Pass pass) {
+        final int tiles = tilesX * tilesY;
+        int workers = Math.min(threads, tiles) - 1;
+        if (workers <= 0) {
+            for (int t = 0; t < tiles; ++t)
+                tile(pass, t);
+            return;
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Throwable> failure
+                = new AtomicReference<Throwable>();
+        // counts tiles, so workers queued behind the caller are not awaited
+        final CountDownLatch done = new CountDownLatch(tiles);
+        Runnable worker = new Runnable() {
+            public void run() {
+                drain(pass, next, tiles, done, failure);
+            }
+        };
+        for (int i = 0; i < workers; ++i)
+            executor.execute(worker);
+        drain(pass, next, tiles, done, failure);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        Throwable e = failure.get();
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        else if (e instanceof Error)
+            throw (Error) e;
+    }
+
+    /**
+     * Runs tiles claimed from counter until none is left.
+     *
+     * After failure remaining tiles are only counted down.
+     */
+    private void drain(Pass pass, AtomicInteger next, int tiles,
+            CountDownLatch done, AtomicReference<Throwable> failure) {
+        for (int t = next.getAndIncrement(); t < tiles;
+                t = next.getAndIncrement()) {
+            try {
+                if (failure.get() == null)
+                    tile(pass, t);
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    private void tile(Pass pass, int t) {
+        int x0 = (t % tilesX) * tileSize;
+        int y0 = (t / tilesX) * tileSize;
+        pass.run(x0, y0, Math.min(x0 + tileSize, width),
+                Math.min(y0 + tileSize, height));
+    }
+
+}
@@ -0,0 +1,344 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.erosion;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Grid hydraulic erosion based on virtual pipe water model.
+ *
+ * Water falls as uniform rain, flows between neighbour cells through
+ * virtual pipes, dissolves terrain where its transport capacity exceeds
+ * carried sediment and deposits it elsewhere. Sediment moves with water
+ * through the same pipes, so terrain and sediment together keep their
+ * mass, and water evaporates slowly.
+ *
+ * Mei X., Decaudin P., Hu B. "Fast Hydraulic Erosion Simulation and
+ * Visualization on GPU" 2007
+ *
+ * Water and sediment are kept between erode calls, so erosion can be run
+ * in portions. Not thread safe, but single erode call can use many
+ * threads.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class HydraulicErosion2d extends Erosion2d {
+
+    private static final float GRAVITY = 9.81f;
+
+    // flux directions: -x, +x, -y, +y
+    private final float[] flux;
+    private final float[] water;
+    private final float[] sediment;
+    private final float[] dissolved;
+    private final float[] eroded;
+    private final float[] previous;
+
+    private float timeStep = 0.02f;
+    private float cellSize = 1;
+    private float rain = 0.01f;
+    private float capacity = 1;
+    private float dissolving = 0.3f;
+    private float deposition = 0.3f;
+    private float evaporation = 0.015f;
+    private float minTilt = 0.05f;
+
+    private float[] heights;
+
+    private final Pass flow = new Pass() {
+        public void run(int x0, int y0, int x1, int y1) {
+            flow(x0, y0, x1, y1);
+        }
+    };
+
+    private final Pass erosion = new Pass() {
+        public void run(int x0, int y0, int x1, int y1) {
+            erosion(x0, y0, x1, y1);
+        }
+    };
+
+    private final Pass transport = new Pass() {
+        public void run(int x0, int y0, int x1, int y1) {
+            transport(x0, y0, x1, y1);
+        }
+    };
+
+    /**
+     * Creates erosion for heightmaps of given size.
+     *
+     * @param width Number of samples in row.
+     * @param height Number of rows.
+     * @param tileSize Size of tiles processed by single task.
+     * @param executor Executor for worker tasks, or null.
+     * @param threads Number of threads including caller one.
+     */
+    public HydraulicErosion2d(int width, int height, int tileSize,
+            Executor executor, int threads) {
+        super(width, height, tileSize, executor, threads);
+        int cells = width * height;
+        flux = new float[cells * 4];
+        water = new float[cells];
+        sediment = new float[cells];
+        dissolved = new float[cells];
+        eroded = new float[cells];
+        previous = new float[cells];
+    }
+
+    /**
+     * Creates erosion computed by caller thread only.
+     *
+     * @param width Number of samples in row.
+     * @param height Number of rows.
+     */
+    public HydraulicErosion2d(int width, int height) {
+        this(width, height, DEFAULT_TILE_SIZE, null, 1);
+    }
+
+    public void setTimeStep(float timeStep) {
+        this.timeStep = timeStep;
+    }
+
+    public void setCellSize(float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Sets height of water falling on every cell in time unit.
+     *
+     * @param rain Rain intensity.
+     */
+    public void setRain(float rain) {
+        this.rain = rain;
+    }
+
+    /**
+     * Sets sediment capacity of unit of water flowing with unit speed.
+     *
+     * @param capacity Capacity constant.
+     */
+    public void setCapacity(float capacity) {
+        this.capacity = capacity;
+    }
+
+    public void setDissolving(float dissolving) {
+        this.dissolving = dissolving;
+    }
+
+    public void setDeposition(float deposition) {
+        this.deposition = deposition;
+    }
+
+    public void setEvaporation(float evaporation) {
+        this.evaporation = evaporation;
+    }
+
+    /**
+     * Sets lowest tilt used for capacity, so flat areas still erode.
+     *
+     * @param minTilt Sine of lowest tilt.
+     */
+    public void setMinTilt(float minTilt) {
+        this.minTilt = minTilt;
+    }
+
+    /**
+     * Retrive water height of every cell.
+     *
+     * @return Water heights stored row by row, must not be modified.
+     */
+    public float[] water() {
+        return water;
+    }
+
+    /**
+     * Retrive sediment carried over every cell.
+     *
+     * @return Sediment stored row by row, must not be modified.
+     */
+    public float[] sediment() {
+        return sediment;
+    }
+
+    /**
+     * Removes all water and sediment.
+     *
+     */
+    public void reset() {
+        Arrays.fill(flux, 0);
+        Arrays.fill(water, 0);
+        Arrays.fill(sediment, 0);
+    }
+
+    /**
+     * Drops carried sediment back to terrain.
+     *
+     * @param heights Heightmap being eroded.
+     */
+    public void settle(float[] heights) {
+        checkSize(heights);
+        for (int i = 0, cells = width * height; i < cells; ++i) {
+            heights[i] += sediment[i];
+            sediment[i] = 0;
+        }
+    }
+
+    @Override
+    public void erode(float[] heights, int iterations) {
+        checkSize(heights);
+        this.heights = heights;
+        try {
+            for (int i = 0; i < iterations; ++i) {
+                parallel(flow);
+                parallel(erosion);
+                parallel(transport);
+            }
+        } finally {
+            this.heights = null;
+        }
+    }
+
+    // updates outflow of every cell from terrain and water heights
+    private void flow(int x0, int y0, int x1, int y1) {
+        float[] h = heights;
+        float pipe = timeStep * GRAVITY * cellSize;
+        float area = cellSize * cellSize;
+        for (int y = y0; y < y1; ++y) {
+            for (int x = x0; x < x1; ++x) {
+                int i = y * width + x;
+                float level = h[i] + water[i];
+                int f = i * 4;
+                float l = x > 0
+                        ? outflow(flux[f], pipe, level, h, i - 1) : 0;
+                float r = x + 1 < width
+                        ? outflow(flux[f + 1], pipe, level, h, i + 1) : 0;
+                float t = y > 0
+                        ? outflow(flux[f + 2], pipe, level, h, i - width) : 0;
+                float b = y + 1 < height
+                        ? outflow(flux[f + 3], pipe, level, h, i + width) : 0;
+                float total = (l + r + t + b) * timeStep;
+                if (total > water[i] * area) {
+                    float scale = water[i] * area / total;
+                    l *= scale;
+                    r *= scale;
+                    t *= scale;
+                    b *= scale;
+                }
+                flux[f] = l;
+                flux[f + 1] = r;
+                flux[f + 2] = t;
+                flux[f + 3] = b;
+            }
+        }
+    }
+
+    private float outflow(float old, float pipe, float level,
+            float[] h, int n) {
+        return Math.max(0, old + pipe * (level - h[n] - water[n]));
+    }
+
+    // moves water, computes velocity and exchanges terrain with sediment
+    private void erosion(int x0, int y0, int x1, int y1) {
+        float[] h = heights;
+        float area = cellSize * cellSize;
+        for (int y = y0; y < y1; ++y) {
+            for (int x = x0; x < x1; ++x) {
+                int i = y * width + x;
+                int f = i * 4;
+                float inL = x > 0 ? flux[(i - 1) * 4 + 1] : 0;
+                float inR = x + 1 < width ? flux[(i + 1) * 4] : 0;
+                float inT = y > 0 ? flux[(i - width) * 4 + 3] : 0;
+                float inB = y + 1 < height ? flux[(i + width) * 4 + 2] : 0;
+                float in = inL + inR + inT + inB;
+                float out = flux[f] + flux[f + 1] + flux[f + 2] + flux[f + 3];
+                float depth = water[i];
+                float next = Math.max(0, depth + timeStep * (in - out) / area);
+                float mean = (depth + next) / 2;
+                float vx = 0, vy = 0;
+                if (mean > 1e-6f) {
+                    vx = (inL - flux[f] + flux[f + 1] - inR)
+                            / 2 / (mean * cellSize);
+                    vy = (inT - flux[f + 2] + flux[f + 3] - inB)
+                            / 2 / (mean * cellSize);
+                }
+                previous[i] = depth;
+                water[i] = next;
+
+                float gx = (h[Math.min(x + 1, width - 1) + y * width]
+                        - h[Math.max(x - 1, 0) + y * width]) / (2 * cellSize);
+                float gy = (h[x + Math.min(y + 1, height - 1) * width]
+                        - h[x + Math.max(y - 1, 0) * width]) / (2 * cellSize);
+                float slope = gx * gx + gy * gy;
+                float tilt = Math.max(minTilt,
+                        (float) Math.sqrt(slope / (1 + slope)));
+                float speed = (float) Math.sqrt(vx * vx + vy * vy);
+                float limit = capacity * tilt * speed * next;
+                float carried = sediment[i];
+                float change = limit > carried
+                        ? dissolving * (limit - carried)
+                        : -deposition * (carried - limit);
+                eroded[i] = h[i] - change;
+                dissolved[i] = carried + change;
+            }
+        }
+    }
+
+    // carries sediment with water, applies rain and evaporation
+    private void transport(int x0, int y0, int x1, int y1) {
+        float[] h = heights;
+        float decay = Math.max(0, 1 - evaporation * timeStep);
+        float fall = rain * timeStep;
+        for (int y = y0; y < y1; ++y) {
+            for (int x = x0; x < x1; ++x) {
+                int i = y * width + x;
+                int f = i * 4;
+                float out = flux[f] + flux[f + 1] + flux[f + 2] + flux[f + 3];
+                float value = dissolved[i] * (1 - share(i, out));
+                if (x > 0)
+                    value += dissolved[i - 1]
+                            * share(i - 1, flux[(i - 1) * 4 + 1]);
+                if (x + 1 < width)
+                    value += dissolved[i + 1]
+                            * share(i + 1, flux[(i + 1) * 4]);
+                if (y > 0)
+                    value += dissolved[i - width]
+                            * share(i - width, flux[(i - width) * 4 + 3]);
+                if (y + 1 < height)
+                    value += dissolved[i + width]
+                            * share(i + width, flux[(i + width) * 4 + 2]);
+                sediment[i] = value;
+                h[i] = eroded[i];
+                water[i] = water[i] * decay + fall;
+            }
+        }
+    }
+
+    // part of water of cell leaving through pipes with given flux
+    private float share(int i, float flux) {
+        float volume = previous[i] * cellSize * cellSize;
+        return volume > 0 ? Math.min(1, flux * timeStep / volume) : 0;
+    }
+
+}
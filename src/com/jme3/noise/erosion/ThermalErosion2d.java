@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.erosion;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Thermal erosion sliding material down slopes steeper than talus angle.
+ *
+ * Every iteration first computes for each cell material moved to its
+ * eight neighbours, then every cell subtracts its outflow and gathers
+ * inflow of neighbours. Mass is conserved.
+ *
+ * Not thread safe, but single erode call can use many threads.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class ThermalErosion2d extends Erosion2d {
+
+    private static final int[] DX = {-1, 1, 0, 0, -1, 1, -1, 1};
+    private static final int[] DY = {0, 0, -1, 1, -1, -1, 1, 1};
+    private static final float[] DISTANCE = {1, 1, 1, 1,
+        (float) Math.sqrt(2), (float) Math.sqrt(2),
+        (float) Math.sqrt(2), (float) Math.sqrt(2)};
+    // direction pointing back, from neighbour to cell
+    private static final int[] OPPOSITE = {1, 0, 3, 2, 7, 6, 5, 4};
+
+    private final float[] outflow;
+
+    private float talus = 0.7f;
+    private float rate = 0.5f;
+    private float cellSize = 1;
+
+    private float[] heights;
+
+    private final Pass slide = new Pass() {
+        public void run(int x0, int y0, int x1, int y1) {
+            slide(x0, y0, x1, y1);
+        }
+    };
+
+    private final Pass gather = new Pass() {
+        public void run(int x0, int y0, int x1, int y1) {
+            gather(x0, y0, x1, y1);
+        }
+    };
+
+    /**
+     * Creates erosion for heightmaps of given size.
+     *
+     * @param width Number of samples in row.
+     * @param height Number of rows.
+     * @param tileSize Size of tiles processed by single task.
+     * @param executor Executor for worker tasks, or null.
+     * @param threads Number of threads including caller one.
+     */
+    public ThermalErosion2d(int width, int height, int tileSize,
+            Executor executor, int threads) {
+        super(width, height, tileSize, executor, threads);
+        outflow = new float[width * height * 8];
+    }
+
+    /**
+     * Creates erosion computed by caller thread only.
+     *
+     * @param width Number of samples in row.
+     * @param height Number of rows.
+     */
+    public ThermalErosion2d(int width, int height) {
+        this(width, height, DEFAULT_TILE_SIZE, null, 1);
+    }
+
+    /**
+     * Sets talus angle as tangent, slopes below it are stable.
+     *
+     * @param talus Tangent of talus angle.
+     */
+    public void setTalus(float talus) {
+        this.talus = talus;
+    }
+
+    /**
+     * Sets part of excess height moved in one iteration.
+     *
+     * @param rate Rate from zero to one.
+     */
+    public void setRate(float rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * Sets horizontal distance between neighbour samples.
+     *
+     * @param cellSize Distance between samples.
+     */
+    public void setCellSize(float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    @Override
+    public void erode(float[] heights, int iterations) {
+        checkSize(heights);
+        this.heights = heights;
+        try {
+            for (int i = 0; i < iterations; ++i) {
+                parallel(slide);
+                parallel(gather);
+            }
+        } finally {
+            this.heights = null;
+        }
+    }
+
+    private void slide(int x0, int y0, int x1, int y1) {
+        float[] h = heights;
+        for (int y = y0; y < y1; ++y) {
+            for (int x = x0; x < x1; ++x) {
+                int i = y * width + x;
+                float center = h[i];
+                float max = 0;
+                float total = 0;
+                for (int k = 0; k < 8; ++k) {
+                    float excess = excess(h, center, x + DX[k], y + DY[k], k);
+                    if (excess > 0) {
+                        total += excess;
+                        max = Math.max(max, excess);
+                    }
+                }
+                float moved = total > 0 ? rate * max / 2 / total : 0;
+                for (int k = 0; k < 8; ++k) {
+                    float excess = excess(h, center, x + DX[k], y + DY[k], k);
+                    outflow[i * 8 + k] = excess > 0 ? excess * moved : 0;
+                }
+            }
+        }
+    }
+
+    private float excess(float[] h, float center, int x, int y, int k) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return 0;
+        return center - h[y * width + x] - talus * cellSize * DISTANCE[k];
+    }
+
+    private void gather(int x0, int y0, int x1, int y1) {
+        float[] h = heights;
+        for (int y = y0; y < y1; ++y) {
+            for (int x = x0; x < x1; ++x) {
+                int i = y * width + x;
+                float value = h[i];
+                for (int k = 0; k < 8; ++k) {
+                    value -= outflow[i * 8 + k];
+                    int nx = x + DX[k];
+                    int ny = y + DY[k];
+                    if (nx >= 0 && ny >= 0 && nx < width && ny < height)
+                        value += outflow[(ny * width + nx) * 8 + OPPOSITE[k]];
+                }
+                h[i] = value;
+            }
+        }
+    }
+
+}
@@ -29,7 +29,148 @@ import com.jme3.noise.*;
  *
  * @author Piotr SQLek Skólski
  */
-public abstract class Filter1d implements Noise1d {
+public abstract class Filter1d implements Noise1d, Tracked {
+
+    public final static int DEFAULT_CACHE_SIZE = 4096;
+    
+    private final Permutator permutator;
+    private final Noise1d source;
+    private final double[] xArray;
+    private final float[] valArray;
+    private final int size;
+    
+    private volatile long version = Utils.nextVersion();
+    private long sourceVersion;
+    
+    protected Filter1d(Noise1d source, int size) {
+        this.source = source;
+        this.size = size;
+        permutator = new Permutator(size);
+        xArray = new double[size];
+        valArray = new float[size];
+        for (int i = 0; i < size; ++i)
+            valArray[i] = Float.NaN;
+        sourceVersion = sourceVersion();
+    }
+    
+    protected Filter1d(Noise1d source) {
+        this(source,DEFAULT_CACHE_SIZE);
+    }
+    
+    /** Drops cached source samples if source changed since last check.
+     * 
+     * Subclasses keeping own caches of source samples should call it
+     * before using them and clear them in {@link #sourceChanged()}.
+     */
+    protected void checkSource() {
+        long current = sourceVersion();
+        if (current != sourceVersion) {
+            sourceVersion = current;
+            for (int i = 0; i < size; ++i)
+                valArray[i] = Float.NaN;
+            sourceChanged();
+        }
+    }
+    
+    /** Called when source change is detected.
+     *
+     */
+    protected void sourceChanged() {
+    }
+    
+    /** Marks configuration of this filter as changed.
+     *
+     */
+    protected void changed() {
+        version = Utils.nextVersion();
+    }
+    
+    private long sourceVersion() {
+        return source instanceof Tracked ? ((Tracked) source).version() : 0;
+    }
+    
+    public long version() {
+        return Math.max(version, sourceVersion());
+    }
+    
+    /** Computes hash of filter class and configuration of its source.
+     *
+     * Source that is not {@link Tracked} is represented by name of its
+     * class only, which stays the same between runs.
+     *
+     * @return Configuration hash.
+     */
+    public long configurationHash() {
+        long hash = getClass().getName().hashCode();
+        return Utils.mixHash(hash, source instanceof Tracked
+                ? ((Tracked) source).configurationHash()
+                : source.getClass().getName().hashCode());
+    }
+    
+    /** Checks if source configuration is covered by configuration hash.
+     *
+     * Subclasses that mix all their own parameters into the hash report
+     * complete configuration when this is true.
+     *
+     * @return True if source is Tracked with complete configuration.
+     */
+    protected boolean sourceConfigurationComplete() {
+        return source instanceof Tracked
+                && ((Tracked) source).configurationComplete();
+    }
+    
+    public Noise1d getSource() {
+        return source;
+    }
+    
+    protected float sourceValue(float x) {
+        return sourceValue((double) x);
+    }
+    
+    protected float sourceValue(double x) {
+        checkSource();
+        int index = permutator.permute(Double.hashCode(x));
+        
+        //check for chache miss
+        if (Float.isNaN(valArray[index])
+                || xArray[index] != x) {
+            xArray[index] = x;
+            valArray[index] = source.value(x);
+        }
+        
+        return valArray[index];
+    }
+    
+    /** Computes conservative range of source samples inside a box.
+     *
+     * Sources that are not {@link BoundedNoise1d} are bounded by
+     * minus one to plus one.
+     *
+     * @param minX Minimal cordinate of box.
+     * @param maxX Maximal cordinate of box.
+     * @param range Array for computed range.
+     */
+    protected void sourceBounds(float minX, float maxX, float[] range) {
+        if (source instanceof BoundedNoise1d) {
+            ((BoundedNoise1d) source).bounds(minX, maxX, range);
+        } else {
+            range[0] = -1;
+            range[1] = 1;
+        }
+    }
+    
+    /** Retrive Lipschitz constant of source.
+     *
+     * Sources that are not {@link LipschitzNoise} have no known slope.
+     *
+     * @param dimensions Number of dimensions.
+     * @return Maximal slope, POSITIVE_INFINITY if unknown.
+     */
+    protected float sourceLipschitz(int dimensions) {
+        return source instanceof LipschitzNoise
+                ? ((LipschitzNoise) source).lipschitz(dimensions)
+                : Float.POSITIVE_INFINITY;
+    }
 
     @Override
     public abstract float value(float x);
@@ -29,35 +29,111 @@ import com.jme3.noise.*;
  *
  * @author Piotr SQLek Skólski
  */
-public abstract class Filter2d implements Noise1d, Noise2d {
+public abstract class Filter2d implements Noise1d, Noise2d, Tracked {
 
     public final static int DEFAULT_CACHE_SIZE = 4096;
     
     private final Permutator permutator;
     private final Noise2d source;
-    private final float[] xArray;
-    private final float[] yArray;
+    private final double[] xArray;
+    private final double[] yArray;
     private final float[] valArray;
     private final int size;
     
+    private volatile long version = Utils.nextVersion();
+    private long sourceVersion;
+    private long cacheHits, cacheMisses;
+    
     protected Filter2d(Noise2d source, int size) {
         this.source = source;
         this.size = size;
         permutator = new Permutator(size);
-        xArray = new float[size];
-        yArray = new float[size];
+        xArray = new double[size];
+        yArray = new double[size];
         valArray = new float[size];
         for (int i = 0; i < size; ++i)
             valArray[i] = Float.NaN;
+        sourceVersion = sourceVersion();
     }
     
     protected Filter2d(Noise2d source) {
         this(source,DEFAULT_CACHE_SIZE);
     }
     
+    /** Drops cached source samples if source changed since last check.
+     * 
+     * Subclasses keeping own caches of source samples should call it
+     * before using them and clear them in {@link #sourceChanged()}.
+     */
+    protected void checkSource() {
+        long current = sourceVersion();
+        if (current != sourceVersion) {
+            sourceVersion = current;
+            for (int i = 0; i < size; ++i)
+                valArray[i] = Float.NaN;
+            sourceChanged();
+        }
+    }
+    
+    /** Called when source change is detected.
+     *
+     */
+    protected void sourceChanged() {
+    }
+    
+    /** Marks configuration of this filter as changed.
+     *
+     */
+    protected void changed() {
+        version = Utils.nextVersion();
+    }
+    
+    private long sourceVersion() {
+        return source instanceof Tracked ? ((Tracked) source).version() : 0;
+    }
+    
+    public long version() {
+        return Math.max(version, sourceVersion());
+    }
+    
+    /** Computes hash of filter class and configuration of its source.
+     *
+     * Source that is not {@link Tracked} is represented by name of its
+     * class only, which stays the same between runs.
+     *
+     * @return Configuration hash.
+     */
+    public long configurationHash() {
+        long hash = getClass().getName().hashCode();
+        return Utils.mixHash(hash, source instanceof Tracked
+                ? ((Tracked) source).configurationHash()
+                : source.getClass().getName().hashCode());
+    }
+    
+    /** Checks if source configuration is covered by configuration hash.
+     *
+     * Subclasses that mix all their own parameters into the hash report
+     * complete configuration when this is true.
+     *
+     * @return True if source is Tracked with complete configuration.
+     */
+    protected boolean sourceConfigurationComplete() {
+        return source instanceof Tracked
+                && ((Tracked) source).configurationComplete();
+    }
+    
+    public Noise2d getSource() {
+        return source;
+    }
+    
     protected float sourceValue(float x, float y) {
-        int index = permutator.permute(Float.floatToRawIntBits(x)
-                + permutator.permute(Float.floatToRawIntBits(x)));
+        return sourceValue((double) x, (double) y);
+    }
+    
+    protected float sourceValue(double x, double y) {
+        checkSource();
+        int index = permutator.permute(Double.hashCode(x)
+                + permutator.permute(Double.hashCode(y)));
         
         //check for chache miss
         if (Float.isNaN(valArray[index])
@@ -66,16 +142,101 @@ public abstract class Filter2d implements Noise1d, Noise2d {
             xArray[index] = x;
             yArray[index] = y;
             valArray[index] = source.value(x, y);
+            ++cacheMisses;
+        } else {
+            ++cacheHits;
         }
         
         return valArray[index];
     }
     
+    /** Retrive number of source samples read from the cache.
+     *
+     * Counted without synchronization, like the cache itself.
+     *
+     * @return Number of cache hits since creation or last reset.
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+    
+    /** Retrive number of source samples computed on cache miss.
+     *
+     * @return Number of cache misses since creation or last reset.
+     */
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+    
+    /** Zeroes cache hit and miss counters.
+     *
+     */
+    public void resetCacheStatistics() {
+        cacheHits = 0;
+        cacheMisses = 0;
+    }
+    
+    /** Computes source samples for scattered cordinates.
+     *
+     * Scattered points rarely hit the cache, so they are passed directly
+     * to the bulk path of the source.
+     *
+     * @param xs Input cordinates.
+     * @param ys Input cordinates.
+     * @param result Array for computed samples.
+     * @param offset Index of first point in all arrays.
+     * @param count Number of points to compute.
+     * @see Noise2d#values(float[], float[], float[], int, int)
+     */
+    protected void sourceValues(float[] xs, float[] ys, float[] result,
+            int offset, int count) {
+        source.values(xs, ys, result, offset, count);
+    }
+    
+    /** Computes conservative range of source samples inside a box.
+     *
+     * Sources that are not {@link BoundedNoise2d} are bounded by
+     * minus one to plus one.
+     *
+     * @param minX Minimal cordinate of box.
+     * @param minY Minimal cordinate of box.
+     * @param maxX Maximal cordinate of box.
+     * @param maxY Maximal cordinate of box.
+     * @param range Array for computed range.
+     */
+    protected void sourceBounds(float minX, float minY,
+            float maxX, float maxY, float[] range) {
+        if (source instanceof BoundedNoise2d) {
+            ((BoundedNoise2d) source).bounds(minX, minY, maxX, maxY, range);
+        } else {
+            range[0] = -1;
+            range[1] = 1;
+        }
+    }
+    
+    /** Retrive Lipschitz constant of source.
+     *
+     * Sources that are not {@link LipschitzNoise} have no known slope.
+     *
+     * @param dimensions Number of dimensions.
+     * @return Maximal slope, POSITIVE_INFINITY if unknown.
+     */
+    protected float sourceLipschitz(int dimensions) {
+        return source instanceof LipschitzNoise
+                ? ((LipschitzNoise) source).lipschitz(dimensions)
+                : Float.POSITIVE_INFINITY;
+    }
+    
     @Override
     public float value(float x) {
         return value(x,0);
     }
 
+    @Override
+    public float value(double x) {
+        return value(x, 0.0);
+    }
+
     @Override
     public abstract float value(float x, float y);
     
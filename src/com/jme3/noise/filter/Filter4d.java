@@ -29,7 +29,172 @@ import com.jme3.noise.*;
  *
  * @author Piotr SQLek Skólski
  */
-public abstract class Filter4d implements Noise1d, Noise2d, Noise3d, Noise4d {
+public abstract class Filter4d implements Noise1d, Noise2d, Noise3d, Noise4d, Tracked {
+
+    public final static int DEFAULT_CACHE_SIZE = 4096;
+    
+    private final Permutator permutator;
+    private final Noise4d source;
+    private final double[] xArray;
+    private final double[] yArray;
+    private final double[] zArray;
+    private final double[] wArray;
+    private final float[] valArray;
+    private final int size;
+    
+    private volatile long version = Utils.nextVersion();
+    private long sourceVersion;
+    
+    protected Filter4d(Noise4d source, int size) {
+        this.source = source;
+        this.size = size;
+        permutator = new Permutator(size);
+        xArray = new double[size];
+        yArray = new double[size];
+        zArray = new double[size];
+        wArray = new double[size];
+        valArray = new float[size];
+        for (int i = 0; i < size; ++i)
+            valArray[i] = Float.NaN;
+        sourceVersion = sourceVersion();
+    }
+    
+    protected Filter4d(Noise4d source) {
+        this(source,DEFAULT_CACHE_SIZE);
+    }
+    
+    /** Drops cached source samples if source changed since last check.
+     * 
+     * Subclasses keeping own caches of source samples should call it
+     * before using them and clear them in {@link #sourceChanged()}.
+     */
+    protected void checkSource() {
+        long current = sourceVersion();
+        if (current != sourceVersion) {
+            sourceVersion = current;
+            for (int i = 0; i < size; ++i)
+                valArray[i] = Float.NaN;
+            sourceChanged();
+        }
+    }
+    
+    /** Called when source change is detected.
+     *
+     */
+    protected void sourceChanged() {
+    }
+    
+    /** Marks configuration of this filter as changed.
+     *
+     */
+    protected void changed() {
+        version = Utils.nextVersion();
+    }
+    
+    private long sourceVersion() {
+        return source instanceof Tracked ? ((Tracked) source).version() : 0;
+    }
+    
+    public long version() {
+        return Math.max(version, sourceVersion());
+    }
+    
+    /** Computes hash of filter class and configuration of its source.
+     *
+     * Source that is not {@link Tracked} is represented by name of its
+     * class only, which stays the same between runs.
+     *
+     * @return Configuration hash.
+     */
+    public long configurationHash() {
+        long hash = getClass().getName().hashCode();
+        return Utils.mixHash(hash, source instanceof Tracked
+                ? ((Tracked) source).configurationHash()
+                : source.getClass().getName().hashCode());
+    }
+    
+    /** Checks if source configuration is covered by configuration hash.
+     *
+     * Subclasses that mix all their own parameters into the hash report
+     * complete configuration when this is true.
+     *
+     * @return True if source is Tracked with complete configuration.
+     */
+    protected boolean sourceConfigurationComplete() {
+        return source instanceof Tracked
+                && ((Tracked) source).configurationComplete();
+    }
+    
+    public Noise4d getSource() {
+        return source;
+    }
+    
+    protected float sourceValue(float x, float y, float z, float w) {
+        return sourceValue((double) x, (double) y, (double) z, (double) w);
+    }
+    
+    protected float sourceValue(double x, double y, double z, double w) {
+        checkSource();
+        int index = permutator.permute(Double.hashCode(x)
+                + permutator.permute(Double.hashCode(y)
+                        + permutator.permute(Double.hashCode(z)
+                                + permutator.permute(Double.hashCode(w)))));
+        
+        //check for chache miss
+        if (Float.isNaN(valArray[index])
+                || xArray[index] != x
+                || yArray[index] != y
+                || zArray[index] != z
+                || wArray[index] != w) {
+            xArray[index] = x;
+            yArray[index] = y;
+            zArray[index] = z;
+            wArray[index] = w;
+            valArray[index] = source.value(x, y, z, w);
+        }
+        
+        return valArray[index];
+    }
+    
+    /** Computes conservative range of source samples inside a box.
+     *
+     * Sources that are not {@link BoundedNoise4d} are bounded by
+     * minus one to plus one.
+     *
+     * @param minX Minimal cordinate of box.
+     * @param minY Minimal cordinate of box.
+     * @param minZ Minimal cordinate of box.
+     * @param minW Minimal cordinate of box.
+     * @param maxX Maximal cordinate of box.
+     * @param maxY Maximal cordinate of box.
+     * @param maxZ Maximal cordinate of box.
+     * @param maxW Maximal cordinate of box.
+     * @param range Array for computed range.
+     */
+    protected void sourceBounds(float minX, float minY, float minZ,
+            float minW, float maxX, float maxY, float maxZ, float maxW,
+            float[] range) {
+        if (source instanceof BoundedNoise4d) {
+            ((BoundedNoise4d) source).bounds(minX, minY, minZ, minW,
+                    maxX, maxY, maxZ, maxW, range);
+        } else {
+            range[0] = -1;
+            range[1] = 1;
+        }
+    }
+    
+    /** Retrive Lipschitz constant of source.
+     *
+     * Sources that are not {@link LipschitzNoise} have no known slope.
+     *
+     * @param dimensions Number of dimensions.
+     * @return Maximal slope, POSITIVE_INFINITY if unknown.
+     */
+    protected float sourceLipschitz(int dimensions) {
+        return source instanceof LipschitzNoise
+                ? ((LipschitzNoise) source).lipschitz(dimensions)
+                : Float.POSITIVE_INFINITY;
+    }
 
     @Override
     public float value(float x) {
@@ -46,6 +211,21 @@ public abstract class Filter4d implements Noise1d, Noise2d, Noise3d, Noise4d {
         return value(x,y,z,0);
     }
 
+    @Override
+    public float value(double x) {
+        return value(x, 0.0, 0.0, 0.0);
+    }
+
+    @Override
+    public float value(double x, double y) {
+        return value(x, y, 0.0, 0.0);
+    }
+
+    @Override
+    public float value(double x, double y, double z) {
+        return value(x, y, z, 0.0);
+    }
+
     @Override
     public abstract float value(float x, float y, float z, float w);
     
@@ -0,0 +1,538 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jme3.noise.fractal;
+
+import com.jme3.noise.Noise2d;
+import com.jme3.noise.Utils;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fractal noise with low-frequency octaves read from a coarse cache.
+ *
+ * Octave i samples source at cordinate scaled by 2^i, so a grid of
+ * density samples per source lattice unit serves every octave, each one
+ * reads it at its own frequency. Grid is computed in square regions kept
+ * in a bounded LRU cache and interpolated with Catmull-Rom splines, which
+ * are continuous together with first derivative.
+ *
+ * First cachedOctaves octaves, the ones with lowest frequency, are read
+ * from the grid, remaining ones are evaluated for every sample. Result
+ * differs from {@link FractalNoise2d} by interpolation error, which falls
+ * with grid density.
+ *
+ * Grid pays off only while its spacing is coarser than distance between
+ * samples. Grid path of values reads cached octave only in that case and
+ * evaluates finer octaves from source, like uncached ones.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class CachedFractalNoise2d extends FractalNoise2d {
+
+    /**
+     * Number of grid samples along region edge.
+     *
+     */
+    public static final int REGION_SIZE = 32;
+
+    private static final int REGION_SHIFT = 5;
+
+    /**
+     * Default limit of cached regions.
+     *
+     */
+    public static final int DEFAULT_MAX_REGIONS = 256;
+
+    /**
+     * Maximal sum of absolute bicubic Catmull-Rom weights.
+     *
+     */
+    private static final float OVERSHOOT = 1.5625f;
+
+    /**
+     * Slope of bicubic Catmull-Rom spline relative to slope of samples,
+     * two along spline axis times 1.25 overshoot along the other, in
+     * both axes.
+     *
+     */
+    private static final float SPLINE_SLOPE = 2.5f * 1.4143f;
+
+    public final int cachedOctaves;
+    public final int density;
+
+    private final Map<Long, Region> regions;
+    // last region used by every cached octave, checked before the map
+    private final Region[] recent;
+    private long regionHits, regionMisses;
+
+    /**
+     * Creates fractal noise with coarse cache.
+     *
+     * @param source Noise source for all octaves.
+     * @param octaves Number of octaves.
+     * @param cachedOctaves Number of lowest octaves read from the cache.
+     * @param density Grid samples per source lattice unit.
+     * @param maxRegions Maximal number of cached regions.
+     */
+    public CachedFractalNoise2d(Noise2d source, int octaves,
+            int cachedOctaves, int density, final int maxRegions) {
+        super(source, octaves);
+        if (density < 1)
+            throw new IllegalArgumentException(
+                    "Density must be one or greater.");
+        this.cachedOctaves = Math.min(cachedOctaves, octaves);
+        this.density = density;
+        recent = new Region[this.cachedOctaves];
+        regions = new LinkedHashMap<Long, Region>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Region> e) {
+                return size() > maxRegions;
+            }
+        };
+    }
+
+    /**
+     * Creates fractal noise with coarse cache of default size.
+     *
+     * @param source Noise source for all octaves.
+     * @param octaves Number of octaves.
+     * @param cachedOctaves Number of lowest octaves read from the cache.
+     * @param density Grid samples per source lattice unit.
+     */
+    public CachedFractalNoise2d(Noise2d source, int octaves,
+            int cachedOctaves, int density) {
+        this(source, octaves, cachedOctaves, density, DEFAULT_MAX_REGIONS);
+    }
+
+    @Override
+    public float value(double x, double y) {
+        checkSource();
+        float factor = 0;
+        float scale = 1;
+        float value = 0;
+        for (int i = 0; i < octaves; ++i) {
+            value += (i < cachedOctaves
+                    ? cachedValue(i, x/scale*density, y/scale*density)
+                    : sourceValue(x/scale, y/scale))*scale;
+            factor += scale;
+            scale /= 2;
+        }
+        return value/factor;
+    }
+
+    /**
+     * Computes noise samples for scattered cordinates.
+     *
+     * Cached octaves are read from the grid point by point, remaining
+     * octaves are passed to the bulk path of the source.
+     *
+     * @param xs Input cordinates.
+     * @param ys Input cordinates.
+     * @param result Array for computed samples.
+     * @param offset Index of first point in all arrays.
+     * @param count Number of points to compute.
+     */
+    @Override
+    public void values(float[] xs, float[] ys, float[] result,
+            int offset, int count) {
+        checkSource();
+        float[] octaveX = new float[count];
+        float[] octaveY = new float[count];
+        float[] octaveValue = new float[count];
+        for (int i = 0; i < count; ++i)
+            result[offset + i] = 0;
+
+        float factor = 0;
+        float scale = 1;
+        for (int o = 0; o < octaves; ++o) {
+            if (o < cachedOctaves) {
+                for (int i = 0; i < count; ++i)
+                    result[offset + i] += cachedValue(o,
+                            xs[offset + i]/scale*density,
+                            ys[offset + i]/scale*density)*scale;
+            } else {
+                for (int i = 0; i < count; ++i) {
+                    octaveX[i] = xs[offset + i]/scale;
+                    octaveY[i] = ys[offset + i]/scale;
+                }
+                sourceValues(octaveX, octaveY, octaveValue, 0, count);
+                for (int i = 0; i < count; ++i)
+                    result[offset + i] += octaveValue[i]*scale;
+            }
+            factor += scale;
+            scale /= 2;
+        }
+        for (int i = 0; i < count; ++i)
+            result[offset + i] /= factor;
+    }
+
+    /**
+     * Computes noise samples on a regular grid.
+     *
+     * Cached octave is read from the grid only while grid is coarser than
+     * sample step, so every grid sample serves several samples. Finer
+     * octaves, like uncached ones, are evaluated by one call of grid path
+     * of the source. Splines are separated: every row interpolates grid
+     * columns it needs once, and every sample mixes four of them with
+     * weights computed once per column.
+     *
+     * @param x Cordinate of first sample.
+     * @param y Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param result Array for computed samples.
+     * @param offset Index of first sample in result.
+     */
+    @Override
+    public void values(double x, double y, double step,
+            int width, int height, float[] result, int offset) {
+        checkSource();
+        int count = width * height;
+        float[] octave = null;
+        for (int i = 0; i < count; ++i)
+            result[offset + i] = 0;
+
+        float factor = 0;
+        float scale = 1;
+        for (int o = 0; o < octaves; ++o) {
+            if (o < cachedOctaves && step/scale*density < 1) {
+                cachedValues(x/scale*density, y/scale*density,
+                        step/scale*density, width, height, scale,
+                        result, offset);
+            } else {
+                if (octave == null)
+                    octave = new float[count];
+                getSource().values(x/scale, y/scale, step/scale,
+                        width, height, octave, 0);
+                for (int i = 0; i < count; ++i)
+                    result[offset + i] += octave[i]*scale;
+            }
+            factor += scale;
+            scale /= 2;
+        }
+        for (int i = 0; i < count; ++i)
+            result[offset + i] /= factor;
+    }
+
+    /** Computes Lipschitz constant of octave sum.
+     *
+     * Cached octaves are splines of source samples, so their slope is
+     * bounded by source slope scaled by spline one.
+     *
+     * @param dimensions Number of dimensions.
+     * @return Maximal slope.
+     */
+    @Override
+    public float lipschitz(int dimensions) {
+        float factor = 0;
+        float scale = 1;
+        float slope = 0;
+        for (int i = 0; i < octaves; ++i) {
+            slope += i < cachedOctaves ? SPLINE_SLOPE : 1;
+            factor += scale;
+            scale /= 2;
+        }
+        return sourceLipschitz(dimensions)*slope/factor;
+    }
+
+    /** Computes bounds as a sum of source bounds weighted by octave.
+     *
+     * Cached octaves are bounded by source over a box grown by spline
+     * support, widened by maximal spline overshoot.
+     *
+     * @param minX Minimal cordinate of box.
+     * @param minY Minimal cordinate of box.
+     * @param maxX Maximal cordinate of box.
+     * @param maxY Maximal cordinate of box.
+     * @param range Array for computed range.
+     */
+    @Override
+    public void bounds(float minX, float minY,
+            float maxX, float maxY, float[] range) {
+        float factor = 0;
+        float scale = 1;
+        float min = 0;
+        float max = 0;
+        float support = 2f/density;
+        for (int i = 0; i < octaves; ++i) {
+            if (i < cachedOctaves) {
+                sourceBounds(minX/scale - support, minY/scale - support,
+                        maxX/scale + support, maxY/scale + support, range);
+                float center = (range[0] + range[1])/2;
+                float half = (range[1] - range[0])/2*OVERSHOOT;
+                range[0] = center - half;
+                range[1] = center + half;
+            } else {
+                sourceBounds(minX/scale, minY/scale,
+                        maxX/scale, maxY/scale, range);
+            }
+            min += range[0]*scale;
+            max += range[1]*scale;
+            factor += scale;
+            scale /= 2;
+        }
+        range[0] = min/factor;
+        range[1] = max/factor;
+    }
+
+    @Override
+    public long configurationHash() {
+        long hash = super.configurationHash();
+        hash = Utils.mixHash(hash, cachedOctaves);
+        return Utils.mixHash(hash, density);
+    }
+
+    @Override
+    public boolean configurationComplete() {
+        return getClass() == CachedFractalNoise2d.class
+                && sourceConfigurationComplete();
+    }
+
+    /**
+     * Drops regions sampled from source before its change.
+     *
+     */
+    @Override
+    protected void sourceChanged() {
+        clearCache();
+    }
+
+    /**
+     * Drops all cached regions.
+     *
+     */
+    public void clearCache() {
+        synchronized (regions) {
+            regions.clear();
+            Arrays.fill(recent, null);
+        }
+    }
+
+    /**
+     * Retrive number of cached octave samples read from cached regions.
+     *
+     * Counted without synchronization, so concurrent readers may lose
+     * some counts.
+     *
+     * @return Number of region hits since creation or last reset.
+     */
+    public long getRegionHits() {
+        return regionHits;
+    }
+
+    /**
+     * Retrive number of regions sampled from source.
+     *
+     * @return Number of region misses since creation or last reset.
+     */
+    public long getRegionMisses() {
+        return regionMisses;
+    }
+
+    /**
+     * Zeroes cache hit and miss counters, also of source sample cache.
+     *
+     */
+    @Override
+    public void resetCacheStatistics() {
+        super.resetCacheStatistics();
+        regionHits = 0;
+        regionMisses = 0;
+    }
+
+    private float cachedValue(int octave, double gx, double gy) {
+        long GX = Utils.fastFloor(gx);
+        long GY = Utils.fastFloor(gy);
+        float tx = (float) (gx - GX);
+        float ty = (float) (gy - GY);
+        int rx = (int) (GX >> REGION_SHIFT);
+        int ry = (int) (GY >> REGION_SHIFT);
+        long key = ((long) rx << 32) | (ry & 0xffffffffL);
+        Region cached = recent[octave];
+        if (cached == null || cached.key != key) {
+            cached = region(key, rx, ry);
+            recent[octave] = cached;
+        } else {
+            ++regionHits;
+        }
+        float[] region = cached.samples;
+
+        int n = REGION_SIZE + 3;
+        // region starts one sample before its first cell
+        int i = (int) GX & (REGION_SIZE - 1);
+        int j = (int) GY & (REGION_SIZE - 1);
+        int row = j * n + i;
+        float r0 = spline(tx, region[row], region[row + 1],
+                region[row + 2], region[row + 3]);
+        row += n;
+        float r1 = spline(tx, region[row], region[row + 1],
+                region[row + 2], region[row + 3]);
+        row += n;
+        float r2 = spline(tx, region[row], region[row + 1],
+                region[row + 2], region[row + 3]);
+        row += n;
+        float r3 = spline(tx, region[row], region[row + 1],
+                region[row + 2], region[row + 3]);
+        return spline(ty, r0, r1, r2, r3);
+    }
+
+    /**
+     * Adds weighted grid samples interpolated at grid cordinates.
+     *
+     * Grid cordinates of sample (i, j) are (gx + i*gstep, gy + j*gstep).
+     */
+    private void cachedValues(double gx, double gy, double gstep,
+            int width, int height, float weight,
+            float[] result, int offset) {
+        // columns and rows of the grid read by splines
+        long minX = Utils.fastFloor(gx) - 1;
+        long minY = Utils.fastFloor(gy) - 1;
+        int columns = (int) (Utils.fastFloor(gx + (width - 1) * gstep)
+                - minX + 3);
+        int rows = (int) (Utils.fastFloor(gy + (height - 1) * gstep)
+                - minY + 3);
+        float[] patch = patch(minX, minY, columns, rows);
+
+        int[] first = new int[width];
+        float[] wx = new float[4 * width];
+        for (int i = 0; i < width; ++i) {
+            double c = gx + i * gstep;
+            long C = Utils.fastFloor(c);
+            first[i] = (int) (C - 1 - minX);
+            weights((float) (c - C), wx, 4 * i);
+        }
+        float[] wy = new float[4];
+        float[] row = new float[columns];
+        for (int j = 0; j < height; ++j) {
+            double r = gy + j * gstep;
+            long R = Utils.fastFloor(r);
+            weights((float) (r - R), wy, 0);
+            int base = (int) (R - 1 - minY) * columns;
+            for (int c = 0; c < columns; ++c)
+                row[c] = wy[0] * patch[base + c]
+                        + wy[1] * patch[base + columns + c]
+                        + wy[2] * patch[base + 2 * columns + c]
+                        + wy[3] * patch[base + 3 * columns + c];
+            int index = offset + j * width;
+            for (int i = 0; i < width; ++i) {
+                int c = first[i];
+                int w = 4 * i;
+                result[index + i] += (wx[w] * row[c]
+                        + wx[w + 1] * row[c + 1]
+                        + wx[w + 2] * row[c + 2]
+                        + wx[w + 3] * row[c + 3]) * weight;
+            }
+        }
+    }
+
+    /**
+     * Copies rectangle of grid samples from cached regions.
+     */
+    private float[] patch(long minX, long minY, int columns, int rows) {
+        int n = REGION_SIZE + 3;
+        int mask = REGION_SIZE - 1;
+        float[] patch = new float[columns * rows];
+        Region cached = null;
+        for (int j = 0; j < rows; ++j) {
+            long R = minY + j;
+            int ry = (int) (R >> REGION_SHIFT);
+            int rowStart = (((int) R & mask) + 1) * n;
+            for (int i = 0; i < columns; ) {
+                long C = minX + i;
+                int rx = (int) (C >> REGION_SHIFT);
+                long key = ((long) rx << 32) | (ry & 0xffffffffL);
+                if (cached == null || cached.key != key)
+                    cached = region(key, rx, ry);
+                else
+                    ++regionHits;
+                int local = (int) C & mask;
+                int length = Math.min(REGION_SIZE - local, columns - i);
+                System.arraycopy(cached.samples, rowStart + local + 1,
+                        patch, j * columns + i, length);
+                i += length;
+            }
+        }
+        return patch;
+    }
+
+    /**
+     * Computes Catmull-Rom weights of four samples for fraction t.
+     */
+    private static void weights(float t, float[] weights, int offset) {
+        float t2 = t * t;
+        float t3 = t2 * t;
+        weights[offset] = 0.5f * (-t + 2 * t2 - t3);
+        weights[offset + 1] = 0.5f * (2 - 5 * t2 + 3 * t3);
+        weights[offset + 2] = 0.5f * (t + 4 * t2 - 3 * t3);
+        weights[offset + 3] = 0.5f * (t3 - t2);
+    }
+
+    private Region region(long key, int rx, int ry) {
+        Region cached;
+        synchronized (regions) {
+            cached = regions.get(key);
+        }
+        if (cached != null) {
+            ++regionHits;
+            return cached;
+        }
+        ++regionMisses;
+
+        int n = REGION_SIZE + 3;
+        float[] region = new float[n * n];
+        long x0 = (long) rx * REGION_SIZE - 1;
+        long y0 = (long) ry * REGION_SIZE - 1;
+        getSource().values((double) x0/density, (double) y0/density,
+                1.0/density, n, n, region, 0);
+        cached = new Region(key, region);
+        synchronized (regions) {
+            regions.put(key, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Catmull-Rom spline between p1 and p2.
+     */
+    private static float spline(float t, float p0, float p1,
+            float p2, float p3) {
+        return p1 + 0.5f * t * (p2 - p0
+                + t * (2 * p0 - 5 * p1 + 4 * p2 - p3
+                + t * (3 * (p1 - p2) + p3 - p0)));
+    }
+
+    private static final class Region {
+
+        final long key;
+        final float[] samples;
+
+        Region(long key, float[] samples) {
+            this.key = key;
+            this.samples = samples;
+        }
+    }
+
+}
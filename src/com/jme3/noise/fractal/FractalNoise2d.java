@@ -23,24 +23,59 @@
  */
 package com.jme3.noise.fractal;
 
+import com.jme3.noise.BoundedNoise2d;
+import com.jme3.noise.LipschitzNoise;
 import com.jme3.noise.Noise2d;
+import com.jme3.noise.Utils;
 import com.jme3.noise.filter.Filter2d;
 
 /** Under Construction.
  *
  * @author Piotr SQLek Skólski
  */
-public class FractalNoise2d extends Filter2d {
+public class FractalNoise2d extends Filter2d implements BoundedNoise2d,
+        LipschitzNoise {
     
-    public final int octaves;
+    protected int octaves;
     
     public FractalNoise2d(Noise2d source, int octaves) {
         super(source);
         this.octaves = octaves;
     }
 
+    public int getOctaves() {
+        return octaves;
+    }
+
+    /** Changes number of octaves.
+     * 
+     * Must not be called while other thread generates from this noise.
+     *
+     * @param octaves Number of octaves.
+     */
+    public void setOctaves(int octaves) {
+        this.octaves = octaves;
+        changed();
+    }
+
+    @Override
+    public long configurationHash() {
+        return Utils.mixHash(super.configurationHash(), octaves);
+    }
+
+    @Override
+    public boolean configurationComplete() {
+        return getClass() == FractalNoise2d.class
+                && sourceConfigurationComplete();
+    }
+
     @Override
     public float value(float x, float y) {
+        return value((double) x, (double) y);
+    }
+
+    @Override
+    public float value(double x, double y) {
         float factor = 0;
         float scale = 1;
         float value = 0;
@@ -51,6 +86,78 @@ public class FractalNoise2d extends Filter2d {
         }
         return value/factor;
     }
+
+    /** Computes Lipschitz constant of octave sum.
+     *
+     * Octave of frequency 1/scale weighted by scale has the same slope
+     * as the source.
+     *
+     * @param dimensions Number of dimensions.
+     * @return Maximal slope.
+     */
+    @Override
+    public float lipschitz(int dimensions) {
+        float factor = 0;
+        float scale = 1;
+        for (int i = 0; i < octaves; ++i) {
+            factor += scale;
+            scale /= 2;
+        }
+        return sourceLipschitz(dimensions)*octaves/factor;
+    }
+
+    /** Computes bounds as a sum of source bounds weighted by octave.
+     *
+     * @param minX Minimal cordinate of box.
+     * @param minY Minimal cordinate of box.
+     * @param maxX Maximal cordinate of box.
+     * @param maxY Maximal cordinate of box.
+     * @param range Array for computed range.
+     */
+    @Override
+    public void bounds(float minX, float minY,
+            float maxX, float maxY, float[] range) {
+        float factor = 0;
+        float scale = 1;
+        float min = 0;
+        float max = 0;
+        for (int i = 0; i < octaves; ++i) {
+            sourceBounds(minX/scale, minY/scale,
+                    maxX/scale, maxY/scale, range);
+            min += range[0]*scale;
+            max += range[1]*scale;
+            factor += scale;
+            scale /= 2;
+        }
+        range[0] = min/factor;
+        range[1] = max/factor;
+    }
+
+    @Override
+    public void values(float[] xs, float[] ys, float[] result,
+            int offset, int count) {
+        float[] octaveX = new float[count];
+        float[] octaveY = new float[count];
+        float[] octaveValue = new float[count];
+        for (int i = 0; i < count; ++i)
+            result[offset + i] = 0;
+        
+        float factor = 0;
+        float scale = 1;
+        for (int o = 0; o < octaves; ++o) {
+            for (int i = 0; i < count; ++i) {
+                octaveX[i] = xs[offset + i]/scale;
+                octaveY[i] = ys[offset + i]/scale;
+            }
+            sourceValues(octaveX, octaveY, octaveValue, 0, count);
+            for (int i = 0; i < count; ++i)
+                result[offset + i] += octaveValue[i]*scale;
+            factor += scale;
+            scale /= 2;
+        }
+        for (int i = 0; i < count; ++i)
+            result[offset + i] /= factor;
+    }
     
     
 }
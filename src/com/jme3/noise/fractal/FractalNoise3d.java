@@ -23,17 +23,144 @@
  */
 package com.jme3.noise.fractal;
 
+import com.jme3.noise.BoundedNoise3d;
+import com.jme3.noise.LipschitzNoise;
+import com.jme3.noise.Noise3d;
+import com.jme3.noise.Utils;
 import com.jme3.noise.filter.Filter3d;
 
 /** Under Construction.
  *
  * @author Piotr SQLek Skólski
  */
-public class FractalNoise3d extends Filter3d {
+public class FractalNoise3d extends Filter3d implements BoundedNoise3d,
+        LipschitzNoise {
+    
+    protected int octaves;
+    
+    public FractalNoise3d(Noise3d source, int octaves) {
+        super(source);
+        this.octaves = octaves;
+    }
+
+    public int getOctaves() {
+        return octaves;
+    }
+
+    /** Changes number of octaves.
+     * 
+     * Must not be called while other thread generates from this noise.
+     *
+     * @param octaves Number of octaves.
+     */
+    public void setOctaves(int octaves) {
+        this.octaves = octaves;
+        changed();
+    }
+
+    @Override
+    public long configurationHash() {
+        return Utils.mixHash(super.configurationHash(), octaves);
+    }
+
+    @Override
+    public boolean configurationComplete() {
+        return getClass() == FractalNoise3d.class
+                && sourceConfigurationComplete();
+    }
 
     @Override
     public float value(float x, float y, float z) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return value((double) x, (double) y, (double) z);
+    }
+
+    @Override
+    public float value(double x, double y, double z) {
+        float factor = 0;
+        float scale = 1;
+        float value = 0;
+        for (int i = 0; i < octaves; ++i) {
+            value += sourceValue(x/scale, y/scale, z/scale)*scale;
+            factor += scale;
+            scale /= 2;
+        }
+        return value/factor;
+    }
+
+    @Override
+    public void values(float[] xs, float[] ys, float[] zs, float[] result,
+            int offset, int count) {
+        float[] octaveX = new float[count];
+        float[] octaveY = new float[count];
+        float[] octaveZ = new float[count];
+        float[] octaveValue = new float[count];
+        for (int i = 0; i < count; ++i)
+            result[offset + i] = 0;
+        
+        float factor = 0;
+        float scale = 1;
+        for (int o = 0; o < octaves; ++o) {
+            for (int i = 0; i < count; ++i) {
+                octaveX[i] = xs[offset + i]/scale;
+                octaveY[i] = ys[offset + i]/scale;
+                octaveZ[i] = zs[offset + i]/scale;
+            }
+            sourceValues(octaveX, octaveY, octaveZ, octaveValue, 0, count);
+            for (int i = 0; i < count; ++i)
+                result[offset + i] += octaveValue[i]*scale;
+            factor += scale;
+            scale /= 2;
+        }
+        for (int i = 0; i < count; ++i)
+            result[offset + i] /= factor;
+    }
+
+    /** Computes Lipschitz constant of octave sum.
+     *
+     * Octave of frequency 1/scale weighted by scale has the same slope
+     * as the source.
+     *
+     * @param dimensions Number of dimensions.
+     * @return Maximal slope.
+     */
+    @Override
+    public float lipschitz(int dimensions) {
+        float factor = 0;
+        float scale = 1;
+        for (int i = 0; i < octaves; ++i) {
+            factor += scale;
+            scale /= 2;
+        }
+        return sourceLipschitz(dimensions)*octaves/factor;
+    }
+
+    /** Computes bounds as a sum of source bounds weighted by octave.
+     *
+     * @param minX Minimal cordinate of box.
+     * @param minY Minimal cordinate of box.
+     * @param minZ Minimal cordinate of box.
+     * @param maxX Maximal cordinate of box.
+     * @param maxY Maximal cordinate of box.
+     * @param maxZ Maximal cordinate of box.
+     * @param range Array for computed range.
+     */
+    @Override
+    public void bounds(float minX, float minY, float minZ,
+            float maxX, float maxY, float maxZ, float[] range) {
+        float factor = 0;
+        float scale = 1;
+        float min = 0;
+        float max = 0;
+        for (int i = 0; i < octaves; ++i) {
+            sourceBounds(minX/scale, minY/scale, minZ/scale,
+                    maxX/scale, maxY/scale, maxZ/scale, range);
+            min += range[0]*scale;
+            max += range[1]*scale;
+            factor += scale;
+            scale /= 2;
+        }
+        range[0] = min/factor;
+        range[1] = max/factor;
     }
     
 }
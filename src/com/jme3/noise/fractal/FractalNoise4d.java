@@ -23,17 +23,118 @@
  */
 package com.jme3.noise.fractal;
 
+import com.jme3.noise.BoundedNoise4d;
+import com.jme3.noise.LipschitzNoise;
+import com.jme3.noise.Noise4d;
+import com.jme3.noise.Utils;
 import com.jme3.noise.filter.Filter4d;
 
 /** Under Construction.
  *
  * @author Piotr SQLek Skólski
  */
-public class FractalNoise4d extends Filter4d {
+public class FractalNoise4d extends Filter4d implements BoundedNoise4d,
+        LipschitzNoise {
+    
+    protected int octaves;
+    
+    public FractalNoise4d(Noise4d source, int octaves) {
+        super(source);
+        this.octaves = octaves;
+    }
+
+    public int getOctaves() {
+        return octaves;
+    }
+
+    /** Changes number of octaves.
+     * 
+     * Must not be called while other thread generates from this noise.
+     *
+     * @param octaves Number of octaves.
+     */
+    public void setOctaves(int octaves) {
+        this.octaves = octaves;
+        changed();
+    }
+
+    @Override
+    public long configurationHash() {
+        return Utils.mixHash(super.configurationHash(), octaves);
+    }
+
+    @Override
+    public boolean configurationComplete() {
+        return getClass() == FractalNoise4d.class
+                && sourceConfigurationComplete();
+    }
 
     @Override
     public float value(float x, float y, float z, float w) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return value((double) x, (double) y, (double) z, (double) w);
+    }
+
+    @Override
+    public float value(double x, double y, double z, double w) {
+        float factor = 0;
+        float scale = 1;
+        float value = 0;
+        for (int i = 0; i < octaves; ++i) {
+            value += sourceValue(x/scale, y/scale, z/scale, w/scale)*scale;
+            factor += scale;
+            scale /= 2;
+        }
+        return value/factor;
+    }
+
+    /** Computes Lipschitz constant of octave sum.
+     *
+     * Octave of frequency 1/scale weighted by scale has the same slope
+     * as the source.
+     *
+     * @param dimensions Number of dimensions.
+     * @return Maximal slope.
+     */
+    @Override
+    public float lipschitz(int dimensions) {
+        float factor = 0;
+        float scale = 1;
+        for (int i = 0; i < octaves; ++i) {
+            factor += scale;
+            scale /= 2;
+        }
+        return sourceLipschitz(dimensions)*octaves/factor;
+    }
+
+    /** Computes bounds as a sum of source bounds weighted by octave.
+     *
+     * @param minX Minimal cordinate of box.
+     * @param minY Minimal cordinate of box.
+     * @param minZ Minimal cordinate of box.
+     * @param minW Minimal cordinate of box.
+     * @param maxX Maximal cordinate of box.
+     * @param maxY Maximal cordinate of box.
+     * @param maxZ Maximal cordinate of box.
+     * @param maxW Maximal cordinate of box.
+     * @param range Array for computed range.
+     */
+    @Override
+    public void bounds(float minX, float minY, float minZ, float minW,
+            float maxX, float maxY, float maxZ, float maxW, float[] range) {
+        float factor = 0;
+        float scale = 1;
+        float min = 0;
+        float max = 0;
+        for (int i = 0; i < octaves; ++i) {
+            sourceBounds(minX/scale, minY/scale, minZ/scale, minW/scale,
+                    maxX/scale, maxY/scale, maxZ/scale, maxW/scale, range);
+            min += range[0]*scale;
+            max += range[1]*scale;
+            factor += scale;
+            scale /= 2;
+        }
+        range[0] = min/factor;
+        range[1] = max/factor;
     }
     
 }
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.fractal;
+
+/** Octave sum with transform applied to every octave.
+ * 
+ * Octave i is sampled at frequency 2^i and weighted by 2^(-i*roughness).
+ * Sum is normalized to range of minus one to plus one.
+ *
+ * @author Piotr SQLek Skólski
+ * @see #RIDGED
+ * @see #BILLOW
+ * @see #HYBRID
+ */
+public interface Multifractal {
+    
+    /** Ridged multifractal.
+     * 
+     * Octave signal is (offset - |noise|)^2 multiplied by weight. Weight of
+     * next octave is signal multiplied by gain, clamped to zero to one.
+     * When weight reaches zero, remaining octaves are skipped.
+     */
+    public static final int RIDGED = 0;
+    
+    /** Billowy turbulence.
+     * 
+     * Octave signal is 2*|noise| - 1. Offset and gain are not used.
+     */
+    public static final int BILLOW = 1;
+    
+    /** Hybrid multifractal.
+     * 
+     * Octave signal is (noise + offset) multiplied by weight clamped to one.
+     * Weight of next octave is weight multiplied by signal. When weight
+     * falls to zero or below, remaining octaves are skipped.
+     * Gain is not used.
+     */
+    public static final int HYBRID = 2;
+    
+    /** Retrive kind of octave transform.
+     *
+     * @return One of {@link #RIDGED}, {@link #BILLOW}, {@link #HYBRID}.
+     */
+    int getKind();
+    
+    /** Retrive exponent of spectral weights.
+     *
+     * @return Roughness exponent.
+     */
+    float getRoughness();
+    
+    float getOffset();
+    
+    float getGain();
+    
+    /** Changes parameters of octave transform.
+     * 
+     * Must not be called while other thread generates from this noise.
+     *
+     * @param roughness Exponent of spectral weights.
+     * @param offset Offset added to octave signal.
+     * @param gain Gain of octave weight.
+     */
+    void setParameters(float roughness, float offset, float gain);
+    
+}
@@ -0,0 +1,229 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.fractal;
+
+import com.jme3.noise.Noise1d;
+import com.jme3.noise.Utils;
+
+/** Multifractal of 1 dimensions with octave transform fused in octave loop.
+ * 
+ * Unlike chain of filters, source is sampled directly, without cache
+ * probe nor virtual call per transform stage. Spectral weights are
+ * precomputed when octaves or parameters change.
+ *
+ * @author Piotr SQLek Skólski
+ * @see Multifractal
+ */
+public class MultifractalNoise1d extends FractalNoise1d
+        implements Multifractal {
+    
+    private final Spectrum spectrum;
+    
+    /** Creates multifractal with specified parameters.
+     *
+     * @param source Noise to sum in octaves.
+     * @param octaves Number of octaves.
+     * @param kind One of {@link #RIDGED}, {@link #BILLOW}, {@link #HYBRID}.
+     * @param roughness Exponent of spectral weights.
+     * @param offset Offset added to octave signal.
+     * @param gain Gain of octave weight.
+     */
+    public MultifractalNoise1d(Noise1d source, int octaves, int kind,
+            float roughness, float offset, float gain) {
+        super(source, octaves);
+        spectrum = new Spectrum(kind, roughness, offset, gain, octaves);
+    }
+    
+    /** Creates multifractal with default parameters of given kind.
+     *
+     * @param source Noise to sum in octaves.
+     * @param octaves Number of octaves.
+     * @param kind One of {@link #RIDGED}, {@link #BILLOW}, {@link #HYBRID}.
+     */
+    public MultifractalNoise1d(Noise1d source, int octaves, int kind) {
+        this(source, octaves, kind, Spectrum.defaultRoughness(kind),
+                Spectrum.defaultOffset(kind), Spectrum.defaultGain(kind));
+    }
+
+    @Override
+    public int getKind() {
+        return spectrum.kind;
+    }
+
+    @Override
+    public float getRoughness() {
+        return spectrum.roughness;
+    }
+
+    @Override
+    public float getOffset() {
+        return spectrum.offset;
+    }
+
+    @Override
+    public float getGain() {
+        return spectrum.gain;
+    }
+
+    @Override
+    public void setParameters(float roughness, float offset, float gain) {
+        spectrum.roughness = roughness;
+        spectrum.offset = offset;
+        spectrum.gain = gain;
+        spectrum.update(octaves);
+        changed();
+    }
+
+    @Override
+    public void setOctaves(int octaves) {
+        spectrum.update(octaves);
+        super.setOctaves(octaves);
+    }
+
+    @Override
+    public long configurationHash() {
+        return Utils.mixHash(super.configurationHash(), spectrum.hash());
+    }
+
+    @Override
+    public boolean configurationComplete() {
+        return getClass() == MultifractalNoise1d.class
+                && sourceConfigurationComplete();
+    }
+
+    @Override
+    public float value(float x) {
+        return value((double) x);
+    }
+
+    @Override
+    public float value(double x) {
+        Noise1d source = getSource();
+        float[] spectral = spectrum.weights;
+        float offset = spectrum.offset;
+        float gain = spectrum.gain;
+        float sum = 0;
+        float weight = 1;
+        switch (spectrum.kind) {
+            case RIDGED:
+                for (int i = 0; i < spectral.length; ++i) {
+                    float signal = offset - Math.abs(source.value(x));
+                    signal *= signal * weight;
+                    sum += signal * spectral[i];
+                    weight = signal * gain;
+                    if (weight > 1)
+                        weight = 1;
+                    else if (weight <= 0)
+                        break;
+                    x *= 2;
+                }
+                break;
+            case BILLOW:
+                for (int i = 0; i < spectral.length; ++i) {
+                    sum += (2 * Math.abs(source.value(x)) - 1)
+                            * spectral[i];
+                    x *= 2;
+                }
+                break;
+            default:
+                for (int i = 0; i < spectral.length; ++i) {
+                    if (weight > 1)
+                        weight = 1;
+                    float signal = (source.value(x) + offset)
+                            * spectral[i];
+                    sum += weight * signal;
+                    weight *= signal;
+                    if (weight <= 0)
+                        break;
+                    x *= 2;
+                }
+        }
+        return spectrum.normalize(sum);
+    }
+
+    /** Computes samples for scattered cordinates.
+     *
+     * Every octave samples source only for points which did not stop
+     * early yet.
+     *
+     * @param xs Input cordinate.
+     * @param result Array for computed samples.
+     * @param offset Index of first point in all arrays.
+     * @param count Number of points to compute.
+     */
+    public void values(float[] xs, float[] result,
+            int offset, int count) {
+        Noise1d source = getSource();
+        float[] octaveX = new float[count];
+        float[] octaveValue = new float[count];
+        float[] sums = new float[count];
+        float[] weights = new float[count];
+        int[] active = new int[count];
+        for (int i = 0; i < count; ++i) {
+            weights[i] = 1;
+            active[i] = i;
+        }
+        
+        int remaining = count;
+        float frequency = 1;
+        for (int o = 0; o < spectrum.weights.length && remaining > 0; ++o) {
+            for (int j = 0; j < remaining; ++j) {
+                int i = active[j];
+                octaveX[j] = xs[offset + i]*frequency;
+            }
+            for (int j = 0; j < remaining; ++j)
+                octaveValue[j] = source.value(octaveX[j]);
+            remaining = spectrum.accumulate(o, octaveValue, active,
+                    sums, weights, remaining);
+            frequency *= 2;
+        }
+        for (int i = 0; i < count; ++i)
+            result[offset + i] = spectrum.normalize(sums[i]);
+    }
+
+    @Override
+    public float lipschitz(int dimensions) {
+        return spectrum.lipschitz(sourceLipschitz(dimensions));
+    }
+
+    /** Computes bounds from source bounds of every octave.
+     *
+     * @param minX Minimal cordinate of box.
+     * @param maxX Maximal cordinate of box.
+     * @param range Array for computed range.
+     */
+    @Override
+    public void bounds(float minX, float maxX, float[] range) {
+        float[] sum = new float[2];
+        float frequency = 1;
+        for (int i = 0; i < spectrum.weights.length; ++i) {
+            sourceBounds(minX*frequency, maxX*frequency, range);
+            spectrum.bound(i, range[0], range[1], sum);
+            frequency *= 2;
+        }
+        spectrum.finishBounds(sum, range);
+    }
+    
+}
@@ -0,0 +1,238 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jme3.noise.fractal;
+
+import com.jme3.noise.Noise2d;
+
+/**
+ * Fractal noise grid computed progressively, coarse octaves first.
+ *
+ * Grid is divided into square tiles, every tile remembers how many octaves
+ * it already holds. Each call of {@link #refine(long)} adds one octave to
+ * tiles with lowest level, until time budget runs out, so callers can show
+ * coarse noise at once and sharpen it over next frames.
+ *
+ * Result buffer always holds sum of computed octaves normalized by their
+ * amplitudes, so it stays in range minus one to plus one. When all
+ * octaves are done it is equal to {@link FractalNoise2d} with the same
+ * source and number of octaves.
+ *
+ * This class is not thread safe.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class ProgressiveFractal2d {
+
+    /**
+     * Default number of samples along tile edge.
+     *
+     */
+    public static final int DEFAULT_TILE_SIZE = 32;
+
+    public final int octaves;
+
+    private final Noise2d source;
+    private final double x, y, step;
+    private final int width, height, tileSize;
+    private final int tilesX, tilesY;
+    private final float[] result;
+    private final float[] sums;
+    private final float[] samples;
+    private final byte[] levels;
+
+    // tiles below this level are refined in index order starting at cursor
+    private int level = 0;
+    private int cursor = 0;
+
+    /**
+     * Creates progressive grid, no octave is computed yet.
+     *
+     * Sample of column i and row j is taken at (x + i*step, y + j*step) and
+     * stored at index j*width + i of result.
+     *
+     * @param source Noise source for all octaves.
+     * @param octaves Number of octaves, from one to 127.
+     * @param x Cordinate of first sample.
+     * @param y Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param tileSize Number of samples along tile edge.
+     * @param result Array of at least width*height elements, or null.
+     * @throws IllegalArgumentException If width, height or tileSize is not
+     * positive, or result is too small.
+     */
+    public ProgressiveFractal2d(Noise2d source, int octaves,
+            double x, double y, double step, int width, int height,
+            int tileSize, float[] result) {
+        if (octaves < 1 || octaves > Byte.MAX_VALUE)
+            throw new IllegalArgumentException(
+                    "Number of octaves must be from one to 127.");
+        if (width < 1 || height < 1 || tileSize < 1)
+            throw new IllegalArgumentException(
+                    "Width, height and tile size must be positive.");
+        if (result != null && result.length < (long) width * height)
+            throw new IllegalArgumentException(
+                    "Result smaller than width*height.");
+        this.source = source;
+        this.octaves = octaves;
+        this.x = x;
+        this.y = y;
+        this.step = step;
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.result = result != null ? result : new float[width * height];
+        sums = new float[width * height];
+        samples = new float[Math.min(tileSize, width)
+                * Math.min(tileSize, height)];
+        tilesX = (width + tileSize - 1) / tileSize;
+        tilesY = (height + tileSize - 1) / tileSize;
+        levels = new byte[tilesX * tilesY];
+    }
+
+    /**
+     * Creates progressive grid with default tile size.
+     *
+     * @param source Noise source for all octaves.
+     * @param octaves Number of octaves, from one to 127.
+     * @param x Cordinate of first sample.
+     * @param y Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @param width Number of columns.
+     * @param height Number of rows.
+     */
+    public ProgressiveFractal2d(Noise2d source, int octaves,
+            double x, double y, double step, int width, int height) {
+        this(source, octaves, x, y, step, width, height,
+                DEFAULT_TILE_SIZE, null);
+    }
+
+    /**
+     * Computes octaves until every tile holds at least given level.
+     *
+     * @param level Number of octaves, clamped to octaves of this grid.
+     */
+    public void advance(int level) {
+        level = Math.min(level, octaves);
+        while (this.level < level)
+            refineTile();
+    }
+
+    /**
+     * Adds octaves to tiles with lowest level until time budget runs out.
+     *
+     * At least one tile is refined on every call, unless grid is complete.
+     *
+     * @param budget Time budget in nanoseconds.
+     * @return True if all octaves are computed.
+     */
+    public boolean refine(long budget) {
+        long start = System.nanoTime();
+        while (level < octaves) {
+            refineTile();
+            if (System.nanoTime() - start >= budget)
+                break;
+        }
+        return complete();
+    }
+
+    /**
+     * Checks if all octaves are computed.
+     *
+     * @return True if every tile holds all octaves.
+     */
+    public boolean complete() {
+        return level >= octaves;
+    }
+
+    /**
+     * Retrive number of octaves computed for given sample.
+     *
+     * @param i Column of sample.
+     * @param j Row of sample.
+     * @return Number of octaves summed in this sample.
+     */
+    public int level(int i, int j) {
+        return levels[(j / tileSize) * tilesX + i / tileSize];
+    }
+
+    /**
+     * Retrive lowest number of octaves computed in any sample.
+     *
+     * @return Level reached by whole grid.
+     */
+    public int level() {
+        return level;
+    }
+
+    /**
+     * Retrive number of samples along tile edge.
+     *
+     * @return Tile size.
+     */
+    public int tileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Retrive result buffer.
+     *
+     * @return Array with normalized sum of computed octaves.
+     */
+    public float[] result() {
+        return result;
+    }
+
+    private void refineTile() {
+        int tile = cursor;
+        int octave = levels[tile];
+        float scale = 1;
+        float factor = 1;
+        for (int o = 0; o < octave; ++o) {
+            scale /= 2;
+            factor += scale;
+        }
+
+        int i0 = (tile % tilesX) * tileSize;
+        int j0 = (tile / tilesX) * tileSize;
+        int w = Math.min(tileSize, width - i0);
+        int h = Math.min(tileSize, height - j0);
+        source.values((x + i0 * step)/scale, (y + j0 * step)/scale,
+                step/scale, w, h, samples, 0);
+        for (int j = 0; j < h; ++j)
+            for (int i = 0; i < w; ++i) {
+                int index = (j0 + j) * width + i0 + i;
+                sums[index] += samples[j * w + i]*scale;
+                result[index] = sums[index]/factor;
+            }
+        levels[tile] = (byte) (octave + 1);
+
+        if (++cursor == levels.length) {
+            cursor = 0;
+            ++level;
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.fractal;
+
+import com.jme3.noise.Utils;
+
+import static com.jme3.noise.fractal.Multifractal.BILLOW;
+import static com.jme3.noise.fractal.Multifractal.HYBRID;
+import static com.jme3.noise.fractal.Multifractal.RIDGED;
+
+/** Precomputed spectral weights and normalization of multifractal.
+ * 
+ * Shared by multifractals of all dimensions. Per-point octave loops are
+ * kept in noise classes, here are only parts independent of dimension.
+ *
+ * @author Piotr SQLek Skólski
+ */
+final class Spectrum {
+    
+    final int kind;
+    float roughness;
+    float offset;
+    float gain;
+    float[] weights;
+    
+    private float scale;
+    private float bias;
+    
+    Spectrum(int kind, float roughness, float offset, float gain,
+            int octaves) {
+        if (kind != RIDGED && kind != BILLOW && kind != HYBRID)
+            throw new IllegalArgumentException("Unknown kind: " + kind);
+        this.kind = kind;
+        this.roughness = roughness;
+        this.offset = offset;
+        this.gain = gain;
+        update(octaves);
+    }
+    
+    static float defaultRoughness(int kind) {
+        return kind == HYBRID ? 0.25f : 1;
+    }
+    
+    static float defaultOffset(int kind) {
+        return kind == HYBRID ? 0.7f : 1;
+    }
+    
+    static float defaultGain(int kind) {
+        return 2;
+    }
+    
+    /** Recomputes spectral weights and normalization.
+     *
+     * Normalization maps range of sum for sources in minus one to plus one
+     * onto minus one to plus one.
+     */
+    void update(int octaves) {
+        weights = new float[Math.max(octaves, 0)];
+        for (int i = 0; i < weights.length; ++i)
+            weights[i] = (float) Math.pow(2, -i * roughness);
+        scale = 1;
+        bias = 0;
+        float[] range = new float[2];
+        for (int i = 0; i < weights.length; ++i)
+            bound(i, -1, 1, range);
+        if (range[1] > range[0]) {
+            scale = 2 / (range[1] - range[0]);
+            bias = -(range[1] + range[0]) / (range[1] - range[0]);
+        } else {
+            scale = 0;
+            bias = 0;
+        }
+    }
+    
+    long hash() {
+        long hash = kind;
+        hash = Utils.mixHash(hash, Float.floatToIntBits(roughness));
+        hash = Utils.mixHash(hash, Float.floatToIntBits(offset));
+        return Utils.mixHash(hash, Float.floatToIntBits(gain));
+    }
+    
+    float normalize(float sum) {
+        return sum * scale + bias;
+    }
+    
+    /** Adds octave of bulk samples to sums.
+     * 
+     * Sample j belongs to point active[j]. Points whose weight dropped
+     * to zero are removed from active, number of remaining is returned.
+     */
+    int accumulate(int octave, float[] samples, int[] active,
+            float[] sums, float[] octaveWeights, int count) {
+        float spectral = weights[octave];
+        int remaining = 0;
+        switch (kind) {
+            case RIDGED:
+                for (int j = 0; j < count; ++j) {
+                    int i = active[j];
+                    float signal = offset - Math.abs(samples[j]);
+                    signal *= signal * octaveWeights[i];
+                    sums[i] += signal * spectral;
+                    float weight = signal * gain;
+                    if (weight > 1)
+                        weight = 1;
+                    octaveWeights[i] = weight;
+                    if (weight > 0)
+                        active[remaining++] = i;
+                }
+                break;
+            case BILLOW:
+                for (int j = 0; j < count; ++j)
+                    sums[active[j]] += (2 * Math.abs(samples[j]) - 1)
+                            * spectral;
+                remaining = count;
+                break;
+            default:
+                for (int j = 0; j < count; ++j) {
+                    int i = active[j];
+                    float weight = Math.min(octaveWeights[i], 1);
+                    float signal = (samples[j] + offset) * spectral;
+                    sums[i] += weight * signal;
+                    weight *= signal;
+                    octaveWeights[i] = weight;
+                    if (weight > 0)
+                        active[remaining++] = i;
+                }
+        }
+        return remaining;
+    }
+    
+    /** Adds range of octave contribution for source range a to b.
+     *
+     * Weights of octaves after first are anywhere in zero to one,
+     * octave skipped by early stop contributes zero.
+     */
+    void bound(int octave, float a, float b, float[] range) {
+        float spectral = weights[octave];
+        float low, high;
+        if (kind == HYBRID) {
+            low = (a + offset) * spectral;
+            high = (b + offset) * spectral;
+        } else {
+            float absLow = a <= 0 && b >= 0 ? 0
+                    : Math.min(Math.abs(a), Math.abs(b));
+            float absHigh = Math.max(Math.abs(a), Math.abs(b));
+            if (kind == BILLOW) {
+                low = (2 * absLow - 1) * spectral;
+                high = (2 * absHigh - 1) * spectral;
+            } else {
+                float signalLow = offset - absHigh;
+                float signalHigh = offset - absLow;
+                high = Math.max(signalLow * signalLow,
+                        signalHigh * signalHigh) * spectral;
+                low = signalLow <= 0 && signalHigh >= 0 ? 0
+                        : Math.min(signalLow * signalLow,
+                        signalHigh * signalHigh) * spectral;
+            }
+        }
+        if (octave > 0 && kind != BILLOW) {
+            low = Math.min(low, 0);
+            high = Math.max(high, 0);
+        }
+        range[0] += low;
+        range[1] += high;
+    }
+    
+    /** Normalizes summed octave ranges.
+     *
+     */
+    void finishBounds(float[] sum, float[] range) {
+        float low = normalize(sum[0]);
+        float high = normalize(sum[1]);
+        range[0] = Math.max(low, -1);
+        range[1] = Math.min(high, 1);
+    }
+    
+    /** Computes Lipschitz constant of normalized sum.
+     *
+     * Octave i is sampled at frequency 2^i, so its slope is 2^i times
+     * slope of source. Slope of octave weight is tracked through octaves,
+     * clamping does not increase it.
+     *
+     * @param source Lipschitz constant of source.
+     * @return Maximal slope.
+     */
+    float lipschitz(float source) {
+        if (Float.isInfinite(source) || Float.isNaN(source))
+            return Float.POSITIVE_INFINITY;
+        float sum = 0;
+        float weightSlope = 0;
+        float frequency = 1;
+        float signalMax = Math.max(Math.abs(offset), Math.abs(offset - 1));
+        for (int i = 0; i < weights.length; ++i) {
+            float spectral = weights[i];
+            float slope = source * frequency;
+            float octave;
+            switch (kind) {
+                case RIDGED:
+                    octave = 2 * signalMax * slope
+                            + signalMax * signalMax * weightSlope;
+                    sum += octave * spectral;
+                    weightSlope = gain * octave;
+                    break;
+                case BILLOW:
+                    sum += 2 * slope * spectral;
+                    break;
+                default:
+                    octave = spectral * slope
+                            + (1 + Math.abs(offset)) * spectral * weightSlope;
+                    sum += octave;
+                    weightSlope = octave;
+            }
+            frequency *= 2;
+        }
+        return sum * Math.abs(scale);
+    }
+    
+}
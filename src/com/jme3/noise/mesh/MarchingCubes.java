@@ -0,0 +1,504 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.mesh;
+
+import com.jme3.noise.BoundedNoise3d;
+import com.jme3.noise.Noise3d;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Marching cubes mesher streaming density slice by slice.
+ *
+ * Density is evaluated by grid fill of {@link Noise3d} one z slice at a
+ * time, and only two slices are kept. Vertices lying on cube edges are
+ * shared by neighbour cubes through edge caches of the two slices, and
+ * written with indices straight into direct buffers. Layers between
+ * slices lying fully on one side of iso level are not marched, and if
+ * source is {@link BoundedNoise3d} and bounds prove the layer uniform,
+ * its slices are not even evaluated.
+ *
+ * Space is solid where density is at least iso level. Triangles are
+ * counterclockwise seen from empty space, and normals point there.
+ * Ambiguous cube faces keep solid corners separated, so neighbour cubes
+ * always agree and the surface is closed.
+ *
+ * Not thread safe, buffers are reused by next mesh call.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class MarchingCubes {
+
+    // corner c has cordinates (c & 1, c >> 1 & 1, c >> 2 & 1)
+    private static final int[][] EDGE_CORNERS = new int[12][];
+    // triangles of every cube case, as edge triples
+    private static final int[][] TRIANGLES = new int[256][];
+
+    static {
+        for (int a = 0; a < 3; ++a) {
+            int u = (a + 1) % 3, v = (a + 2) % 3;
+            for (int m = 0; m < 4; ++m) {
+                int base = (m & 1) << u | (m >> 1) << v;
+                EDGE_CORNERS[a * 4 + m] = new int[]{base, base | 1 << a};
+            }
+        }
+        for (int c = 0; c < 256; ++c)
+            TRIANGLES[c] = triangulate(c);
+    }
+
+    private final Noise3d source;
+    private final float iso;
+
+    private float[] bottom = new float[0];
+    private float[] top = new float[0];
+    private int[] bottomX = new int[0], bottomY = new int[0];
+    private int[] topX = new int[0], topY = new int[0];
+    private int[] edgesZ = new int[0];
+
+    private FloatBuffer positions;
+    private FloatBuffer normals;
+    private IntBuffer indices;
+    private int vertices;
+    private int triangles;
+    private int evaluatedSlices;
+    private int skippedLayers;
+
+    /**
+     * Creates mesher for given density.
+     *
+     * @param source Noise giving density.
+     * @param iso Lowest density of solid space.
+     * @param vertexCapacity Initial capacity of vertex buffers.
+     */
+    public MarchingCubes(Noise3d source, float iso, int vertexCapacity) {
+        this.source = source;
+        this.iso = iso;
+        vertexCapacity = Math.max(vertexCapacity, 16);
+        positions = floats(vertexCapacity * 3);
+        normals = floats(vertexCapacity * 3);
+        indices = ints(vertexCapacity * 6);
+    }
+
+    /**
+     * Creates mesher with default buffer capacity.
+     *
+     * @param source Noise giving density.
+     * @param iso Lowest density of solid space.
+     */
+    public MarchingCubes(Noise3d source, float iso) {
+        this(source, iso, 4096);
+    }
+
+    /**
+     * Meshes box of samples. Previous mesh is dropped.
+     *
+     * Positions are relative to the first sample, so mesh can be placed
+     * by local translation without losing precision.
+     *
+     * @param x Cordinate of the first sample.
+     * @param y Cordinate of the first sample.
+     * @param z Cordinate of the first sample.
+     * @param step Distance between neighbour samples.
+     * @param width Number of samples along x, two or more.
+     * @param height Number of samples along y, two or more.
+     * @param depth Number of samples along z, two or more.
+     * @return Number of triangles.
+     */
+    public int mesh(double x, double y, double z, double step,
+            int width, int height, int depth) {
+        if (width < 2 || height < 2 || depth < 2)
+            throw new IllegalArgumentException(
+                    "Box needs at least two samples along every axis.");
+        int plane = width * height;
+        if (bottom.length < plane) {
+            bottom = new float[plane];
+            top = new float[plane];
+            bottomX = new int[plane];
+            bottomY = new int[plane];
+            topX = new int[plane];
+            topY = new int[plane];
+            edgesZ = new int[plane];
+        }
+        positions.clear();
+        normals.clear();
+        indices.clear();
+        vertices = 0;
+        triangles = 0;
+        evaluatedSlices = 0;
+        skippedLayers = 0;
+
+        boolean bottomValid = false;
+        int bottomSide = 0;
+        Arrays.fill(bottomX, 0, plane, -1);
+        Arrays.fill(bottomY, 0, plane, -1);
+        for (int k = 0; k + 1 < depth; ++k) {
+            if (provedUniform(x, y, z + k * step, step,
+                    width, height)) {
+                ++skippedLayers;
+                bottomValid = false;
+                Arrays.fill(bottomX, 0, plane, -1);
+                Arrays.fill(bottomY, 0, plane, -1);
+                continue;
+            }
+            if (!bottomValid) {
+                bottomSide = slice(bottom, x, y, z + k * step, step,
+                        width, height);
+            }
+            int topSide = slice(top, x, y, z + (k + 1) * step, step,
+                    width, height);
+            Arrays.fill(topX, 0, plane, -1);
+            Arrays.fill(topY, 0, plane, -1);
+            if (bottomSide == 0 || bottomSide != topSide)
+                layer((float) step, k, width, height);
+            else
+                ++skippedLayers;
+
+            float[] values = bottom;
+            bottom = top;
+            top = values;
+            int[] edges = bottomX;
+            bottomX = topX;
+            topX = edges;
+            edges = bottomY;
+            bottomY = topY;
+            topY = edges;
+            bottomSide = topSide;
+            bottomValid = true;
+        }
+        normalize();
+        positions.flip();
+        normals.flip();
+        indices.flip();
+        return triangles;
+    }
+
+    /**
+     * Retrive vertex positions, three floats per vertex.
+     *
+     * @return Buffer ready for reading, reused by next mesh call.
+     */
+    public FloatBuffer getPositions() {
+        return positions;
+    }
+
+    /**
+     * Retrive unit vertex normals, three floats per vertex.
+     *
+     * @return Buffer ready for reading, reused by next mesh call.
+     */
+    public FloatBuffer getNormals() {
+        return normals;
+    }
+
+    /**
+     * Retrive triangle indices, three per triangle.
+     *
+     * @return Buffer ready for reading, reused by next mesh call.
+     */
+    public IntBuffer getIndices() {
+        return indices;
+    }
+
+    public int getVertexCount() {
+        return vertices;
+    }
+
+    public int getTriangleCount() {
+        return triangles;
+    }
+
+    /**
+     * Retrive number of slices evaluated by last mesh call.
+     *
+     * @return Number of evaluated slices.
+     */
+    public int getEvaluatedSlices() {
+        return evaluatedSlices;
+    }
+
+    /**
+     * Retrive number of layers not marched by last mesh call.
+     *
+     * @return Number of uniform layers.
+     */
+    public int getSkippedLayers() {
+        return skippedLayers;
+    }
+
+    // evaluates slice, returns 1 if all solid, -1 if all empty, else 0
+    private int slice(float[] values, double x, double y, double z,
+            double step, int width, int height) {
+        ++evaluatedSlices;
+        source.values(x, y, z, step, width, height, 1, values, 0);
+        int solid = 0;
+        int plane = width * height;
+        for (int i = 0; i < plane; ++i)
+            if (values[i] >= iso)
+                ++solid;
+        return solid == plane ? 1 : solid == 0 ? -1 : 0;
+    }
+
+    private boolean provedUniform(double x, double y, double z, double step,
+            int width, int height) {
+        if (!(source instanceof BoundedNoise3d))
+            return false;
+        float[] range = new float[2];
+        ((BoundedNoise3d) source).bounds(
+                Math.nextDown((float) x),
+                Math.nextDown((float) y),
+                Math.nextDown((float) z),
+                Math.nextUp((float) (x + (width - 1) * step)),
+                Math.nextUp((float) (y + (height - 1) * step)),
+                Math.nextUp((float) (z + step)), range);
+        return range[1] < iso || range[0] >= iso;
+    }
+
+    private void layer(float step, int k, int width, int height) {
+        Arrays.fill(edgesZ, 0, width * height, -1);
+        float[] b = bottom, t = top;
+        for (int j = 0; j + 1 < height; ++j) {
+            for (int i = 0; i + 1 < width; ++i) {
+                int p = j * width + i;
+                int c = (b[p] >= iso ? 1 : 0)
+                        | (b[p + 1] >= iso ? 2 : 0)
+                        | (b[p + width] >= iso ? 4 : 0)
+                        | (b[p + width + 1] >= iso ? 8 : 0)
+                        | (t[p] >= iso ? 16 : 0)
+                        | (t[p + 1] >= iso ? 32 : 0)
+                        | (t[p + width] >= iso ? 64 : 0)
+                        | (t[p + width + 1] >= iso ? 128 : 0);
+                int[] edges = TRIANGLES[c];
+                for (int e = 0; e < edges.length; e += 3)
+                    triangle(vertex(edges[e], i, j, k, step, width),
+                            vertex(edges[e + 1], i, j, k, step, width),
+                            vertex(edges[e + 2], i, j, k, step, width));
+            }
+        }
+    }
+
+    // finds or creates vertex on cube edge
+    private int vertex(int edge, int i, int j, int k, float step,
+            int width) {
+        int c0 = EDGE_CORNERS[edge][0];
+        int ci = i + (c0 & 1), cj = j + (c0 >> 1 & 1), ck = c0 >> 2 & 1;
+        int p = cj * width + ci;
+        int axis = edge >> 2;
+        int[] cache = axis == 0 ? (ck == 0 ? bottomX : topX)
+                : axis == 1 ? (ck == 0 ? bottomY : topY) : edgesZ;
+        int index = cache[p];
+        if (index >= 0)
+            return index;
+
+        float[] from = ck == 0 ? bottom : top;
+        float v0 = from[p], v1;
+        if (axis == 0)
+            v1 = from[p + 1];
+        else if (axis == 1)
+            v1 = from[p + width];
+        else
+            v1 = top[p];
+        float f = (iso - v0) / (v1 - v0);
+        float px = ci, py = cj, pz = k + ck;
+        if (axis == 0)
+            px += f;
+        else if (axis == 1)
+            py += f;
+        else
+            pz += f;
+
+        if (positions.remaining() < 3)
+            growVertices();
+        positions.put(px * step).put(py * step).put(pz * step);
+        normals.put(0).put(0).put(0);
+        cache[p] = vertices;
+        return vertices++;
+    }
+
+    private void triangle(int a, int b, int c) {
+        if (indices.remaining() < 3)
+            growIndices();
+        indices.put(a).put(b).put(c);
+        ++triangles;
+        // area weighted face normal accumulated in vertices
+        float ax = positions.get(a * 3), ay = positions.get(a * 3 + 1),
+                az = positions.get(a * 3 + 2);
+        float ux = positions.get(b * 3) - ax,
+                uy = positions.get(b * 3 + 1) - ay,
+                uz = positions.get(b * 3 + 2) - az;
+        float vx = positions.get(c * 3) - ax,
+                vy = positions.get(c * 3 + 1) - ay,
+                vz = positions.get(c * 3 + 2) - az;
+        float nx = uy * vz - uz * vy,
+                ny = uz * vx - ux * vz,
+                nz = ux * vy - uy * vx;
+        add(a, nx, ny, nz);
+        add(b, nx, ny, nz);
+        add(c, nx, ny, nz);
+    }
+
+    private void add(int vertex, float nx, float ny, float nz) {
+        int p = vertex * 3;
+        normals.put(p, normals.get(p) + nx);
+        normals.put(p + 1, normals.get(p + 1) + ny);
+        normals.put(p + 2, normals.get(p + 2) + nz);
+    }
+
+    private void normalize() {
+        for (int p = 0, end = vertices * 3; p < end; p += 3) {
+            float nx = normals.get(p), ny = normals.get(p + 1),
+                    nz = normals.get(p + 2);
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0) {
+                normals.put(p, nx / length);
+                normals.put(p + 1, ny / length);
+                normals.put(p + 2, nz / length);
+            }
+        }
+    }
+
+    private void growVertices() {
+        positions = grow(positions);
+        normals = grow(normals);
+    }
+
+    private void growIndices() {
+        IntBuffer bigger = ints(indices.capacity() * 2);
+        indices.flip();
+        bigger.put(indices);
+        indices = bigger;
+    }
+
+    private static FloatBuffer grow(FloatBuffer buffer) {
+        FloatBuffer bigger = floats(buffer.capacity() * 2);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private static FloatBuffer floats(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    private static IntBuffer ints(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * 4)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    /**
+     * Builds triangles of one cube case.
+     *
+     * On every face, runs of solid corners are cut off by segments joining
+     * crossed edges, directed so that every crossed edge starts one
+     * segment and ends another. Segments chain into polygons, which are
+     * split into triangle fans.
+     *
+     * @param c Cube case, bit set for every solid corner.
+     * @return Triangles as edge triples.
+     */
+    private static int[] triangulate(int c) {
+        int[] next = new int[12];
+        Arrays.fill(next, -1);
+        for (int a = 0; a < 3; ++a) {
+            int u = (a + 1) % 3, v = (a + 2) % 3;
+            for (int s = 0; s < 2; ++s) {
+                // corners counterclockwise seen from outside of the cube
+                int[] face = new int[4];
+                for (int q = 0; q < 4; ++q) {
+                    int pu = q == 1 || q == 2 ? 1 : 0;
+                    int pv = q >= 2 ? 1 : 0;
+                    face[s == 1 ? q : 3 - q] = s << a | pu << u | pv << v;
+                }
+                for (int q = 0; q < 4; ++q) {
+                    boolean in = (c >> face[q] & 1) != 0;
+                    boolean before = (c >> face[(q + 3) % 4] & 1) != 0;
+                    if (!in || before)
+                        continue;
+                    int end = q;
+                    while ((c >> face[(end + 1) % 4] & 1) != 0)
+                        end = (end + 1) % 4;
+                    int enter = edge(face[(q + 3) % 4], face[q]);
+                    int leave = edge(face[end], face[(end + 1) % 4]);
+                    next[leave] = enter;
+                }
+            }
+        }
+        int[] result = new int[36];
+        int count = 0;
+        boolean[] used = new boolean[12];
+        int[] loop = new int[12];
+        for (int e = 0; e < 12; ++e) {
+            if (next[e] < 0 || used[e])
+                continue;
+            int length = 0;
+            for (int f = e; !used[f]; f = next[f]) {
+                used[f] = true;
+                loop[length++] = f;
+            }
+            // fan from vertex with no triangle lying in a cube face, as
+            // neighbour cube would cover the same face too
+            int start = 0;
+            while (start < length && inFace(loop, length, start))
+                ++start;
+            if (start == length)
+                start = 0;
+            // fan reversed, so triangles face away from solid corners
+            for (int q = 1; q + 1 < length; ++q) {
+                result[count++] = loop[start];
+                result[count++] = loop[(start + q + 1) % length];
+                result[count++] = loop[(start + q) % length];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // checks if fan from given vertex has triangle inside one cube face
+    private static boolean inFace(int[] loop, int length, int start) {
+        for (int q = 1; q + 1 < length; ++q)
+            if ((faces(loop[start]) & faces(loop[(start + q) % length])
+                    & faces(loop[(start + q + 1) % length])) != 0)
+                return true;
+        return false;
+    }
+
+    // bit mask of two cube faces containing edge, bit axis*2+side
+    private static int faces(int edge) {
+        int a = edge >> 2;
+        int base = EDGE_CORNERS[edge][0];
+        int u = (a + 1) % 3, v = (a + 2) % 3;
+        return 1 << (u * 2 + (base >> u & 1)) | 1 << (v * 2 + (base >> v & 1));
+    }
+
+    private static int edge(int c0, int c1) {
+        int a = Integer.numberOfTrailingZeros(c0 ^ c1);
+        int base = Math.min(c0, c1);
+        int u = (a + 1) % 3, v = (a + 2) % 3;
+        return a * 4 + ((base >> u & 1) | (base >> v & 1) << 1);
+    }
+
+}
@@ -0,0 +1,372 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.query;
+
+import com.jme3.noise.BoundedNoise3d;
+import com.jme3.noise.LipschitzNoise;
+import com.jme3.noise.Noise3d;
+import java.util.Map;
+
+/**
+ * Solidity queries and raycasts against noise density without a mesh.
+ *
+ * Space is solid where source.value(x*f, y*f, z*f), with f being
+ * frequency, is at least iso level. Rays march in steps as long as
+ * distance of density to iso level divided by Lipschitz constant of the
+ * source, see {@link LipschitzNoise}. Cubic bricks
+ * remember upper bound of density, so rays pass bricks that are surely
+ * empty without sampling noise. Brick bounds are shared by all rays and
+ * threads.
+ *
+ * Source must be safe to evaluate from threads that call queries.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class DensityQuery {
+
+    /**
+     * Default edge of bricks with cached density bound, in world units.
+     *
+     */
+    public static final double DEFAULT_BRICK_SIZE = 16;
+
+    /**
+     * Default limit of cached brick bounds.
+     *
+     */
+    public static final int DEFAULT_MAX_BRICKS = 65536;
+
+    // samples along brick edge used to bound density without bounds
+    private static final int BRICK_SAMPLES = 8;
+
+    private final Noise3d source;
+    private final double frequency;
+    private final float iso;
+    private final double brickSize;
+    private final Map<Marching.Cell, Float> bricks;
+
+    private volatile float slope;
+    private volatile float precision = 1e-3f;
+    private volatile int maxSteps = 4096;
+
+    /**
+     * Creates query service for density.
+     *
+     * @param source Noise giving density.
+     * @param frequency Noise cordinate change per unit of distance.
+     * @param iso Lowest density of solid space.
+     * @param brickSize Edge of bricks with cached density bound.
+     * @param maxBricks Maximal number of cached brick bounds, least
+     * recently used ones are dropped.
+     */
+    public DensityQuery(Noise3d source, double frequency, float iso,
+            double brickSize, int maxBricks) {
+        if (!(frequency > 0))
+            throw new IllegalArgumentException(
+                    "Frequency must be positive.");
+        this.source = source;
+        this.frequency = frequency;
+        this.iso = iso;
+        this.brickSize = brickSize;
+        bricks = Marching.cache(maxBricks);
+        slope = source instanceof LipschitzNoise
+                ? (float) (((LipschitzNoise) source).lipschitz(3)
+                        * frequency)
+                : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Creates query service with default bricks.
+     *
+     * @param source Noise giving density.
+     * @param frequency Noise cordinate change per unit of distance.
+     * @param iso Lowest density of solid space.
+     */
+    public DensityQuery(Noise3d source, double frequency, float iso) {
+        this(source, frequency, iso, DEFAULT_BRICK_SIZE, DEFAULT_MAX_BRICKS);
+    }
+
+    /**
+     * Overrides Lipschitz constant computed from source.
+     *
+     * Without finite slope rays advance by precision, as in fixed step
+     * marching.
+     *
+     * @param slope Maximal density change per unit of distance.
+     */
+    public void setSlope(float slope) {
+        this.slope = slope;
+        synchronized (bricks) {
+            bricks.clear();
+        }
+    }
+
+    public float getSlope() {
+        return slope;
+    }
+
+    /**
+     * Sets distance below which ray is considered hitting surface.
+     *
+     * It is also the shortest step, so features thinner than it can be
+     * missed.
+     *
+     * @param precision Hit distance.
+     */
+    public void setPrecision(float precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * Sets limit of noise samples taken by single ray.
+     *
+     * @param maxSteps Maximal number of steps.
+     */
+    public void setMaxSteps(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Drops cached brick bounds, for example after source change.
+     *
+     */
+    public void clearCache() {
+        synchronized (bricks) {
+            bricks.clear();
+        }
+    }
+
+    /**
+     * Checks if point is inside solid space.
+     *
+     * @param x Input cordinate.
+     * @param y Input cordinate.
+     * @param z Input cordinate.
+     * @return True if density is at least iso level.
+     */
+    public boolean isSolid(double x, double y, double z) {
+        return density(x, y, z) >= iso;
+    }
+
+    /**
+     * Computes density.
+     *
+     * @param x Input cordinate.
+     * @param y Input cordinate.
+     * @param z Input cordinate.
+     * @return Density.
+     */
+    public float density(double x, double y, double z) {
+        return source.value(x * frequency, y * frequency, z * frequency);
+    }
+
+    /**
+     * Computes densities of scattered points.
+     *
+     * @param xs Input cordinates.
+     * @param ys Input cordinates.
+     * @param zs Input cordinates.
+     * @param result Array for densities.
+     * @param offset Index of first point.
+     * @param count Number of points.
+     */
+    public void densities(float[] xs, float[] ys, float[] zs,
+            float[] result, int offset, int count) {
+        if (frequency != 1) {
+            float[] scaledX = new float[count];
+            float[] scaledY = new float[count];
+            float[] scaledZ = new float[count];
+            for (int i = 0; i < count; ++i) {
+                scaledX[i] = (float) (xs[offset + i] * frequency);
+                scaledY[i] = (float) (ys[offset + i] * frequency);
+                scaledZ[i] = (float) (zs[offset + i] * frequency);
+            }
+            float[] samples = new float[count];
+            source.values(scaledX, scaledY, scaledZ, samples, 0, count);
+            System.arraycopy(samples, 0, result, offset, count);
+        } else {
+            source.values(xs, ys, zs, result, offset, count);
+        }
+    }
+
+    /**
+     * Finds first intersection of ray with solid space.
+     *
+     * @param ox Ray origin.
+     * @param oy Ray origin.
+     * @param oz Ray origin.
+     * @param dx Ray direction, not necessarily normalized.
+     * @param dy Ray direction, not necessarily normalized.
+     * @param dz Ray direction, not necessarily normalized.
+     * @param maxDistance Length of ray.
+     * @return Distance to hit along normalized direction, zero if origin is
+     * solid, POSITIVE_INFINITY if nothing is hit, NaN if step limit ended
+     * marching.
+     */
+    public float raycast(double ox, double oy, double oz,
+            float dx, float dy, float dz, float maxDistance) {
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (length == 0)
+            return isSolid(ox, oy, oz) ? 0 : Float.POSITIVE_INFINITY;
+        double nx = dx / length, ny = dy / length, nz = dz / length;
+        float slope = this.slope;
+        float precision = this.precision;
+
+        double t = 0;
+        double last = 0;
+        int steps = maxSteps;
+        while (t <= maxDistance) {
+            double px = ox + nx * t, py = oy + ny * t, pz = oz + nz * t;
+            double skip = skip(px, py, pz, nx, ny, nz);
+            if (skip > 0) {
+                t += skip;
+                last = t;
+                continue;
+            }
+            if (steps-- <= 0)
+                return Float.NaN;
+            double gap = iso - density(px, py, pz);
+            if (gap <= 0) {
+                if (t == 0)
+                    return 0;
+                return (float) refine(ox, oy, oz, nx, ny, nz,
+                        last, t, precision);
+            }
+            last = t;
+            t += Math.max(gap / slope, precision);
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Finds intersections of many rays.
+     *
+     * @param origins Ray origins, three cordinates per ray.
+     * @param directions Ray directions, three cordinates per ray.
+     * @param maxDistance Length of rays.
+     * @param result Array for distances, as returned by raycast.
+     * @param count Number of rays.
+     * @return Number of rays surely hitting solid space.
+     */
+    public int raycast(double[] origins, float[] directions,
+            float maxDistance, float[] result, int count) {
+        int hits = 0;
+        for (int i = 0; i < count; ++i) {
+            int j = i * 3;
+            result[i] = raycast(origins[j], origins[j + 1], origins[j + 2],
+                    directions[j], directions[j + 1], directions[j + 2],
+                    maxDistance);
+            if (result[i] < Float.POSITIVE_INFINITY)
+                ++hits;
+        }
+        return hits;
+    }
+
+    /**
+     * Retrive upper bound of density inside brick.
+     *
+     * @param bx Brick index.
+     * @param by Brick index.
+     * @param bz Brick index.
+     * @return Density no point of the brick exceeds.
+     */
+    public float brickBound(long bx, long by, long bz) {
+        Marching.Cell key = new Marching.Cell(bx, by, bz);
+        Float bound;
+        synchronized (bricks) {
+            bound = bricks.get(key);
+        }
+        if (bound == null) {
+            bound = computeBound(bx, by, bz);
+            synchronized (bricks) {
+                bricks.put(key, bound);
+            }
+        }
+        return bound;
+    }
+
+    private float computeBound(long bx, long by, long bz) {
+        double x0 = bx * brickSize, y0 = by * brickSize, z0 = bz * brickSize;
+        float bound = Float.POSITIVE_INFINITY;
+        if (slope < Float.POSITIVE_INFINITY) {
+            int n = BRICK_SAMPLES + 1;
+            double step = brickSize / BRICK_SAMPLES;
+            float[] samples = new float[n * n * n];
+            source.values(x0 * frequency, y0 * frequency, z0 * frequency,
+                    step * frequency, n, n, n, samples, 0);
+            float max = Float.NEGATIVE_INFINITY;
+            for (float sample : samples)
+                max = Math.max(max, sample);
+            // every point is at most half diagonal from a sample
+            bound = (float) (max + slope * step * Math.sqrt(0.75));
+        }
+        if (source instanceof BoundedNoise3d) {
+            float[] range = new float[2];
+            double x1 = x0 + brickSize, y1 = y0 + brickSize,
+                    z1 = z0 + brickSize;
+            // widened by rounding, so the box covers whole brick
+            ((BoundedNoise3d) source).bounds(
+                    Math.nextDown((float) (x0 * frequency)),
+                    Math.nextDown((float) (y0 * frequency)),
+                    Math.nextDown((float) (z0 * frequency)),
+                    Math.nextUp((float) (x1 * frequency)),
+                    Math.nextUp((float) (y1 * frequency)),
+                    Math.nextUp((float) (z1 * frequency)), range);
+            bound = Math.min(bound, range[1]);
+        }
+        return Math.nextUp(bound);
+    }
+
+    // distance ray can safely go through current brick, zero if none
+    private double skip(double px, double py, double pz,
+            double nx, double ny, double nz) {
+        long bx = (long) Math.floor(px / brickSize);
+        long by = (long) Math.floor(py / brickSize);
+        long bz = (long) Math.floor(pz / brickSize);
+        if (brickBound(bx, by, bz) >= iso)
+            return 0;
+        double exit = Math.min(Marching.exit(px, nx, brickSize),
+                Math.min(Marching.exit(py, ny, brickSize),
+                        Marching.exit(pz, nz, brickSize)));
+        // step slightly past the face so next brick is entered
+        return exit + Math.max(Math.abs(px),
+                Math.max(Math.abs(py), Math.abs(pz))) * 1e-12 + 1e-9;
+    }
+
+    // bisects between point outside and point inside solid space
+    private double refine(double ox, double oy, double oz,
+            double nx, double ny, double nz,
+            double outside, double inside, float precision) {
+        while (inside - outside > precision) {
+            double t = (outside + inside) / 2;
+            if (isSolid(ox + nx * t, oy + ny * t, oz + nz * t))
+                inside = t;
+            else
+                outside = t;
+        }
+        return outside;
+    }
+
+}
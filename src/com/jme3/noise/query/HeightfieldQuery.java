@@ -0,0 +1,371 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.query;
+
+import com.jme3.noise.BoundedNoise2d;
+import com.jme3.noise.LipschitzNoise;
+import com.jme3.noise.Noise2d;
+import java.util.Map;
+
+/**
+ * Height queries and raycasts against noise heightfield without a mesh.
+ *
+ * Terrain height at (x, z) is scale*source.value(x*f, z*f) + offset,
+ * where f is frequency, with y axis pointing up. Rays march in steps as
+ * long as vertical gap divided by the fastest the gap can shrink, which is
+ * known from Lipschitz constant of the source, see
+ * {@link LipschitzNoise}. Square tiles remember upper bound of terrain, so
+ * rays skip tiles passing above them without sampling noise. Tile bounds
+ * are shared by all rays and threads.
+ *
+ * Source must be safe to evaluate from threads that call queries.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class HeightfieldQuery {
+
+    /**
+     * Default edge of tiles with cached terrain bound, in world units.
+     *
+     */
+    public static final double DEFAULT_TILE_SIZE = 64;
+
+    /**
+     * Default limit of cached tile bounds.
+     *
+     */
+    public static final int DEFAULT_MAX_TILES = 65536;
+
+    // samples along tile edge used to bound terrain without bounds
+    private static final int TILE_SAMPLES = 16;
+
+    private final Noise2d source;
+    private final double frequency;
+    private final float scale;
+    private final float offset;
+    private final double tileSize;
+    private final Map<Marching.Cell, Float> tiles;
+
+    private volatile float slope;
+    private volatile float precision = 1e-3f;
+    private volatile int maxSteps = 4096;
+
+    /**
+     * Creates query service for heightfield.
+     *
+     * @param source Noise giving terrain shape.
+     * @param frequency Noise cordinate change per unit of distance.
+     * @param scale Height of unit noise value.
+     * @param offset Height of zero noise value.
+     * @param tileSize Edge of tiles with cached terrain bound.
+     * @param maxTiles Maximal number of cached tile bounds, least
+     * recently used ones are dropped.
+     */
+    public HeightfieldQuery(Noise2d source, double frequency,
+            float scale, float offset, double tileSize, int maxTiles) {
+        if (!(frequency > 0))
+            throw new IllegalArgumentException(
+                    "Frequency must be positive.");
+        this.source = source;
+        this.frequency = frequency;
+        this.scale = scale;
+        this.offset = offset;
+        this.tileSize = tileSize;
+        tiles = Marching.cache(maxTiles);
+        slope = source instanceof LipschitzNoise
+                ? (float) (((LipschitzNoise) source).lipschitz(2)
+                        * Math.abs(scale) * frequency)
+                : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Creates query service with default tiles.
+     *
+     * @param source Noise giving terrain shape.
+     * @param frequency Noise cordinate change per unit of distance.
+     * @param scale Height of unit noise value.
+     * @param offset Height of zero noise value.
+     */
+    public HeightfieldQuery(Noise2d source, double frequency,
+            float scale, float offset) {
+        this(source, frequency, scale, offset,
+                DEFAULT_TILE_SIZE, DEFAULT_MAX_TILES);
+    }
+
+    /**
+     * Overrides maximal terrain slope computed from source.
+     *
+     * Without finite slope rays advance by precision, as in fixed step
+     * marching.
+     *
+     * @param slope Maximal height change per unit of horizontal distance.
+     */
+    public void setSlope(float slope) {
+        this.slope = slope;
+        synchronized (tiles) {
+            tiles.clear();
+        }
+    }
+
+    public float getSlope() {
+        return slope;
+    }
+
+    /**
+     * Sets distance below which ray is considered hitting terrain.
+     *
+     * It is also the shortest step, so features thinner than it can be
+     * missed.
+     *
+     * @param precision Hit distance.
+     */
+    public void setPrecision(float precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * Sets limit of noise samples taken by single ray.
+     *
+     * @param maxSteps Maximal number of steps.
+     */
+    public void setMaxSteps(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Drops cached tile bounds, for example after source change.
+     *
+     */
+    public void clearCache() {
+        synchronized (tiles) {
+            tiles.clear();
+        }
+    }
+
+    /**
+     * Computes terrain height.
+     *
+     * @param x Input cordinate.
+     * @param z Input cordinate.
+     * @return Terrain height.
+     */
+    public float height(double x, double z) {
+        return source.value(x * frequency, z * frequency) * scale + offset;
+    }
+
+    /**
+     * Computes terrain heights of scattered points.
+     *
+     * @param xs Input cordinates.
+     * @param zs Input cordinates.
+     * @param result Array for heights.
+     * @param offset Index of first point.
+     * @param count Number of points.
+     */
+    public void heights(float[] xs, float[] zs, float[] result,
+            int offset, int count) {
+        if (frequency != 1) {
+            float[] scaledX = new float[count];
+            float[] scaledZ = new float[count];
+            for (int i = 0; i < count; ++i) {
+                scaledX[i] = (float) (xs[offset + i] * frequency);
+                scaledZ[i] = (float) (zs[offset + i] * frequency);
+            }
+            float[] samples = new float[count];
+            source.values(scaledX, scaledZ, samples, 0, count);
+            System.arraycopy(samples, 0, result, offset, count);
+        } else {
+            source.values(xs, zs, result, offset, count);
+        }
+        for (int i = offset, end = offset + count; i < end; ++i)
+            result[i] = result[i] * scale + this.offset;
+    }
+
+    /**
+     * Finds first intersection of ray with terrain.
+     *
+     * @param ox Ray origin.
+     * @param oy Ray origin.
+     * @param oz Ray origin.
+     * @param dx Ray direction, not necessarily normalized.
+     * @param dy Ray direction, not necessarily normalized.
+     * @param dz Ray direction, not necessarily normalized.
+     * @param maxDistance Length of ray.
+     * @return Distance to hit along normalized direction, zero if origin is
+     * under terrain, POSITIVE_INFINITY if nothing is hit, NaN if step limit
+     * ended marching.
+     */
+    public float raycast(double ox, double oy, double oz,
+            float dx, float dy, float dz, float maxDistance) {
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (length == 0)
+            return oy <= height(ox, oz) ? 0 : Float.POSITIVE_INFINITY;
+        double nx = dx / length, ny = dy / length, nz = dz / length;
+        double horizontal = Math.sqrt(nx * nx + nz * nz);
+        float slope = this.slope;
+        float precision = this.precision;
+        // fastest possible shrinking of gap per unit of ray length
+        double rate = horizontal == 0 ? -ny : slope * horizontal - ny;
+
+        double t = 0;
+        double last = 0;
+        int steps = maxSteps;
+        while (t <= maxDistance) {
+            double px = ox + nx * t, py = oy + ny * t, pz = oz + nz * t;
+            double skip = skip(px, py, pz, nx, ny, nz);
+            if (skip > 0) {
+                if (Double.isInfinite(skip))
+                    break;
+                t += skip;
+                last = t;
+                continue;
+            }
+            if (steps-- <= 0)
+                return Float.NaN;
+            double gap = py - height(px, pz);
+            if (gap <= 0) {
+                if (t == 0)
+                    return 0;
+                return (float) refine(ox, oy, oz, nx, ny, nz,
+                        last, t, precision);
+            }
+            if (gap <= precision)
+                return (float) t;
+            if (rate <= 0)
+                break;
+            last = t;
+            t += Math.max(gap / rate, precision);
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Finds intersections of many rays.
+     *
+     * @param origins Ray origins, three cordinates per ray.
+     * @param directions Ray directions, three cordinates per ray.
+     * @param maxDistance Length of rays.
+     * @param result Array for distances, as returned by raycast.
+     * @param count Number of rays.
+     * @return Number of rays surely hitting terrain.
+     */
+    public int raycast(double[] origins, float[] directions,
+            float maxDistance, float[] result, int count) {
+        int hits = 0;
+        for (int i = 0; i < count; ++i) {
+            int j = i * 3;
+            result[i] = raycast(origins[j], origins[j + 1], origins[j + 2],
+                    directions[j], directions[j + 1], directions[j + 2],
+                    maxDistance);
+            if (result[i] < Float.POSITIVE_INFINITY)
+                ++hits;
+        }
+        return hits;
+    }
+
+    /**
+     * Retrive upper bound of terrain over tile.
+     *
+     * @param tx Tile index.
+     * @param tz Tile index.
+     * @return Height no sample of the tile exceeds.
+     */
+    public float tileBound(long tx, long tz) {
+        Marching.Cell key = new Marching.Cell(tx, 0, tz);
+        Float bound;
+        synchronized (tiles) {
+            bound = tiles.get(key);
+        }
+        if (bound == null) {
+            bound = computeBound(tx, tz);
+            synchronized (tiles) {
+                tiles.put(key, bound);
+            }
+        }
+        return bound;
+    }
+
+    private float computeBound(long tx, long tz) {
+        double x0 = tx * tileSize, z0 = tz * tileSize;
+        float bound = Float.POSITIVE_INFINITY;
+        if (slope < Float.POSITIVE_INFINITY) {
+            int n = TILE_SAMPLES + 1;
+            double step = tileSize / TILE_SAMPLES;
+            float[] samples = new float[n * n];
+            source.values(x0 * frequency, z0 * frequency, step * frequency,
+                    n, n, samples, 0);
+            float max = Float.NEGATIVE_INFINITY;
+            for (float sample : samples)
+                max = Math.max(max, sample * scale + offset);
+            // every point is at most half diagonal from a sample
+            bound = (float) (max + slope * step * Math.sqrt(0.5));
+        }
+        if (source instanceof BoundedNoise2d) {
+            float[] range = new float[2];
+            double x1 = x0 + tileSize, z1 = z0 + tileSize;
+            // widened by rounding, so the box covers whole tile
+            ((BoundedNoise2d) source).bounds(
+                    Math.nextDown((float) (x0 * frequency)),
+                    Math.nextDown((float) (z0 * frequency)),
+                    Math.nextUp((float) (x1 * frequency)),
+                    Math.nextUp((float) (z1 * frequency)), range);
+            bound = Math.min(bound, Math.max(range[0] * scale + offset,
+                    range[1] * scale + offset));
+        }
+        return Math.nextUp(bound);
+    }
+
+    // distance ray can safely go above current tile, zero if none
+    private double skip(double px, double py, double pz,
+            double nx, double ny, double nz) {
+        long tx = (long) Math.floor(px / tileSize);
+        long tz = (long) Math.floor(pz / tileSize);
+        float bound = tileBound(tx, tz);
+        if (py <= bound)
+            return 0;
+        double exit = Math.min(Marching.exit(px, nx, tileSize),
+                Marching.exit(pz, nz, tileSize));
+        if (ny < 0)
+            exit = Math.min(exit, (py - bound) / -ny);
+        // step slightly past the edge so next tile is entered
+        return exit + Math.max(Math.abs(px), Math.abs(pz)) * 1e-12 + 1e-9;
+    }
+
+    // bisects between point above and point under terrain
+    private double refine(double ox, double oy, double oz,
+            double nx, double ny, double nz,
+            double above, double under, float precision) {
+        while (under - above > precision) {
+            double t = (above + under) / 2;
+            double gap = oy + ny * t - height(ox + nx * t, oz + nz * t);
+            if (gap > 0)
+                above = t;
+            else
+                under = t;
+        }
+        return above;
+    }
+
+}
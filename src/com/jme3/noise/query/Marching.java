@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.query;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Helpers shared by ray marching queries.
+ *
+ * @author Piotr SQLek Skólski
+ */
+final class Marching {
+
+    private Marching() {
+    }
+
+    /**
+     * Computes distance along ray to the next boundary of grid cells.
+     *
+     * @param p Ray position on axis.
+     * @param d Ray direction on axis.
+     * @param size Size of cells.
+     * @return Distance, POSITIVE_INFINITY if ray is parallel to boundaries.
+     */
+    static double exit(double p, double d, double size) {
+        if (d > 0)
+            return ((Math.floor(p / size) + 1) * size - p) / d;
+        else if (d < 0)
+            return (p - Math.floor(p / size) * size) / -d;
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Exact key of grid cell, compared by all cordinates.
+     *
+     */
+    static final class Cell {
+
+        final long x, y, z;
+
+        Cell(long x, long y, long z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public int hashCode() {
+            long hash = (x * 31 + y) * 31 + z;
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Cell))
+                return false;
+            Cell other = (Cell) obj;
+            return x == other.x && y == other.y && z == other.z;
+        }
+    }
+
+    /**
+     * Creates cache of cell bounds dropping least recently used ones.
+     *
+     * Must be used while synchronized on it.
+     *
+     * @param max Maximal number of cells.
+     * @return Empty cache.
+     */
+    static Map<Cell, Float> cache(final int max) {
+        return new LinkedHashMap<Cell, Float>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Cell, Float> e) {
+                return size() > max;
+            }
+        };
+    }
+
+}
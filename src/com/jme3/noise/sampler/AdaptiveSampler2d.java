@@ -0,0 +1,211 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.sampler;
+
+import com.jme3.noise.BoundedNoise2d;
+import com.jme3.noise.Noise2d;
+
+/**
+ * Samples two dimension noise on a grid, evaluating it only where needed.
+ *
+ * Grid is divided into coarse cells, corners of every cell are evaluated
+ * and cells are recursively split in four until bilinear interpolation of
+ * corners is within tolerance. Error is estimated from edge midpoints and
+ * center of the cell, which are exactly the samples needed by the next
+ * level, so probing costs nothing extra when cell is split. Sources
+ * implementing {@link BoundedNoise2d} can prove a cell flat without probes.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class AdaptiveSampler2d {
+
+    private final Noise2d source;
+    private final int cellSize;
+    private final float tolerance;
+
+    private final float[] range = new float[2];
+
+    private float x, y, step;
+    private int width;
+    private float[] result;
+    private boolean[] mask;
+    private int evaluated;
+
+    /**
+     * Creates sampler for given source.
+     *
+     * @param source Noise to be sampled.
+     * @param cellSize Size of coarse cell in samples, two or greater.
+     * @param tolerance Maximal accepted interpolation error.
+     */
+    public AdaptiveSampler2d(Noise2d source, int cellSize, float tolerance) {
+        if (cellSize < 2)
+            throw new IllegalArgumentException(
+                    "Cell size must be two or greater.");
+        this.source = source;
+        this.cellSize = cellSize;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Samples noise on a regular grid.
+     *
+     * Sample of column i and row j is taken at (x + i*step, y + j*step) and
+     * stored at index j*width + i of result. Mask at same index is set for
+     * samples evaluated exactly and cleared for interpolated ones.
+     *
+     * This method is not thread safe, use one sampler per thread.
+     *
+     * @param x Cordinate of first sample.
+     * @param y Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @param width Number of columns, two or greater.
+     * @param height Number of rows, two or greater.
+     * @param result Array of at least width*height elements for samples.
+     * @param mask Array of at least width*height elements for mask.
+     * @return Number of exactly evaluated samples.
+     */
+    public int sample(float x, float y, float step, int width, int height,
+            float[] result, boolean[] mask) {
+        if (width < 2 || height < 2)
+            throw new IllegalArgumentException(
+                    "Grid must be at least two samples wide and high.");
+        this.x = x;
+        this.y = y;
+        this.step = step;
+        this.width = width;
+        this.result = result;
+        this.mask = mask;
+        evaluated = 0;
+        java.util.Arrays.fill(mask, 0, width * height, false);
+
+        // corners of coarse cells are evaluated in one bulk call
+        int columns = (width - 2) / cellSize + 2;
+        int rows = (height - 2) / cellSize + 2;
+        float[] xs = new float[columns * rows];
+        float[] ys = new float[columns * rows];
+        float[] vs = new float[columns * rows];
+        for (int cj = 0; cj < rows; ++cj)
+            for (int ci = 0; ci < columns; ++ci) {
+                xs[cj * columns + ci] = x + corner(ci, width) * step;
+                ys[cj * columns + ci] = y + corner(cj, height) * step;
+            }
+        source.values(xs, ys, vs, 0, vs.length);
+        for (int cj = 0; cj < rows; ++cj)
+            for (int ci = 0; ci < columns; ++ci) {
+                int index = corner(cj, height) * width + corner(ci, width);
+                result[index] = vs[cj * columns + ci];
+                mask[index] = true;
+            }
+        evaluated = vs.length;
+
+        for (int cj = 0; cj + 1 < rows; ++cj)
+            for (int ci = 0; ci + 1 < columns; ++ci)
+                refine(corner(ci, width), corner(cj, height),
+                        corner(ci + 1, width), corner(cj + 1, height));
+
+        this.result = null;
+        this.mask = null;
+        return evaluated;
+    }
+
+    private int corner(int cell, int samples) {
+        return Math.min(cell * cellSize, samples - 1);
+    }
+
+    private void refine(int i0, int j0, int i1, int j1) {
+        if (i1 - i0 <= 1 && j1 - j0 <= 1)
+            return;
+        int mi = (i0 + i1) >>> 1;
+        int mj = (j0 + j1) >>> 1;
+
+        float v00 = result[j0 * width + i0];
+        float v10 = result[j0 * width + i1];
+        float v01 = result[j1 * width + i0];
+        float v11 = result[j1 * width + i1];
+
+        boolean flat = false;
+        if (source instanceof BoundedNoise2d) {
+            ((BoundedNoise2d) source).bounds(x + i0 * step, y + j0 * step,
+                    x + i1 * step, y + j1 * step, range);
+            flat = range[1] - range[0] <= tolerance;
+        }
+        if (!flat) {
+            float error = 0;
+            int[] is = {i0, mi, i1};
+            int[] js = {j0, mj, j1};
+            for (int j : js)
+                for (int i : is) {
+                    float exact = evaluate(i, j);
+                    float approx = interpolate(i0, j0, i1, j1,
+                            v00, v10, v01, v11, i, j);
+                    error = Math.max(error, Math.abs(exact - approx));
+                }
+            flat = error <= tolerance;
+        }
+
+        if (flat) {
+            for (int j = j0; j <= j1; ++j)
+                for (int i = i0; i <= i1; ++i)
+                    if (!mask[j * width + i])
+                        result[j * width + i] = interpolate(i0, j0, i1, j1,
+                                v00, v10, v01, v11, i, j);
+            return;
+        }
+
+        if (mi > i0 && mj > j0) {
+            refine(i0, j0, mi, mj);
+            refine(mi, j0, i1, mj);
+            refine(i0, mj, mi, j1);
+            refine(mi, mj, i1, j1);
+        } else if (mi > i0) {
+            refine(i0, j0, mi, j1);
+            refine(mi, j0, i1, j1);
+        } else {
+            refine(i0, j0, i1, mj);
+            refine(i0, mj, i1, j1);
+        }
+    }
+
+    private float evaluate(int i, int j) {
+        int index = j * width + i;
+        if (!mask[index]) {
+            result[index] = source.value(x + i * step, y + j * step);
+            mask[index] = true;
+            ++evaluated;
+        }
+        return result[index];
+    }
+
+    private static float interpolate(int i0, int j0, int i1, int j1,
+            float v00, float v10, float v01, float v11, int i, int j) {
+        float u = (float) (i - i0) / (i1 - i0);
+        float v = (float) (j - j0) / (j1 - j0);
+        float a = v00 + (v10 - v00) * u;
+        float b = v01 + (v11 - v01) * u;
+        return a + (b - a) * v;
+    }
+
+}
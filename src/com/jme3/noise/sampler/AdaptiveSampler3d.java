@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.sampler;
+
+import com.jme3.noise.BoundedNoise3d;
+import com.jme3.noise.Noise3d;
+
+/**
+ * Samples three dimension noise on a grid, evaluating it only where needed.
+ *
+ * Works like {@link AdaptiveSampler2d}, but splits coarse cells in eight
+ * and interpolates them trilinearly. Error is estimated from edge
+ * midpoints, face centers and center of the cell.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class AdaptiveSampler3d {
+
+    private final Noise3d source;
+    private final int cellSize;
+    private final float tolerance;
+
+    private final float[] range = new float[2];
+    private final float[] corners = new float[8];
+
+    private float x, y, z, step;
+    private int width, height;
+    private float[] result;
+    private boolean[] mask;
+    private int evaluated;
+
+    /**
+     * Creates sampler for given source.
+     *
+     * @param source Noise to be sampled.
+     * @param cellSize Size of coarse cell in samples, two or greater.
+     * @param tolerance Maximal accepted interpolation error.
+     */
+    public AdaptiveSampler3d(Noise3d source, int cellSize, float tolerance) {
+        if (cellSize < 2)
+            throw new IllegalArgumentException(
+                    "Cell size must be two or greater.");
+        this.source = source;
+        this.cellSize = cellSize;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Samples noise on a regular grid.
+     *
+     * Sample of column i, row j and slice k is taken at
+     * (x + i*step, y + j*step, z + k*step) and stored at index
+     * (k*height + j)*width + i of result. Mask at same index is set for
+     * samples evaluated exactly and cleared for interpolated ones.
+     *
+     * This method is not thread safe, use one sampler per thread.
+     *
+     * @param x Cordinate of first sample.
+     * @param y Cordinate of first sample.
+     * @param z Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @param width Number of columns, two or greater.
+     * @param height Number of rows, two or greater.
+     * @param depth Number of slices, two or greater.
+     * @param result Array of at least width*height*depth elements.
+     * @param mask Array of at least width*height*depth elements.
+     * @return Number of exactly evaluated samples.
+     */
+    public int sample(float x, float y, float z, float step,
+            int width, int height, int depth,
+            float[] result, boolean[] mask) {
+        if (width < 2 || height < 2 || depth < 2)
+            throw new IllegalArgumentException(
+                    "Grid must be at least two samples in every axis.");
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.step = step;
+        this.width = width;
+        this.height = height;
+        this.result = result;
+        this.mask = mask;
+        evaluated = 0;
+        java.util.Arrays.fill(mask, 0, width * height * depth, false);
+
+        // corners of coarse cells are evaluated in one bulk call
+        int columns = (width - 2) / cellSize + 2;
+        int rows = (height - 2) / cellSize + 2;
+        int slices = (depth - 2) / cellSize + 2;
+        int count = columns * rows * slices;
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        float[] zs = new float[count];
+        float[] vs = new float[count];
+        for (int ck = 0, c = 0; ck < slices; ++ck)
+            for (int cj = 0; cj < rows; ++cj)
+                for (int ci = 0; ci < columns; ++ci, ++c) {
+                    xs[c] = x + corner(ci, width) * step;
+                    ys[c] = y + corner(cj, height) * step;
+                    zs[c] = z + corner(ck, depth) * step;
+                }
+        source.values(xs, ys, zs, vs, 0, count);
+        for (int ck = 0, c = 0; ck < slices; ++ck)
+            for (int cj = 0; cj < rows; ++cj)
+                for (int ci = 0; ci < columns; ++ci, ++c) {
+                    int index = index(corner(ci, width), corner(cj, height),
+                            corner(ck, depth));
+                    result[index] = vs[c];
+                    mask[index] = true;
+                }
+        evaluated = count;
+
+        for (int ck = 0; ck + 1 < slices; ++ck)
+            for (int cj = 0; cj + 1 < rows; ++cj)
+                for (int ci = 0; ci + 1 < columns; ++ci)
+                    refine(corner(ci, width), corner(cj, height),
+                            corner(ck, depth), corner(ci + 1, width),
+                            corner(cj + 1, height), corner(ck + 1, depth));
+
+        this.result = null;
+        this.mask = null;
+        return evaluated;
+    }
+
+    private int corner(int cell, int samples) {
+        return Math.min(cell * cellSize, samples - 1);
+    }
+
+    private int index(int i, int j, int k) {
+        return (k * height + j) * width + i;
+    }
+
+    private void refine(int i0, int j0, int k0, int i1, int j1, int k1) {
+        if (i1 - i0 <= 1 && j1 - j0 <= 1 && k1 - k0 <= 1)
+            return;
+        int mi = (i0 + i1) >>> 1;
+        int mj = (j0 + j1) >>> 1;
+        int mk = (k0 + k1) >>> 1;
+
+        float[] v = corners;
+        for (int c = 0; c < 8; ++c)
+            v[c] = result[index((c & 1) == 0 ? i0 : i1,
+                    (c & 2) == 0 ? j0 : j1, (c & 4) == 0 ? k0 : k1)];
+
+        boolean flat = false;
+        if (source instanceof BoundedNoise3d) {
+            ((BoundedNoise3d) source).bounds(
+                    x + i0 * step, y + j0 * step, z + k0 * step,
+                    x + i1 * step, y + j1 * step, z + k1 * step, range);
+            flat = range[1] - range[0] <= tolerance;
+        }
+        if (!flat) {
+            float error = 0;
+            int[] is = {i0, mi, i1};
+            int[] js = {j0, mj, j1};
+            int[] ks = {k0, mk, k1};
+            for (int k : ks)
+                for (int j : js)
+                    for (int i : is) {
+                        float exact = evaluate(i, j, k);
+                        float approx = interpolate(i0, j0, k0, i1, j1, k1,
+                                v, i, j, k);
+                        error = Math.max(error, Math.abs(exact - approx));
+                    }
+            flat = error <= tolerance;
+        }
+
+        if (flat) {
+            for (int k = k0; k <= k1; ++k)
+                for (int j = j0; j <= j1; ++j)
+                    for (int i = i0; i <= i1; ++i)
+                        if (!mask[index(i, j, k)])
+                            result[index(i, j, k)] = interpolate(
+                                    i0, j0, k0, i1, j1, k1, v, i, j, k);
+            return;
+        }
+
+        int[] is = mi > i0 ? new int[]{i0, mi, i1} : new int[]{i0, i1};
+        int[] js = mj > j0 ? new int[]{j0, mj, j1} : new int[]{j0, j1};
+        int[] ks = mk > k0 ? new int[]{k0, mk, k1} : new int[]{k0, k1};
+        for (int ck = 0; ck + 1 < ks.length; ++ck)
+            for (int cj = 0; cj + 1 < js.length; ++cj)
+                for (int ci = 0; ci + 1 < is.length; ++ci)
+                    refine(is[ci], js[cj], ks[ck],
+                            is[ci + 1], js[cj + 1], ks[ck + 1]);
+    }
+
+    private float evaluate(int i, int j, int k) {
+        int index = index(i, j, k);
+        if (!mask[index]) {
+            result[index] = source.value(x + i * step, y + j * step,
+                    z + k * step);
+            mask[index] = true;
+            ++evaluated;
+        }
+        return result[index];
+    }
+
+    private static float interpolate(int i0, int j0, int k0,
+            int i1, int j1, int k1, float[] v, int i, int j, int k) {
+        float u = (float) (i - i0) / (i1 - i0);
+        float t = (float) (j - j0) / (j1 - j0);
+        float s = (float) (k - k0) / (k1 - k0);
+        float a = v[0] + (v[1] - v[0]) * u;
+        float b = v[2] + (v[3] - v[2]) * u;
+        float c = v[4] + (v[5] - v[4]) * u;
+        float d = v[6] + (v[7] - v[6]) * u;
+        float e = a + (b - a) * t;
+        float f = c + (d - c) * t;
+        return e + (f - e) * s;
+    }
+
+}
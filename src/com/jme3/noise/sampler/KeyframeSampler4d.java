@@ -0,0 +1,408 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.sampler;
+
+import com.jme3.noise.Noise4d;
+import com.jme3.noise.Tracked;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Samples volume of four dimension noise animated along fourth axis.
+ *
+ * Volume is baked only at keyframes, evenly spaced in time. Frame between
+ * keyframes is a Catmull-Rom spline through four nearest ones, so it
+ * passes keyframes exactly and its time derivative is continuous. Every
+ * frame costs four multiply-adds per sample, however expensive the
+ * source is.
+ *
+ * Keyframes are baked on given executor by a single task at a time,
+ * needed ones first, then given number ahead in time. Frame waits only
+ * for keyframes it needs which are not baked yet, after jump in time or
+ * when baking falls behind, such waits are counted as stalls. Arrays of
+ * keyframes left behind are reused, so steady animation does not
+ * allocate. Keyframes are dropped when version of source changes, see
+ * {@link Tracked}.
+ *
+ * Frames must be requested from one thread. Source must not be evaluated
+ * by other threads meanwhile, as filters keep unsynchronized caches.
+ * Cordinates are passed to bulk path of the source as floats.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class KeyframeSampler4d {
+
+    /**
+     * Default number of keyframes baked ahead of needed ones.
+     *
+     */
+    public static final int DEFAULT_LOOKAHEAD = 2;
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final Noise4d source;
+    private final int width, height, depth;
+    private final double z, step;
+    private final double keyStep;
+    private final int lookahead;
+    private final Executor executor;
+
+    // used only by baking task, one at a time
+    private final float[] xs, ys, zs, ws, slice;
+
+    private final Map<Long, float[]> keys = new HashMap<Long, float[]>();
+    private final ArrayList<Long> pending = new ArrayList<Long>();
+    private final ArrayList<float[]> free = new ArrayList<float[]>();
+    // keyframes blended by frame outside of lock, kept out of free
+    private final float[][] reading = new float[4][];
+    private long baking = NONE;
+    private long current = NONE;
+    private long version;
+    private boolean running = false;
+    private RuntimeException failure;
+    private int stalls;
+
+    /**
+     * Creates sampler of volume.
+     *
+     * Sample of column i, row j and slice k at time t is taken at
+     * (x + i*step, y + j*step, z + k*step, t).
+     *
+     * @param source Noise to be sampled.
+     * @param x Cordinate of first sample.
+     * @param y Cordinate of first sample.
+     * @param z Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param depth Number of slices.
+     * @param keyStep Time between keyframes.
+     * @param lookahead Number of keyframes baked ahead of needed ones.
+     * @param executor Executor for background baking.
+     */
+    public KeyframeSampler4d(Noise4d source, double x, double y, double z,
+            double step, int width, int height, int depth, double keyStep,
+            int lookahead, Executor executor) {
+        if (width < 1 || height < 1 || depth < 1)
+            throw new IllegalArgumentException(
+                    "Volume must be at least one sample in every axis.");
+        if (!(keyStep > 0) || lookahead < 0)
+            throw new IllegalArgumentException(
+                    "Invalid keyframe step or lookahead.");
+        if ((long) width * height * depth > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Volume too large.");
+        this.source = source;
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.z = z;
+        this.step = step;
+        this.keyStep = keyStep;
+        this.lookahead = lookahead;
+        this.executor = executor;
+        int area = width * height;
+        xs = new float[area];
+        ys = new float[area];
+        zs = new float[area];
+        ws = new float[area];
+        slice = new float[area];
+        for (int j = 0, n = 0; j < height; ++j)
+            for (int i = 0; i < width; ++i, ++n) {
+                xs[n] = (float) (x + i * step);
+                ys[n] = (float) (y + j * step);
+            }
+        version = sourceVersion();
+    }
+
+    /**
+     * Creates sampler of volume with default lookahead.
+     *
+     * @param source Noise to be sampled.
+     * @param x Cordinate of first sample.
+     * @param y Cordinate of first sample.
+     * @param z Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param depth Number of slices.
+     * @param keyStep Time between keyframes.
+     * @param executor Executor for background baking.
+     */
+    public KeyframeSampler4d(Noise4d source, double x, double y, double z,
+            double step, int width, int height, int depth, double keyStep,
+            Executor executor) {
+        this(source, x, y, z, step, width, height, depth, keyStep,
+                DEFAULT_LOOKAHEAD, executor);
+    }
+
+    /**
+     * Computes volume at given time.
+     *
+     * Sample of column i, row j and slice k is stored at
+     * result[offset + (k*height + j)*width + i].
+     *
+     * @param time Time of frame.
+     * @param result Array for computed samples.
+     * @param offset Index of first sample in result.
+     * @throws InterruptedException If thread is interrupted while waiting
+     * for keyframe.
+     */
+    public void frame(double time, float[] result, int offset)
+            throws InterruptedException {
+        double t = time / keyStep;
+        long n = (long) Math.floor(t);
+        float u = (float) (t - n);
+        float[] k0, k1, k2, k3;
+        synchronized (this) {
+            long sourceVersion = sourceVersion();
+            if (sourceVersion != version) {
+                version = sourceVersion;
+                recycle(NONE);
+                current = NONE;
+            }
+            if (n != current) {
+                current = n;
+                recycle(n);
+                for (long m = n - 1; m <= n + 2 + lookahead; ++m)
+                    if (!keys.containsKey(m) && m != baking
+                            && !pending.contains(m))
+                        pending.add(m);
+                start();
+            }
+            boolean stalled = false;
+            while (true) {
+                // all four checked together, clear may drop any of them
+                boolean missing = false;
+                for (long m = n - 1; m <= n + 2; ++m)
+                    if (!keys.containsKey(m)) {
+                        missing = true;
+                        // dropped by clear from other thread
+                        if (m != baking && !pending.contains(m))
+                            pending.add(m);
+                    }
+                if (!missing)
+                    break;
+                if (failure != null)
+                    throw failure;
+                // clear also forgets window of kept keyframes
+                current = n;
+                start();
+                stalled = true;
+                wait();
+            }
+            if (stalled)
+                ++stalls;
+            k0 = keys.get(n - 1);
+            k1 = keys.get(n);
+            k2 = keys.get(n + 1);
+            k3 = keys.get(n + 2);
+            reading[0] = k0;
+            reading[1] = k1;
+            reading[2] = k2;
+            reading[3] = k3;
+        }
+
+        // Catmull-Rom weights, shared by all samples
+        float u2 = u * u;
+        float u3 = u2 * u;
+        float w0 = 0.5f * (-u3 + 2 * u2 - u);
+        float w1 = 0.5f * (3 * u3 - 5 * u2 + 2);
+        float w2 = 0.5f * (-3 * u3 + 4 * u2 + u);
+        float w3 = 0.5f * (u3 - u2);
+        try {
+            for (int i = 0, end = k0.length; i < end; ++i)
+                result[offset + i] = w0 * k0[i] + w1 * k1[i]
+                        + w2 * k2[i] + w3 * k3[i];
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Ends reading of keyframes by frame, arrays dropped meanwhile by
+     * clear or version change become free.
+     */
+    private synchronized void release() {
+        for (int r = 0; r < reading.length; ++r) {
+            if (!keys.containsValue(reading[r]))
+                free.add(reading[r]);
+            reading[r] = null;
+        }
+    }
+
+    // needs lock held
+    private boolean isRead(float[] keyframe) {
+        for (float[] r : reading)
+            if (r == keyframe)
+                return true;
+        return false;
+    }
+
+    /**
+     * Drops keyframes outside of window around keyframe n, or all if n is
+     * NONE, keeping their arrays for reuse. Arrays read by frame become
+     * free after blending. Needs lock held.
+     */
+    private void recycle(long n) {
+        Iterator<Map.Entry<Long, float[]>> i = keys.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<Long, float[]> e = i.next();
+            if (!inWindow(e.getKey(), n)) {
+                if (!isRead(e.getValue()))
+                    free.add(e.getValue());
+                i.remove();
+            }
+        }
+        for (int p = pending.size() - 1; p >= 0; --p)
+            if (!inWindow(pending.get(p), n))
+                pending.remove(p);
+    }
+
+    private boolean inWindow(long m, long n) {
+        return n != NONE && m >= n - 1 && m <= n + 2 + lookahead;
+    }
+
+    // needs lock held
+    private void start() {
+        if (running || pending.isEmpty())
+            return;
+        running = true;
+        executor.execute(new Runnable() {
+            public void run() {
+                work();
+            }
+        });
+    }
+
+    private synchronized long next() {
+        // needed keyframes first, then nearest ahead
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < pending.size(); ++i) {
+            double distance = Math.abs(pending.get(i) - (current + 0.5));
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        if (best < 0) {
+            running = false;
+            return NONE;
+        }
+        baking = pending.remove(best);
+        return baking;
+    }
+
+    private void work() {
+        try {
+            for (long m = next(); m != NONE; m = next()) {
+                float[] target;
+                long stamp;
+                synchronized (this) {
+                    target = free.isEmpty() ? null
+                            : free.remove(free.size() - 1);
+                    stamp = version;
+                }
+                if (target == null)
+                    target = new float[width * height * depth];
+                bake(m, target);
+                synchronized (this) {
+                    baking = NONE;
+                    if (stamp == version && inWindow(m, current))
+                        keys.put(m, target);
+                    else
+                        free.add(target);
+                    notifyAll();
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                baking = NONE;
+                running = false;
+                failure = e;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    private void bake(long m, float[] target) {
+        int area = width * height;
+        Arrays.fill(ws, (float) (m * keyStep));
+        for (int k = 0; k < depth; ++k) {
+            Arrays.fill(zs, (float) (z + k * step));
+            source.values(xs, ys, zs, ws, slice, 0, area);
+            System.arraycopy(slice, 0, target, k * area, area);
+        }
+    }
+
+    private long sourceVersion() {
+        return source instanceof Tracked ? ((Tracked) source).version() : 0;
+    }
+
+    /**
+     * Drops all keyframes, they are baked again when needed.
+     *
+     * Also forgets failure of baking, so next frame tries again.
+     */
+    public synchronized void clear() {
+        recycle(NONE);
+        current = NONE;
+        failure = null;
+        // waiting frame schedules dropped keyframes again
+        notifyAll();
+    }
+
+    /**
+     * Retrive number of frames which waited for a keyframe.
+     *
+     * @return Number of stalled frames.
+     */
+    public synchronized int getStalls() {
+        return stalls;
+    }
+
+    /**
+     * Retrive number of baked keyframes kept.
+     *
+     * @return Number of keyframes.
+     */
+    public synchronized int keyframes() {
+        return keys.size();
+    }
+
+    public double getKeyStep() {
+        return keyStep;
+    }
+
+    public int getLookahead() {
+        return lookahead;
+    }
+
+}
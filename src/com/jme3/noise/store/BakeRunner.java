@@ -0,0 +1,481 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.store;
+
+import com.jme3.noise.Noise2d;
+import com.jme3.noise.Noise3d;
+import com.jme3.noise.Tracked;
+import com.jme3.noise.Utils;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bakes tiles of noise cooperatively from many processes.
+ *
+ * Processes, on one host or sharing a filesystem, split work through a
+ * ledger directory without any coordination service. Every tile is
+ * claimed by atomic creation of a claim file, and marked by a done file
+ * after its samples are stored. Claim older than the timeout is taken as
+ * abandoned by a crashed process, and is recovered by atomic rename.
+ *
+ * Ledger of every task lives in subdirectory named by task fingerprint,
+ * so changed noise configuration or region never reuses done files of
+ * previous bake. Tile generation must be deterministic: when slow process
+ * loses its claim, the tile is baked twice with the same result, which
+ * only wastes work. Timeout must be longer than baking of one tile.
+ *
+ * One runner must be used by one thread, many runners can share ledger.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class BakeRunner {
+
+    /**
+     * Work split into tiles.
+     *
+     */
+    public interface Task {
+
+        /**
+         * Retrive fingerprint of task.
+         *
+         * Tasks producing different samples must have different
+         * fingerprints, also in different processes.
+         *
+         * @return Fingerprint of task.
+         */
+        long fingerprint();
+
+        /**
+         * Retrive number of tiles.
+         *
+         * @return Number of tiles.
+         */
+        long tiles();
+
+        /**
+         * Generates and stores one tile.
+         *
+         * Samples must be durable when method returns.
+         *
+         * @param tile Index of tile, from 0 to tiles()-1.
+         * @throws IOException If tile can't be stored.
+         */
+        void bake(long tile) throws IOException;
+    }
+
+    /**
+     * Default age of abandoned claim, in milliseconds.
+     *
+     */
+    public static final long DEFAULT_TIMEOUT = 60000;
+
+    /**
+     * Default wait for tiles claimed by other processes, in milliseconds.
+     *
+     */
+    public static final long DEFAULT_POLL = 100;
+
+    private static final AtomicInteger RUNNERS = new AtomicInteger();
+
+    private final Path directory;
+    private final Task task;
+    private final long timeout;
+    private final long poll;
+    private final String owner;
+
+    /**
+     * Creates runner of given task.
+     *
+     * @param ledger Directory shared by cooperating processes.
+     * @param task Task to be baked.
+     * @param timeout Age of abandoned claim, in milliseconds.
+     * @param poll Wait for tiles claimed by others, in milliseconds.
+     * @throws IOException If ledger directory can't be created.
+     */
+    public BakeRunner(File ledger, Task task, long timeout, long poll)
+            throws IOException {
+        if (timeout < 1 || poll < 1)
+            throw new IllegalArgumentException(
+                    "Timeout and poll must be positive.");
+        this.task = task;
+        this.timeout = timeout;
+        this.poll = poll;
+        directory = Files.createDirectories(new File(ledger,
+                String.format("%016x", task.fingerprint())).toPath());
+        String name = ManagementFactory.getRuntimeMXBean().getName()
+                + "-" + RUNNERS.incrementAndGet();
+        owner = name.replaceAll("[^A-Za-z0-9.-]", "_");
+    }
+
+    /**
+     * Creates runner of given task with default timeouts.
+     *
+     * @param ledger Directory shared by cooperating processes.
+     * @param task Task to be baked.
+     * @throws IOException If ledger directory can't be created.
+     */
+    public BakeRunner(File ledger, Task task) throws IOException {
+        this(ledger, task, DEFAULT_TIMEOUT, DEFAULT_POLL);
+    }
+
+    /**
+     * Bakes tiles until every tile of task is done.
+     *
+     * Runners start at different tiles and skip tiles claimed by others.
+     * When only claimed tiles are left, runner waits for them to be done
+     * or abandoned. Failed tile is released and exception is thrown.
+     *
+     * @return Number of tiles baked by this runner.
+     * @throws IOException If ledger can't be accessed or tile stored.
+     * @throws InterruptedException If thread is interrupted while waiting.
+     */
+    public long run() throws IOException, InterruptedException {
+        long tiles = task.tiles();
+        long start = tiles == 0 ? 0 : Math.floorMod(
+                (long) owner.hashCode() * 0x9E3779B97F4A7C15L, tiles);
+        long baked = 0;
+        while (true) {
+            boolean pending = false;
+            for (long i = 0; i < tiles; ++i) {
+                long tile = (start + i) % tiles;
+                if (isDone(tile))
+                    continue;
+                if (!claim(tile)) {
+                    pending = true;
+                    continue;
+                }
+                try {
+                    // tile done and released just before it was claimed
+                    if (isDone(tile))
+                        continue;
+                    task.bake(tile);
+                    markDone(tile);
+                } finally {
+                    release(tile);
+                }
+                ++baked;
+            }
+            if (!pending)
+                return baked;
+            Thread.sleep(poll);
+        }
+    }
+
+    /**
+     * Checks if tile is marked done in the ledger.
+     *
+     * @param tile Index of tile.
+     * @return True if tile is stored.
+     */
+    public boolean isDone(long tile) {
+        return Files.exists(path(tile, ".done"));
+    }
+
+    /**
+     * Counts tiles not yet done.
+     *
+     * @return Number of tiles without done mark.
+     */
+    public long remaining() {
+        long count = 0;
+        for (long tile = 0, tiles = task.tiles(); tile < tiles; ++tile)
+            if (!isDone(tile))
+                ++count;
+        return count;
+    }
+
+    /**
+     * Retrive ledger directory of the task.
+     *
+     * @return Directory with claim and done files.
+     */
+    public File getDirectory() {
+        return directory.toFile();
+    }
+
+    private Path path(long tile, String suffix) {
+        return directory.resolve(tile + suffix);
+    }
+
+    private boolean claim(long tile) throws IOException {
+        Path claim = path(tile, ".claim");
+        if (create(claim))
+            return true;
+        long age;
+        try {
+            age = System.currentTimeMillis()
+                    - Files.getLastModifiedTime(claim).toMillis();
+        } catch (NoSuchFileException e) {
+            // released meanwhile, tile is done or will be claimed again
+            return false;
+        }
+        if (age < timeout || isDone(tile))
+            return false;
+        // Other process may have recovered the claim after its age was
+        // read, so the file moved away here can be its fresh claim. Such
+        // claim is put back, but a third process may claim the tile in
+        // between, so the tile can still be baked twice. That only wastes
+        // work, as tiles are deterministic.
+        Path stale = path(tile, ".stale." + owner);
+        try {
+            Files.move(claim, stale, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (System.currentTimeMillis()
+                - Files.getLastModifiedTime(stale).toMillis() < timeout) {
+            create(claim, Files.readAllBytes(stale));
+            Files.deleteIfExists(stale);
+            return false;
+        }
+        Files.deleteIfExists(stale);
+        return create(claim);
+    }
+
+    private boolean create(Path claim) throws IOException {
+        return create(claim, owner.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean create(Path claim, byte[] holder) throws IOException {
+        try {
+            Files.write(claim, holder,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    private void markDone(long tile) throws IOException {
+        try {
+            Files.createFile(path(tile, ".done"));
+        } catch (FileAlreadyExistsException e) {
+            // baked also by process that lost its claim
+        }
+    }
+
+    private void release(long tile) throws IOException {
+        Path claim = path(tile, ".claim");
+        try {
+            String holder = new String(Files.readAllBytes(claim),
+                    StandardCharsets.UTF_8);
+            // claim recovered by other process stays in place
+            if (holder.equals(owner))
+                Files.deleteIfExists(claim);
+        } catch (NoSuchFileException e) {
+            // recovered and released by other process
+        }
+    }
+
+    /**
+     * Computes fingerprint of noise configuration.
+     *
+     * Every part of the fingerprint is built only from values that are
+     * the same in every run and process, strings being hashed by
+     * String.hashCode, whose formula is fixed by its specification:
+     * <ul>
+     * <li>noise implementing {@link Tracked} gives its configuration
+     * hash, PermutedNoise hashes name of its class, contents of
+     * permutation table, fader and tiling, filters
+     * hash name of their class, own parameters and hash of their source,
+     * </li>
+     * <li>other noise, including sources of filters, gives hash of its
+     * class name only.</li>
+     * </ul>
+     * Two differently configured instances of one class that is not
+     * Tracked get the same fingerprint, so baking them into one ledger
+     * needs own Task implementation with distinct fingerprints. Such
+     * sources are reported by {@link Tracked#configurationComplete()}.
+     *
+     * @param source Noise to fingerprint.
+     * @return Fingerprint stable between runs.
+     */
+    public static long fingerprint(Object source) {
+        if (source instanceof Tracked)
+            return ((Tracked) source).configurationHash();
+        return source.getClass().getName().hashCode();
+    }
+
+    private static long mix(long hash, double value) {
+        return Utils.mixHash(hash, Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Creates task baking two dimension noise into heightmap.
+     *
+     * Sample of column x and row y is taken at
+     * (originX + x*step, originY + y*step). Heightmap should be file
+     * mapped, every process maps the same file.
+     *
+     * @param source Noise to be sampled.
+     * @param originX Cordinate of first sample.
+     * @param originY Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @param store Heightmap receiving tiles.
+     * @return Task with one tile per heightmap tile.
+     * @see OffHeapHeightmap#map(File, long, long, int)
+     */
+    public static Task heightmap(final Noise2d source, final double originX,
+            final double originY, final double step,
+            final OffHeapHeightmap store) {
+        final int size = store.tileSize();
+        final float[] buffer = new float[size * size];
+        return new Task() {
+            @Override
+            public long fingerprint() {
+                long hash = Utils.mixHash(
+                        BakeRunner.fingerprint(source), 2);
+                hash = mix(mix(mix(hash, originX), originY), step);
+                hash = Utils.mixHash(hash, store.width());
+                hash = Utils.mixHash(hash, store.height());
+                return Utils.mixHash(hash, size);
+            }
+
+            @Override
+            public long tiles() {
+                return store.tilesX() * store.tilesY();
+            }
+
+            @Override
+            public void bake(long tile) {
+                store.fillTile(source, originX, originY, step,
+                        tile % store.tilesX(), tile / store.tilesX(), buffer);
+                store.flush();
+            }
+        };
+    }
+
+    /**
+     * Creates task baking three dimension noise into tile files.
+     *
+     * Every tile is a cube of tileSize^3 samples, stored in its own file
+     * as little endian floats, layer by layer and row by row. Files are
+     * written aside and atomically moved in place, so readers never see
+     * partial tile.
+     *
+     * @param source Noise to be sampled.
+     * @param x Cordinate of first sample.
+     * @param y Cordinate of first sample.
+     * @param z Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @param tileSize Number of samples along tile edge.
+     * @param tilesX Number of tile columns.
+     * @param tilesY Number of tile rows.
+     * @param tilesZ Number of tile layers.
+     * @param store Directory receiving tile files.
+     * @return Task with one tile per tile file.
+     * @see #volumeTile(File, long, long, long)
+     */
+    public static Task volume(final Noise3d source, final double x,
+            final double y, final double z, final double step,
+            final int tileSize, final long tilesX, final long tilesY,
+            final long tilesZ, final File store) {
+        if (tileSize < 1 || (long) tileSize * tileSize * tileSize * 4
+                > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid tile size.");
+        final int count = tileSize * tileSize * tileSize;
+        final float[] samples = new float[count];
+        final ByteBuffer bytes = ByteBuffer.allocateDirect(count * 4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        return new Task() {
+            @Override
+            public long fingerprint() {
+                long hash = Utils.mixHash(
+                        BakeRunner.fingerprint(source), 3);
+                hash = mix(mix(mix(mix(hash, x), y), z), step);
+                hash = Utils.mixHash(hash, tileSize);
+                hash = Utils.mixHash(hash, tilesX);
+                hash = Utils.mixHash(hash, tilesY);
+                return Utils.mixHash(hash, tilesZ);
+            }
+
+            @Override
+            public long tiles() {
+                return tilesX * tilesY * tilesZ;
+            }
+
+            @Override
+            public void bake(long tile) throws IOException {
+                long tx = tile % tilesX;
+                long ty = tile / tilesX % tilesY;
+                long tz = tile / tilesX / tilesY;
+                double span = tileSize * step;
+                source.values(x + tx * span, y + ty * span, z + tz * span,
+                        step, tileSize, tileSize, tileSize, samples, 0);
+                bytes.clear();
+                bytes.asFloatBuffer().put(samples);
+                Path target = volumeTile(store, tx, ty, tz).toPath();
+                Files.createDirectories(target.getParent());
+                Path temporary = Files.createTempFile(target.getParent(),
+                        target.getFileName().toString(), ".tmp");
+                try {
+                    FileChannel channel = FileChannel.open(temporary,
+                            StandardOpenOption.WRITE);
+                    try {
+                        while (bytes.hasRemaining())
+                            channel.write(bytes);
+                        channel.force(true);
+                    } finally {
+                        channel.close();
+                    }
+                    Files.move(temporary, target,
+                            StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        };
+    }
+
+    /**
+     * Retrive file of volume tile.
+     *
+     * @param store Directory with tile files.
+     * @param tx Tile column.
+     * @param ty Tile row.
+     * @param tz Tile layer.
+     * @return File holding the tile.
+     * @see #volume(Noise3d, double, double, double, double, int, long,
+     * long, long, File)
+     */
+    public static File volumeTile(File store, long tx, long ty, long tz) {
+        return new File(store, tx + "_" + ty + "_" + tz + ".tile");
+    }
+
+}
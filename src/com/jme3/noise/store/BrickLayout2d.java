@@ -0,0 +1,313 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.store;
+
+import com.jme3.noise.Noise2d;
+
+/**
+ * Layout of two dimension samples in square bricks with Morton order
+ * inside.
+ *
+ * Samples are split in bricks of 2^bits samples along edge, stored one
+ * after other in row-major order of bricks. Samples inside brick follow
+ * Morton (Z-order) curve, so every aligned square of power of two edge is
+ * one continuous range and 3x3 neighbourhoods stay close in memory. Zero
+ * bits give plain row-major layout, and single brick covering square of
+ * power of two edge gives plain Morton layout.
+ *
+ * Index of sample is a sum of offsets of its column and row, so
+ * neighbours are found by adding offsets of neighbour columns or rows.
+ * Samples are padded to whole bricks, padding samples are never written
+ * by this class.
+ *
+ * Layout is immutable and can be shared by many threads.
+ *
+ * @author Piotr SQLek Skólski
+ * @see BrickLayout3d
+ */
+public class BrickLayout2d {
+
+    /**
+     * Edge of squares evaluated at once by bulk fill, as power of two.
+     *
+     */
+    private static final int BLOCK_BITS = 4;
+
+    private final int width, height;
+    private final int bits;
+    private final int size;
+    private final int[] offsetX, offsetY;
+
+    /**
+     * Creates layout of samples.
+     *
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param bits Brick edge as power of two, from 0 to 15.
+     */
+    public BrickLayout2d(int width, int height, int bits) {
+        if (width < 1 || height < 1)
+            throw new IllegalArgumentException(
+                    "Layout must be at least one sample wide and high.");
+        if (bits < 0 || bits > 15)
+            throw new IllegalArgumentException("Invalid brick size.");
+        this.width = width;
+        this.height = height;
+        this.bits = bits;
+        int edge = 1 << bits;
+        long bricksX = (width + edge - 1) >> bits;
+        long bricksY = (height + edge - 1) >> bits;
+        long area = 1L << (2 * bits);
+        long total = bricksX * bricksY * area;
+        if (total > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Layout too large.");
+        size = (int) total;
+        offsetX = offsets(width, bits, area, 0);
+        offsetY = offsets(height, bits, bricksX * area, 1);
+    }
+
+    private static int[] offsets(int count, int bits, long stride,
+            int shift) {
+        int[] offsets = new int[count];
+        int mask = (1 << bits) - 1;
+        for (int i = 0; i < count; ++i)
+            offsets[i] = (int) ((i >> bits) * stride
+                    + (spread(i & mask) << shift));
+        return offsets;
+    }
+
+    /**
+     * Spreads bits of value, so bit t lands on bit 2t.
+     *
+     * @param value Value of 32 bits.
+     * @return Spread bits.
+     */
+    public static long spread(int value) {
+        long v = value & 0xffffffffL;
+        v = (v | v << 16) & 0x0000ffff0000ffffL;
+        v = (v | v << 8) & 0x00ff00ff00ff00ffL;
+        v = (v | v << 4) & 0x0f0f0f0f0f0f0f0fL;
+        v = (v | v << 2) & 0x3333333333333333L;
+        return (v | v << 1) & 0x5555555555555555L;
+    }
+
+    /**
+     * Gathers every second bit of value, reverse of {@link #spread(int)}.
+     *
+     * @param value Spread bits.
+     * @return Gathered value.
+     */
+    public static int compact(long value) {
+        long v = value & 0x5555555555555555L;
+        v = (v | v >>> 1) & 0x3333333333333333L;
+        v = (v | v >>> 2) & 0x0f0f0f0f0f0f0f0fL;
+        v = (v | v >>> 4) & 0x00ff00ff00ff00ffL;
+        v = (v | v >>> 8) & 0x0000ffff0000ffffL;
+        return (int) (v | v >>> 16);
+    }
+
+    /**
+     * Computes Morton code of cordinates.
+     *
+     * @param i Column.
+     * @param j Row.
+     * @return Interleaved bits of cordinates.
+     */
+    public static long morton(int i, int j) {
+        return spread(i) | spread(j) << 1;
+    }
+
+    /**
+     * Computes index of sample.
+     *
+     * @param i Column of sample.
+     * @param j Row of sample.
+     * @return Index of sample in array of {@link #size()} elements.
+     */
+    public int index(int i, int j) {
+        return offsetX[i] + offsetY[j];
+    }
+
+    /**
+     * Retrive offset of column, index is sum of two offsets.
+     *
+     * @param i Column of sample.
+     * @return Offset of column.
+     */
+    public int offsetX(int i) {
+        return offsetX[i];
+    }
+
+    /**
+     * Retrive offset of row, index is sum of two offsets.
+     *
+     * @param j Row of sample.
+     * @return Offset of row.
+     */
+    public int offsetY(int j) {
+        return offsetY[j];
+    }
+
+    /**
+     * Copies 3x3 neighbourhood of sample.
+     *
+     * Neighbours outside of layout are replaced by nearest samples on
+     * its border. Neighbourhood is stored in row-major order, sample
+     * itself at index 4.
+     *
+     * @param samples Samples in this layout.
+     * @param i Column of sample.
+     * @param j Row of sample.
+     * @param result Array of at least 9 elements.
+     */
+    public void neighbours(float[] samples, int i, int j, float[] result) {
+        int x0 = offsetX[Math.max(i - 1, 0)];
+        int x1 = offsetX[i];
+        int x2 = offsetX[Math.min(i + 1, width - 1)];
+        int n = 0;
+        for (int r = j - 1; r <= j + 1; ++r) {
+            int y = offsetY[Math.max(0, Math.min(r, height - 1))];
+            result[n++] = samples[x0 + y];
+            result[n++] = samples[x1 + y];
+            result[n++] = samples[x2 + y];
+        }
+    }
+
+    /**
+     * Converts samples of this layout to row-major order.
+     *
+     * @param samples Samples in this layout.
+     * @param result Array for width*height samples.
+     * @param offset Index of first sample in result.
+     */
+    public void toRowMajor(float[] samples, float[] result, int offset) {
+        for (int j = 0; j < height; ++j) {
+            int y = offsetY[j];
+            for (int i = 0; i < width; ++i)
+                result[offset++] = samples[offsetX[i] + y];
+        }
+    }
+
+    /**
+     * Converts samples in row-major order to this layout.
+     *
+     * @param samples Array of width*height samples.
+     * @param offset Index of first sample in samples.
+     * @param result Array of at least {@link #size()} elements.
+     */
+    public void fromRowMajor(float[] samples, int offset, float[] result) {
+        for (int j = 0; j < height; ++j) {
+            int y = offsetY[j];
+            for (int i = 0; i < width; ++i)
+                result[offsetX[i] + y] = samples[offset++];
+        }
+    }
+
+    /**
+     * Fills samples of this layout with noise.
+     *
+     * Sample of column i and row j is taken at (x + i*step, y + j*step).
+     * Samples are evaluated in squares of 16^2 samples, visited in Morton
+     * order inside larger bricks, so grid path of the source walks
+     * lattice cells close to the order samples are stored.
+     *
+     * @param source Noise to be sampled.
+     * @param x Cordinate of first sample.
+     * @param y Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @param result Array of at least {@link #size()} elements.
+     * @param buffer Array of at least 256 elements, or null.
+     */
+    public void fill(Noise2d source, double x, double y, double step,
+            float[] result, float[] buffer) {
+        if (bits == 0) {
+            source.values(x, y, step, width, height, result, 0);
+            return;
+        }
+        int block = 1 << BLOCK_BITS;
+        if (buffer == null)
+            buffer = new float[block * block];
+        // squares of small bricks are evaluated together, squares inside
+        // large brick in Morton order
+        int groupBits = Math.max(bits, BLOCK_BITS);
+        int group = 1 << groupBits;
+        int blocks = 1 << (2 * (groupBits - BLOCK_BITS));
+        for (int gj = 0; gj < height; gj += group)
+            for (int gi = 0; gi < width; gi += group)
+                for (int b = 0; b < blocks; ++b) {
+                    int i0 = gi + (compact(b) << BLOCK_BITS);
+                    int j0 = gj + (compact(b >>> 1) << BLOCK_BITS);
+                    if (i0 >= width || j0 >= height)
+                        continue;
+                    int w = Math.min(block, width - i0);
+                    int h = Math.min(block, height - j0);
+                    source.values(x + i0 * step, y + j0 * step, step,
+                            w, h, buffer, 0);
+                    int n = 0;
+                    for (int j = j0; j < j0 + h; ++j) {
+                        int row = offsetY[j];
+                        for (int i = i0; i < i0 + w; ++i)
+                            result[offsetX[i] + row] = buffer[n++];
+                    }
+                }
+    }
+
+    /**
+     * Retrive layout dimension.
+     *
+     * @return Number of columns.
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Retrive layout dimension.
+     *
+     * @return Number of rows.
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Retrive brick edge as power of two.
+     *
+     * @return Base two logarithm of brick edge.
+     */
+    public int bits() {
+        return bits;
+    }
+
+    /**
+     * Retrive size of arrays in this layout, including padding.
+     *
+     * @return Number of elements.
+     */
+    public int size() {
+        return size;
+    }
+
+}
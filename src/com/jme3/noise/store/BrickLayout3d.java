@@ -0,0 +1,351 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.store;
+
+import com.jme3.noise.Noise3d;
+
+/**
+ * Layout of volume samples in cubic bricks with Morton order inside.
+ *
+ * Volume is split in bricks of 2^bits samples along edge, stored one
+ * after other in row-major order of bricks. Samples inside brick follow
+ * Morton (Z-order) curve, so every aligned cube of power of two edge is
+ * one continuous range. Brick of 4^3 samples fits four cache lines, one
+ * of 8^3 few memory pages, so 3x3x3 neighbourhoods stay close in memory.
+ * Zero bits give plain row-major layout, and single brick covering whole
+ * volume of power of two edge gives plain Morton layout.
+ *
+ * Index of sample is a sum of offsets of its column, row and slice, so
+ * neighbours are found by adding offsets of neighbour columns, rows or
+ * slices, with no bit twiddling. Volume is padded to whole bricks,
+ * padding samples are never written by this class.
+ *
+ * Layout is immutable and can be shared by many threads.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class BrickLayout3d {
+
+    /**
+     * Edge of cubes evaluated at once by bulk fill, as power of two.
+     *
+     */
+    private static final int BLOCK_BITS = 4;
+
+    private final int width, height, depth;
+    private final int bits;
+    private final int size;
+    private final int[] offsetX, offsetY, offsetZ;
+
+    /**
+     * Creates layout of volume.
+     *
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param depth Number of slices.
+     * @param bits Brick edge as power of two, from 0 to 10.
+     */
+    public BrickLayout3d(int width, int height, int depth, int bits) {
+        if (width < 1 || height < 1 || depth < 1)
+            throw new IllegalArgumentException(
+                    "Volume must be at least one sample in every axis.");
+        if (bits < 0 || bits > 10)
+            throw new IllegalArgumentException("Invalid brick size.");
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.bits = bits;
+        int edge = 1 << bits;
+        long bricksX = (width + edge - 1) >> bits;
+        long bricksY = (height + edge - 1) >> bits;
+        long bricksZ = (depth + edge - 1) >> bits;
+        long volume = 1L << (3 * bits);
+        long total = bricksX * bricksY * bricksZ * volume;
+        if (total > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Volume too large.");
+        size = (int) total;
+        offsetX = offsets(width, bits, volume, 0);
+        offsetY = offsets(height, bits, bricksX * volume, 1);
+        offsetZ = offsets(depth, bits, bricksX * bricksY * volume, 2);
+    }
+
+    private static int[] offsets(int count, int bits, long stride,
+            int shift) {
+        int[] offsets = new int[count];
+        int mask = (1 << bits) - 1;
+        for (int i = 0; i < count; ++i)
+            offsets[i] = (int) ((i >> bits) * stride
+                    + (spread(i & mask) << shift));
+        return offsets;
+    }
+
+    /**
+     * Spreads bits of value, so bit t lands on bit 3t.
+     *
+     * @param value Value of at most 21 bits.
+     * @return Spread bits.
+     */
+    public static long spread(int value) {
+        long v = value & 0x1fffffL;
+        v = (v | v << 32) & 0x1f00000000ffffL;
+        v = (v | v << 16) & 0x1f0000ff0000ffL;
+        v = (v | v << 8) & 0x100f00f00f00f00fL;
+        v = (v | v << 4) & 0x10c30c30c30c30c3L;
+        return (v | v << 2) & 0x1249249249249249L;
+    }
+
+    /**
+     * Gathers every third bit of value, reverse of {@link #spread(int)}.
+     *
+     * @param value Spread bits.
+     * @return Gathered value.
+     */
+    public static int compact(long value) {
+        long v = value & 0x1249249249249249L;
+        v = (v | v >>> 2) & 0x10c30c30c30c30c3L;
+        v = (v | v >>> 4) & 0x100f00f00f00f00fL;
+        v = (v | v >>> 8) & 0x1f0000ff0000ffL;
+        v = (v | v >>> 16) & 0x1f00000000ffffL;
+        return (int) ((v | v >>> 32) & 0x1fffffL);
+    }
+
+    /**
+     * Computes Morton code of cordinates.
+     *
+     * @param i Column, at most 21 bits.
+     * @param j Row, at most 21 bits.
+     * @param k Slice, at most 21 bits.
+     * @return Interleaved bits of cordinates.
+     */
+    public static long morton(int i, int j, int k) {
+        return spread(i) | spread(j) << 1 | spread(k) << 2;
+    }
+
+    /**
+     * Computes index of sample.
+     *
+     * @param i Column of sample.
+     * @param j Row of sample.
+     * @param k Slice of sample.
+     * @return Index of sample in array of {@link #size()} elements.
+     */
+    public int index(int i, int j, int k) {
+        return offsetX[i] + offsetY[j] + offsetZ[k];
+    }
+
+    /**
+     * Retrive offset of column, index is sum of three offsets.
+     *
+     * @param i Column of sample.
+     * @return Offset of column.
+     */
+    public int offsetX(int i) {
+        return offsetX[i];
+    }
+
+    /**
+     * Retrive offset of row, index is sum of three offsets.
+     *
+     * @param j Row of sample.
+     * @return Offset of row.
+     */
+    public int offsetY(int j) {
+        return offsetY[j];
+    }
+
+    /**
+     * Retrive offset of slice, index is sum of three offsets.
+     *
+     * @param k Slice of sample.
+     * @return Offset of slice.
+     */
+    public int offsetZ(int k) {
+        return offsetZ[k];
+    }
+
+    /**
+     * Copies 3x3x3 neighbourhood of sample.
+     *
+     * Neighbours outside of volume are replaced by nearest samples on
+     * its border. Neighbourhood is stored in row-major order, sample
+     * itself at index 13.
+     *
+     * @param samples Samples in this layout.
+     * @param i Column of sample.
+     * @param j Row of sample.
+     * @param k Slice of sample.
+     * @param result Array of at least 27 elements.
+     */
+    public void neighbours(float[] samples, int i, int j, int k,
+            float[] result) {
+        int x0 = offsetX[Math.max(i - 1, 0)];
+        int x1 = offsetX[i];
+        int x2 = offsetX[Math.min(i + 1, width - 1)];
+        int n = 0;
+        for (int c = k - 1; c <= k + 1; ++c) {
+            int z = offsetZ[Math.max(0, Math.min(c, depth - 1))];
+            for (int r = j - 1; r <= j + 1; ++r) {
+                int yz = offsetY[Math.max(0, Math.min(r, height - 1))] + z;
+                result[n++] = samples[x0 + yz];
+                result[n++] = samples[x1 + yz];
+                result[n++] = samples[x2 + yz];
+            }
+        }
+    }
+
+    /**
+     * Converts samples of this layout to row-major order.
+     *
+     * @param samples Samples in this layout.
+     * @param result Array for width*height*depth samples.
+     * @param offset Index of first sample in result.
+     */
+    public void toRowMajor(float[] samples, float[] result, int offset) {
+        for (int k = 0; k < depth; ++k)
+            for (int j = 0; j < height; ++j) {
+                int yz = offsetY[j] + offsetZ[k];
+                for (int i = 0; i < width; ++i)
+                    result[offset++] = samples[offsetX[i] + yz];
+            }
+    }
+
+    /**
+     * Converts samples in row-major order to this layout.
+     *
+     * @param samples Array of width*height*depth samples.
+     * @param offset Index of first sample in samples.
+     * @param result Array of at least {@link #size()} elements.
+     */
+    public void fromRowMajor(float[] samples, int offset, float[] result) {
+        for (int k = 0; k < depth; ++k)
+            for (int j = 0; j < height; ++j) {
+                int yz = offsetY[j] + offsetZ[k];
+                for (int i = 0; i < width; ++i)
+                    result[offsetX[i] + yz] = samples[offset++];
+            }
+    }
+
+    /**
+     * Fills samples of this layout with noise.
+     *
+     * Sample of column i, row j and slice k is taken at
+     * (x + i*step, y + j*step, z + k*step). Volume is evaluated in cubes
+     * of 16^3 samples, visited in Morton order inside larger bricks, so
+     * grid path of the source walks lattice cells close to the order
+     * samples are stored, while cubes are large enough to amortize setup
+     * of the grid path.
+     *
+     * @param source Noise to be sampled.
+     * @param x Cordinate of first sample.
+     * @param y Cordinate of first sample.
+     * @param z Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @param result Array of at least {@link #size()} elements.
+     * @param buffer Array of at least 4096 elements, or null.
+     */
+    public void fill(Noise3d source, double x, double y, double z,
+            double step, float[] result, float[] buffer) {
+        if (bits == 0) {
+            source.values(x, y, z, step, width, height, depth, result, 0);
+            return;
+        }
+        int block = 1 << BLOCK_BITS;
+        if (buffer == null)
+            buffer = new float[block * block * block];
+        // cubes of small bricks are evaluated together, cubes inside
+        // large brick in Morton order
+        int groupBits = Math.max(bits, BLOCK_BITS);
+        int group = 1 << groupBits;
+        int blocks = 1 << (3 * (groupBits - BLOCK_BITS));
+        for (int gk = 0; gk < depth; gk += group)
+            for (int gj = 0; gj < height; gj += group)
+                for (int gi = 0; gi < width; gi += group)
+                    for (int b = 0; b < blocks; ++b) {
+                        int i0 = gi + (compact(b) << BLOCK_BITS);
+                        int j0 = gj + (compact(b >>> 1) << BLOCK_BITS);
+                        int k0 = gk + (compact(b >>> 2) << BLOCK_BITS);
+                        if (i0 >= width || j0 >= height || k0 >= depth)
+                            continue;
+                        int w = Math.min(block, width - i0);
+                        int h = Math.min(block, height - j0);
+                        int d = Math.min(block, depth - k0);
+                        source.values(x + i0 * step, y + j0 * step,
+                                z + k0 * step, step, w, h, d, buffer, 0);
+                        int n = 0;
+                        for (int k = k0; k < k0 + d; ++k)
+                            for (int j = j0; j < j0 + h; ++j) {
+                                int yz = offsetY[j] + offsetZ[k];
+                                for (int i = i0; i < i0 + w; ++i)
+                                    result[offsetX[i] + yz] = buffer[n++];
+                            }
+                    }
+    }
+
+    /**
+     * Retrive layout dimension.
+     *
+     * @return Number of columns.
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Retrive layout dimension.
+     *
+     * @return Number of rows.
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Retrive layout dimension.
+     *
+     * @return Number of slices.
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Retrive brick edge as power of two.
+     *
+     * @return Base two logarithm of brick edge.
+     */
+    public int bits() {
+        return bits;
+    }
+
+    /**
+     * Retrive size of arrays in this layout, including padding.
+     *
+     * @return Number of elements.
+     */
+    public int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.store;
+
+/** Maps noise samples to integer classes, like materials.
+ *
+ * @author Piotr SQLek Skólski
+ * @see PaletteChunk
+ */
+public interface Classifier {
+
+    /** Creates classifier splitting samples at iso level.
+     *
+     * @param iso Iso level.
+     * @param below Class of samples less than iso level.
+     * @param above Class of samples greater-equal iso level.
+     * @return Threshold classifier.
+     */
+    public static Classifier threshold(final float iso,
+            final int below, final int above) {
+        return new Classifier() {
+            public int classify(float sample) {
+                return sample < iso ? below : above;
+            }
+        };
+    }
+
+    /** Computes class of a sample.
+     *
+     * @param sample Noise sample.
+     * @return Class of the sample.
+     */
+    int classify(float sample);
+
+}
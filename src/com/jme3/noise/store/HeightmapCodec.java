@@ -0,0 +1,340 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.store;
+
+import com.jme3.noise.Noise2d;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Lossy codec of heightmap tiles with bounded error.
+ *
+ * Samples are quantized to multiples of twice the maximal error, so every
+ * decoded sample differs from encoded one by at most that error, plus
+ * float rounding of the decoded sample. Every
+ * quantized sample is predicted from its left, upper and upper-left
+ * neighbours by median edge detector, which follows plane of smooth
+ * noise and picks a neighbour along edges. Residuals are zigzag coded and
+ * bit packed in blocks of {@link #BLOCK} samples, every block starts with
+ * one byte holding number of bits of its residuals.
+ *
+ * Encoded tile starts with width, height and quantization step, then
+ * follow blocks of residuals in row order. Integers are little endian,
+ * whatever the order of buffer is. Tiles can be written one after other
+ * into the same buffer and read back in the same order.
+ *
+ * Codec keeps scratch rows between calls, so it does not allocate while
+ * tiles do not grow. It is not thread safe, use one codec per thread.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class HeightmapCodec {
+
+    /**
+     * Number of residuals sharing one bit width.
+     *
+     */
+    public static final int BLOCK = 32;
+
+    /**
+     * Number of bytes of tile header.
+     *
+     */
+    public static final int HEADER_BYTES = 12;
+
+    // quantized samples must keep residuals inside int range
+    private static final float MAX_QUANTIZED = 1 << 29;
+
+    private final float maxError;
+    private final float step;
+    private final float inverse;
+
+    private int[] previous = new int[0];
+    private int[] current = new int[0];
+    private final int[] residuals = new int[BLOCK];
+    private float[] samples = new float[0];
+
+    /**
+     * Creates codec with given error bound.
+     *
+     * @param maxError Maximal difference of decoded and encoded sample.
+     */
+    public HeightmapCodec(float maxError) {
+        if (!(maxError > 0) || Float.isInfinite(maxError))
+            throw new IllegalArgumentException(
+                    "Maximal error must be positive and finite.");
+        this.maxError = maxError;
+        step = 2 * maxError;
+        inverse = 1 / step;
+    }
+
+    public float getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * Computes size of buffer big enough for any tile of given size.
+     *
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @return Maximal number of bytes of encoded tile.
+     */
+    public static int maxEncodedSize(int width, int height) {
+        long blocks = ((long) width * height + BLOCK - 1) / BLOCK;
+        return (int) Math.min(Integer.MAX_VALUE,
+                HEADER_BYTES + blocks * (1 + BLOCK * 4));
+    }
+
+    /**
+     * Encodes tile of samples into buffer at its position.
+     *
+     * Sample of column i and row j is read from
+     * samples[offset + j*width + i].
+     *
+     * @param samples Samples of tile. NaN and INF prohibited.
+     * @param offset Index of first sample.
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param out Buffer for encoded tile, position is moved past it.
+     * @return Number of written bytes.
+     * @throws BufferOverflowException If tile does not fit the buffer.
+     */
+    public int encode(float[] samples, int offset, int width, int height,
+            ByteBuffer out) {
+        if (width < 1 || height < 1)
+            throw new IllegalArgumentException(
+                    "Tile must be at least one sample wide and high.");
+        ByteOrder order = out.order();
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        int start = out.position();
+        try {
+            out.putInt(width);
+            out.putInt(height);
+            out.putFloat(step);
+            rows(width);
+            int filled = 0;
+            for (int j = 0; j < height; ++j) {
+                int[] up = previous;
+                int[] row = current;
+                int index = offset + j * width;
+                for (int i = 0; i < width; ++i) {
+                    float scaled = samples[index + i] * inverse;
+                    if (!(Math.abs(scaled) < MAX_QUANTIZED))
+                        throw new IllegalArgumentException(
+                                "Sample out of range of codec: "
+                                + samples[index + i]);
+                    int q = Math.round(scaled);
+                    row[i] = q;
+                    int r = q - predict(row, up, i, j);
+                    residuals[filled++] = (r << 1) ^ (r >> 31);
+                    if (filled == BLOCK) {
+                        pack(out, BLOCK);
+                        filled = 0;
+                    }
+                }
+                previous = row;
+                current = up;
+            }
+            if (filled > 0) {
+                for (int k = filled; k < BLOCK; ++k)
+                    residuals[k] = 0;
+                pack(out, BLOCK);
+            }
+        } finally {
+            out.order(order);
+        }
+        return out.position() - start;
+    }
+
+    /**
+     * Samples noise on a grid and encodes it.
+     *
+     * @param source Noise to be sampled.
+     * @param x Cordinate of first sample.
+     * @param y Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param out Buffer for encoded tile, position is moved past it.
+     * @return Number of written bytes.
+     * @see Noise2d#values(double, double, double, int, int, float[], int)
+     */
+    public int encode(Noise2d source, double x, double y, double step,
+            int width, int height, ByteBuffer out) {
+        int n = width * height;
+        if (samples.length < n)
+            samples = new float[n];
+        source.values(x, y, step, width, height, samples, 0);
+        return encode(samples, 0, width, height, out);
+    }
+
+    /**
+     * Reads size of tile at position of buffer, without moving it.
+     *
+     * @param in Buffer with encoded tile.
+     * @return Number of samples of the tile.
+     */
+    public static int samples(ByteBuffer in) {
+        ByteOrder order = in.order();
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        int p = in.position();
+        int count = in.getInt(p) * in.getInt(p + 4);
+        in.order(order);
+        return count;
+    }
+
+    /**
+     * Decodes tile from buffer at its position.
+     *
+     * Sample of column i and row j is stored at
+     * result[offset + j*width + i].
+     *
+     * @param in Buffer with encoded tile, position is moved past it.
+     * @param result Array for decoded samples.
+     * @param offset Index of first sample.
+     * @return Number of decoded samples.
+     * @throws BufferUnderflowException If buffer ends inside tile.
+     */
+    public int decode(ByteBuffer in, float[] result, int offset) {
+        ByteOrder order = in.order();
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int width = in.getInt();
+            int height = in.getInt();
+            float step = in.getFloat();
+            if (width < 1 || height < 1 || !(step > 0))
+                throw new IllegalArgumentException("Corrupted tile header.");
+            if (result.length - offset < (long) width * height)
+                throw new IllegalArgumentException(
+                        "Result array too small for tile.");
+            rows(width);
+            int next = BLOCK;
+            for (int j = 0; j < height; ++j) {
+                int[] up = previous;
+                int[] row = current;
+                int index = offset + j * width;
+                int i = 0;
+                while (i < width) {
+                    if (next == BLOCK) {
+                        unpack(in);
+                        next = 0;
+                    }
+                    // decode residuals of block available in this row
+                    int end = i + Math.min(width - i, BLOCK - next);
+                    for (; i < end; ++i) {
+                        int z = residuals[next++];
+                        int q = predict(row, up, i, j)
+                                + ((z >>> 1) ^ -(z & 1));
+                        row[i] = q;
+                        result[index + i] = q * step;
+                    }
+                }
+                previous = row;
+                current = up;
+            }
+            return width * height;
+        } finally {
+            in.order(order);
+        }
+    }
+
+    /**
+     * Predicts quantized sample by median edge detector.
+     *
+     * First row is predicted from left neighbour, first column from upper.
+     */
+    private static int predict(int[] row, int[] up, int i, int j) {
+        if (j == 0)
+            return i == 0 ? 0 : row[i - 1];
+        if (i == 0)
+            return up[0];
+        int a = row[i - 1], b = up[i], c = up[i - 1];
+        int min = Math.min(a, b), max = Math.max(a, b);
+        if (c >= max)
+            return min;
+        if (c <= min)
+            return max;
+        return a + b - c;
+    }
+
+    private void rows(int width) {
+        if (previous.length < width) {
+            previous = new int[width];
+            current = new int[width];
+        }
+    }
+
+    /**
+     * Writes block of zigzag residuals with common bit width.
+     *
+     * Block of 32 residuals of w bits takes exactly w ints.
+     */
+    private void pack(ByteBuffer out, int count) {
+        int any = 0;
+        for (int k = 0; k < count; ++k)
+            any |= residuals[k];
+        int bits = 32 - Integer.numberOfLeadingZeros(any);
+        out.put((byte) bits);
+        if (bits == 0)
+            return;
+        long buffer = 0;
+        int filled = 0;
+        for (int k = 0; k < count; ++k) {
+            buffer |= (residuals[k] & 0xffffffffL) << filled;
+            filled += bits;
+            if (filled >= 32) {
+                out.putInt((int) buffer);
+                buffer >>>= 32;
+                filled -= 32;
+            }
+        }
+    }
+
+    private void unpack(ByteBuffer in) {
+        int bits = in.get();
+        if (bits < 0 || bits > 32)
+            throw new IllegalArgumentException("Corrupted residual block.");
+        if (bits == 0) {
+            for (int k = 0; k < BLOCK; ++k)
+                residuals[k] = 0;
+            return;
+        }
+        long mask = (1L << bits) - 1;
+        long buffer = 0;
+        int filled = 0;
+        for (int k = 0; k < BLOCK; ++k) {
+            if (filled < bits) {
+                buffer |= (in.getInt() & 0xffffffffL) << filled;
+                filled += 32;
+            }
+            residuals[k] = (int) (buffer & mask);
+            buffer >>>= bits;
+            filled -= bits;
+        }
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.store;
+
+import com.jme3.noise.Noise2d;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Heightmap stored outside of Java heap, indexed by long cordinates.
+ *
+ * Samples are grouped in square tiles, every tile is stored row by row in
+ * one continuous block, so neighbour samples stay close in memory. Tiles
+ * are packed in pages of direct or file mapped buffers of at most 1 GiB,
+ * which lets heightmap grow past the 2 GB limit of Java arrays without
+ * fragmenting the heap.
+ *
+ * Samples are stored as little endian floats. File mapped heightmap keeps
+ * tiles in file in the same layout, without any header.
+ *
+ * Reads and writes of different tiles can be done from many threads.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class OffHeapHeightmap {
+
+    /**
+     * Default number of samples along tile edge.
+     *
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    private static final long MAX_PAGE_BYTES = 1L << 30;
+
+    private final long width, height;
+    private final int tileSize;
+    private final long tilesX, tilesY;
+    private final int tileFloats;
+    private final int tilesPerPage;
+    private final FloatBuffer[] pages;
+    private final ByteBuffer[] buffers;
+
+    private OffHeapHeightmap(long width, long height, int tileSize,
+            FileChannel channel) throws IOException {
+        if (width < 1 || height < 1)
+            throw new IllegalArgumentException(
+                    "Heightmap must be at least one sample wide and high.");
+        if (tileSize < 1 || (long) tileSize * tileSize * 4 > MAX_PAGE_BYTES)
+            throw new IllegalArgumentException("Invalid tile size.");
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        tilesX = (width + tileSize - 1) / tileSize;
+        tilesY = (height + tileSize - 1) / tileSize;
+        tileFloats = tileSize * tileSize;
+        tilesPerPage = (int) (MAX_PAGE_BYTES / (4L * tileFloats));
+
+        long tiles = tilesX * tilesY;
+        long pageCount = (tiles + tilesPerPage - 1) / tilesPerPage;
+        if (pageCount > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Heightmap too large.");
+        pages = new FloatBuffer[(int) pageCount];
+        buffers = new ByteBuffer[(int) pageCount];
+        for (int p = 0; p < pages.length; ++p) {
+            long pageTiles = Math.min(tilesPerPage, tiles - (long) p * tilesPerPage);
+            int bytes = (int) (pageTiles * tileFloats * 4);
+            ByteBuffer buffer = channel == null
+                    ? ByteBuffer.allocateDirect(bytes)
+                    : channel.map(FileChannel.MapMode.READ_WRITE,
+                            (long) p * tilesPerPage * tileFloats * 4, bytes);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffers[p] = buffer;
+            pages[p] = buffer.asFloatBuffer();
+        }
+    }
+
+    /**
+     * Allocates heightmap in direct memory.
+     *
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param tileSize Number of samples along tile edge.
+     * @return New heightmap filled with zeros.
+     */
+    public static OffHeapHeightmap allocate(long width, long height,
+            int tileSize) {
+        try {
+            return new OffHeapHeightmap(width, height, tileSize, null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Maps heightmap to a file, creating or growing it when needed.
+     *
+     * Changes are written to the file by operating system, call
+     * {@link #flush()} to force them to disk.
+     *
+     * @param file File holding tiles.
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param tileSize Number of samples along tile edge.
+     * @return Heightmap backed by the file.
+     * @throws IOException If file can't be opened or mapped.
+     */
+    public static OffHeapHeightmap map(java.io.File file, long width,
+            long height, int tileSize) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            return new OffHeapHeightmap(width, height, tileSize,
+                    raf.getChannel());
+        } finally {
+            // mappings stay valid after channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads one sample.
+     *
+     * @param x Column of sample.
+     * @param y Row of sample.
+     * @return Stored sample.
+     */
+    public float get(long x, long y) {
+        long tile = (y / tileSize) * tilesX + x / tileSize;
+        return pages[(int) (tile / tilesPerPage)].get(offset(tile, x, y));
+    }
+
+    /**
+     * Writes one sample.
+     *
+     * @param x Column of sample.
+     * @param y Row of sample.
+     * @param value New sample.
+     */
+    public void set(long x, long y, float value) {
+        long tile = (y / tileSize) * tilesX + x / tileSize;
+        pages[(int) (tile / tilesPerPage)].put(offset(tile, x, y), value);
+    }
+
+    /**
+     * Copies whole tile to an array.
+     *
+     * Samples of tile are ordered row by row, tileSize samples in a row.
+     *
+     * @param tx Tile column.
+     * @param ty Tile row.
+     * @param result Array of at least tileSize^2 elements.
+     */
+    public void readTile(long tx, long ty, float[] result) {
+        tileView(tx, ty).get(result, 0, tileFloats);
+    }
+
+    /**
+     * Copies whole tile from an array.
+     *
+     * @param tx Tile column.
+     * @param ty Tile row.
+     * @param samples Array of at least tileSize^2 elements.
+     */
+    public void writeTile(long tx, long ty, float[] samples) {
+        tileView(tx, ty).put(samples, 0, tileFloats);
+    }
+
+    /**
+     * Fills one tile with noise.
+     *
+     * Sample of column x and row y is taken at
+     * (originX + x*step, originY + y*step). Tile is evaluated through grid
+     * path of the source into given array and copied into the store.
+     *
+     * @param source Noise to be sampled.
+     * @param originX Cordinate of first sample of heightmap.
+     * @param originY Cordinate of first sample of heightmap.
+     * @param step Distance between neighbour samples.
+     * @param tx Tile column.
+     * @param ty Tile row.
+     * @param buffer Array of at least tileSize^2 elements, or null.
+     */
+    public void fillTile(Noise2d source, double originX, double originY,
+            double step, long tx, long ty, float[] buffer) {
+        if (buffer == null)
+            buffer = new float[tileFloats];
+        source.values(originX + tx * tileSize * step,
+                originY + ty * tileSize * step, step,
+                tileSize, tileSize, buffer, 0);
+        writeTile(tx, ty, buffer);
+    }
+
+    /**
+     * Fills whole heightmap with noise, one tile after another.
+     *
+     * @param source Noise to be sampled.
+     * @param originX Cordinate of first sample.
+     * @param originY Cordinate of first sample.
+     * @param step Distance between neighbour samples.
+     * @see #fillTile(Noise2d, double, double, double, long, long, float[])
+     */
+    public void fill(Noise2d source, double originX, double originY,
+            double step) {
+        float[] buffer = new float[tileFloats];
+        for (long ty = 0; ty < tilesY; ++ty)
+            for (long tx = 0; tx < tilesX; ++tx)
+                fillTile(source, originX, originY, step, tx, ty, buffer);
+    }
+
+    /**
+     * Forces changes of file mapped heightmap to disk.
+     *
+     * Does nothing for heightmap in direct memory.
+     */
+    public void flush() {
+        for (ByteBuffer buffer : buffers)
+            if (buffer instanceof MappedByteBuffer)
+                ((MappedByteBuffer) buffer).force();
+    }
+
+    /**
+     * Retrive heightmap dimension.
+     *
+     * @return Number of columns.
+     */
+    public long width() {
+        return width;
+    }
+
+    /**
+     * Retrive heightmap dimension.
+     *
+     * @return Number of rows.
+     */
+    public long height() {
+        return height;
+    }
+
+    /**
+     * Retrive heightmap dimension.
+     *
+     * @return Number of samples along tile edge.
+     */
+    public int tileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Retrive heightmap dimension.
+     *
+     * @return Number of tile columns.
+     */
+    public long tilesX() {
+        return tilesX;
+    }
+
+    /**
+     * Retrive heightmap dimension.
+     *
+     * @return Number of tile rows.
+     */
+    public long tilesY() {
+        return tilesY;
+    }
+
+    private int offset(long tile, long x, long y) {
+        return (int) (tile % tilesPerPage) * tileFloats
+                + (int) (y % tileSize) * tileSize + (int) (x % tileSize);
+    }
+
+    private FloatBuffer tileView(long tx, long ty) {
+        long tile = ty * tilesX + tx;
+        // duplicate has its own position, so threads don't interfere
+        FloatBuffer view = pages[(int) (tile / tilesPerPage)].duplicate();
+        view.position((int) (tile % tilesPerPage) * tileFloats);
+        return view;
+    }
+
+}
@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.store;
+
+import com.jme3.noise.Noise3d;
+
+/**
+ * Three dimension chunk of integer classes with palette compression.
+ *
+ * Every distinct class is stored once in a palette, cells keep only
+ * palette indices bit-packed in longs. Index width grows with palette
+ * through 0, 1, 2, 4, 8, 16 and 32 bits, so uniform chunk takes no index
+ * storage and air with rock takes one bit per cell. Reads and edits are
+ * random access and done in place.
+ *
+ * Cell of column i, row j and slice k has index (k*height + j)*width + i,
+ * like in {@link Noise3d#values(double, double, double, double, int, int,
+ * int, float[], int)}.
+ *
+ * This class is not thread safe.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class PaletteChunk {
+
+    private final int width, height, depth;
+
+    private int[] palette;
+    private int paletteSize;
+    private int bits;
+    private long[] data;
+
+    /**
+     * Creates chunk filled with one class.
+     *
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param depth Number of slices.
+     * @param value Class of all cells.
+     */
+    public PaletteChunk(int width, int height, int depth, int value) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        reset(value);
+    }
+
+    /**
+     * Creates chunk filled with zero class.
+     *
+     * @param width Number of columns.
+     * @param height Number of rows.
+     * @param depth Number of slices.
+     */
+    public PaletteChunk(int width, int height, int depth) {
+        this(width, height, depth, 0);
+    }
+
+    /**
+     * Fills chunk with classified noise.
+     *
+     * Noise is evaluated one slice at a time through grid path of the
+     * source, so no dense array of the whole volume is created.
+     *
+     * @param source Noise to be sampled.
+     * @param x Cordinate of first cell.
+     * @param y Cordinate of first cell.
+     * @param z Cordinate of first cell.
+     * @param step Distance between neighbour cells.
+     * @param classifier Maps samples to classes.
+     */
+    public void fill(Noise3d source, double x, double y, double z,
+            double step, Classifier classifier) {
+        float[] slice = new float[width * height];
+        boolean first = true;
+        for (int k = 0, index = 0; k < depth; ++k) {
+            source.values(x, y, z + k * step, step, width, height, 1,
+                    slice, 0);
+            for (float sample : slice) {
+                int value = classifier.classify(sample);
+                if (first) {
+                    reset(value);
+                    first = false;
+                } else if (bits != 0 || value != palette[0]) {
+                    write(index, indexOf(value));
+                }
+                ++index;
+            }
+        }
+    }
+
+    /**
+     * Sets all cells to one class and drops the palette.
+     *
+     * @param value Class of all cells.
+     */
+    public final void reset(int value) {
+        palette = new int[] {value};
+        paletteSize = 1;
+        bits = 0;
+        data = new long[0];
+    }
+
+    /**
+     * Reads class of one cell.
+     *
+     * @param i Column of cell.
+     * @param j Row of cell.
+     * @param k Slice of cell.
+     * @return Class of the cell.
+     */
+    public int get(int i, int j, int k) {
+        if (bits == 0)
+            return palette[0];
+        return palette[read((k * height + j) * width + i)];
+    }
+
+    /**
+     * Writes class of one cell.
+     *
+     * @param i Column of cell.
+     * @param j Row of cell.
+     * @param k Slice of cell.
+     * @param value New class of the cell.
+     */
+    public void set(int i, int j, int k, int value) {
+        if (bits == 0 && value == palette[0])
+            return;
+        write((k * height + j) * width + i, indexOf(value));
+    }
+
+    /**
+     * Removes unused classes from palette and shrinks index width.
+     *
+     */
+    public void compact() {
+        int volume = width * height * depth;
+        int[] used = new int[paletteSize];
+        for (int e = 0; e < volume; ++e)
+            ++used[bits == 0 ? 0 : read(e)];
+        int[] remap = new int[paletteSize];
+        int[] newPalette = new int[paletteSize];
+        int newSize = 0;
+        for (int p = 0; p < paletteSize; ++p)
+            if (used[p] > 0) {
+                remap[p] = newSize;
+                newPalette[newSize++] = palette[p];
+            }
+        if (newSize == paletteSize)
+            return;
+
+        int newBits = bitsFor(newSize);
+        long[] newData = new long[words(newBits)];
+        for (int e = 0; e < volume; ++e)
+            write(newData, newBits, e, remap[bits == 0 ? 0 : read(e)]);
+        palette = newPalette;
+        paletteSize = newSize;
+        bits = newBits;
+        data = newData;
+    }
+
+    /**
+     * Checks if all cells have the same class.
+     *
+     * May return false for uniform chunk that was not compacted.
+     *
+     * @return True if palette holds only one class.
+     */
+    public boolean isUniform() {
+        return paletteSize == 1;
+    }
+
+    /**
+     * Retrive number of classes in palette.
+     *
+     * @return Palette size.
+     */
+    public int paletteSize() {
+        return paletteSize;
+    }
+
+    /**
+     * Retrive width of one palette index.
+     *
+     * @return Number of bits per cell.
+     */
+    public int bitsPerCell() {
+        return bits;
+    }
+
+    /**
+     * Estimates memory taken by palette and indices.
+     *
+     * @return Size in bytes, without object headers.
+     */
+    public long memorySize() {
+        return 8L * data.length + 4L * palette.length;
+    }
+
+    private int indexOf(int value) {
+        for (int p = 0; p < paletteSize; ++p)
+            if (palette[p] == value)
+                return p;
+
+        if (paletteSize == palette.length)
+            palette = java.util.Arrays.copyOf(palette, paletteSize * 2);
+        palette[paletteSize] = value;
+        if (paletteSize + 1 > 1L << bits)
+            grow(bits == 0 ? 1 : bits * 2);
+        return paletteSize++;
+    }
+
+    private void grow(int newBits) {
+        int volume = width * height * depth;
+        long[] newData = new long[words(newBits)];
+        for (int e = 0; e < volume; ++e)
+            write(newData, newBits, e, bits == 0 ? 0 : read(e));
+        bits = newBits;
+        data = newData;
+    }
+
+    private int words(int bits) {
+        return (int) (((long) width * height * depth * bits + 63) >>> 6);
+    }
+
+    private int read(int cell) {
+        long bit = (long) cell * bits;
+        long mask = (1L << bits) - 1;
+        return (int) ((data[(int) (bit >>> 6)] >>> (bit & 63)) & mask);
+    }
+
+    private void write(int cell, int index) {
+        write(data, bits, cell, index);
+    }
+
+    private static void write(long[] data, int bits, int cell, int index) {
+        if (bits == 0)
+            return;
+        long bit = (long) cell * bits;
+        long mask = (1L << bits) - 1;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        data[word] = (data[word] & ~(mask << shift))
+                | ((index & mask) << shift);
+    }
+
+    private static int bitsFor(int size) {
+        int bits = 0;
+        while (size > 1L << bits)
+            bits = bits == 0 ? 1 : bits * 2;
+        return bits;
+    }
+
+}
@@ -0,0 +1,294 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Piotr SQLek Skólski.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jme3.noise.stream;
+
+import com.jme3.noise.Fader;
+import com.jme3.noise.Noise1d;
+import com.jme3.noise.basic.PermutedNoise;
+import com.jme3.noise.common.ImprovedPerlin;
+import com.jme3.noise.fractal.FractalNoise1d;
+
+/**
+ * One dimension noise sampled at evenly spaced cordinates, block by block.
+ *
+ * Suited for signals advancing by fixed step, like camera shake, wind or
+ * audio modulation. For {@link PermutedNoise}, {@link ImprovedPerlin}
+ * and plain {@link FractalNoise1d} of them every octave remembers its
+ * lattice cell, so corners are hashed once per cell, and sample inside the
+ * cell is a polynomial of fractional cordinate, evaluated by Horner
+ * scheme. For LINEAR fader it is one or two multiply-adds per octave and
+ * sample, six at most for PERLIN one. Other faders are called per sample,
+ * other sources, subclasses of FractalNoise1d like multifractals among
+ * them, are sampled by value(double).
+ *
+ * Samples differ from value(double) only by rounding. Configuration of
+ * source is read once, at construction. Filling blocks does not allocate.
+ *
+ * @author Piotr SQLek Skólski
+ */
+public class NoiseStream1d {
+
+    private static final int DEGREE = 7;
+
+    // fader kinds with polynomial form
+    private static final int OTHER = 0;
+    private static final int LINEAR = 1;
+    private static final int PERLIN = 2;
+
+    private final Noise1d source;
+    private final PermutedNoise noise;
+    private final Fader fader;
+    private final int kind;
+    private final boolean gradient;
+    private final float scale;
+    private final int octaves;
+    private final double step;
+    private final double[] frequencies;
+    private final float[] weights;
+
+    // state of every octave
+    private final long[] cells;
+    private final double[] fractions;
+    private final int[] lower;
+    private final int[] upper;
+    private final float[] polynomials;
+    private final float[] single = new float[1];
+
+    private double position;
+    private long index;
+
+    /**
+     * Creates stream starting at given cordinate.
+     *
+     * @param source Noise to be sampled.
+     * @param start Cordinate of first sample.
+     * @param step Distance between samples, zero or positive.
+     */
+    public NoiseStream1d(Noise1d source, double start, double step) {
+        if (!(step >= 0))
+            throw new IllegalArgumentException(
+                    "Step must not be negative.");
+        this.source = source;
+        this.step = step;
+        Noise1d base = source;
+        int count = 1;
+        // subclasses, like multifractals, combine octaves differently
+        if (source.getClass() == FractalNoise1d.class) {
+            base = ((FractalNoise1d) source).getSource();
+            count = ((FractalNoise1d) source).getOctaves();
+        }
+        if (base instanceof PermutedNoise) {
+            noise = (PermutedNoise) base;
+            fader = noise.getFader();
+            gradient = noise instanceof ImprovedPerlin;
+            scale = gradient ? 1 : 2f / noise.getPermutator().size();
+            kind = fader == Fader.LINEAR ? LINEAR
+                    : fader == Fader.PERLIN ? PERLIN : OTHER;
+            octaves = count;
+        } else {
+            noise = null;
+            fader = null;
+            gradient = false;
+            scale = 0;
+            kind = OTHER;
+            octaves = 0;
+        }
+        frequencies = new double[octaves];
+        weights = new float[octaves];
+        float factor = 0;
+        float weight = 1;
+        for (int i = 0; i < octaves; ++i) {
+            frequencies[i] = 1 / (double) weight;
+            weights[i] = weight;
+            factor += weight;
+            weight /= 2;
+        }
+        for (int i = 0; i < octaves; ++i)
+            weights[i] /= factor;
+        cells = new long[octaves];
+        fractions = new double[octaves];
+        lower = new int[octaves];
+        upper = new int[octaves];
+        polynomials = new float[octaves * DEGREE];
+        seek(start);
+    }
+
+    /**
+     * Moves stream to given cordinate.
+     *
+     * @param start Cordinate of next sample.
+     */
+    public void seek(double start) {
+        position = start;
+        index = 0;
+        for (int i = 0; i < octaves; ++i) {
+            double x = start * frequencies[i];
+            long X = (long) Math.floor(x);
+            fractions[i] = x - X;
+            cell(i, X);
+        }
+    }
+
+    /**
+     * Retrive cordinate of next sample.
+     *
+     * @return Cordinate.
+     */
+    public double position() {
+        return position + index * step;
+    }
+
+    /**
+     * Computes next sample.
+     *
+     * @return Noise sample.
+     */
+    public float next() {
+        fill(single, 0, 1);
+        return single[0];
+    }
+
+    /**
+     * Computes next samples.
+     *
+     * @param result Array for samples.
+     * @param offset Index of first sample.
+     * @param count Number of samples.
+     */
+    public void fill(float[] result, int offset, int count) {
+        int end = offset + count;
+        if (noise == null) {
+            for (int j = offset; j < end; ++j)
+                result[j] = source.value(position + index++ * step);
+            return;
+        }
+        // fractions restart from exact position every block, drift stays
+        // limited to a block
+        double base = position + index * step;
+        for (int i = 0; i < octaves; ++i) {
+            double x = base * frequencies[i];
+            long X = (long) Math.floor(x);
+            if (X != cells[i])
+                cell(i, X);
+            fractions[i] = x - X;
+        }
+        for (int j = offset; j < end; ++j)
+            result[j] = 0;
+        for (int i = 0; i < octaves; ++i)
+            octave(i, result, offset, end);
+        index += count;
+    }
+
+    private void octave(int i, float[] result, int offset, int end) {
+        double delta = step * frequencies[i];
+        double x = fractions[i];
+        float weight = weights[i];
+        float[] c = polynomials;
+        int p = i * DEGREE;
+        int j = offset;
+        while (j < end) {
+            if (x >= 1) {
+                long k = (long) x;
+                cell(i, cells[i] + k);
+                x -= k;
+            }
+            // samples left in current cell, at least one, quotient is
+            // clamped as zero or tiny step makes it infinite or huge
+            int last = j + (int) Math.min(end - j,
+                    (long) Math.min((1 - x) / delta, Integer.MAX_VALUE) + 1);
+            if (kind == LINEAR && !gradient) {
+                float c0 = c[p], c1 = c[p + 1];
+                for (; j < last && x < 1; ++j, x += delta)
+                    result[j] += (c0 + (float) x * c1) * weight;
+            } else if (kind == LINEAR) {
+                float c1 = c[p + 1], c2 = c[p + 2];
+                for (; j < last && x < 1; ++j, x += delta) {
+                    float f = (float) x;
+                    result[j] += f * (c1 + f * c2) * weight;
+                }
+            } else if (kind == PERLIN) {
+                float c0 = c[p], c1 = c[p + 1], c2 = c[p + 2],
+                        c3 = c[p + 3], c4 = c[p + 4], c5 = c[p + 5],
+                        c6 = c[p + 6];
+                for (; j < last && x < 1; ++j, x += delta) {
+                    float f = (float) x;
+                    result[j] += (c0 + f * (c1 + f * (c2 + f * (c3
+                            + f * (c4 + f * (c5 + f * c6)))))) * weight;
+                }
+            } else {
+                for (; j < last && x < 1; ++j, x += delta)
+                    result[j] += faded(i, (float) x) * weight;
+            }
+        }
+        fractions[i] = x;
+    }
+
+    private float faded(int i, float x) {
+        if (gradient)
+            return fader.fade(x, ImprovedPerlin.grad(lower[i], x),
+                    ImprovedPerlin.grad(upper[i], x - 1));
+        return fader.fade(x, lower[i], upper[i]) * scale - 1;
+    }
+
+    // hashes corners of new cell and expands sample polynomial
+    private void cell(int i, long X) {
+        cells[i] = X;
+        int A = noise.valueInt((int) X);
+        int B = noise.valueInt((int) (X + 1));
+        lower[i] = A;
+        upper[i] = B;
+        int p = i * DEGREE;
+        for (int k = 0; k < DEGREE; ++k)
+            polynomials[p + k] = 0;
+        if (!gradient) {
+            float a = A * scale - 1;
+            float d = (B - A) * scale;
+            polynomials[p] = a;
+            if (kind == LINEAR) {
+                polynomials[p + 1] = d;
+            } else {
+                polynomials[p + 3] = 10 * d;
+                polynomials[p + 4] = -15 * d;
+                polynomials[p + 5] = 6 * d;
+            }
+        } else {
+            // lower corner ga*x, upper gb*(x-1)
+            float ga = ImprovedPerlin.grad(A, 1);
+            float gb = ImprovedPerlin.grad(B, 1);
+            float e = gb - ga;
+            if (kind == LINEAR) {
+                polynomials[p + 1] = -e;
+                polynomials[p + 2] = e;
+            } else {
+                polynomials[p + 1] = ga;
+                polynomials[p + 3] = -10 * gb;
+                polynomials[p + 4] = 15 * gb + 10 * e;
+                polynomials[p + 5] = -6 * gb - 15 * e;
+                polynomials[p + 6] = 6 * e;
+            }
+        }
+    }
+
+}